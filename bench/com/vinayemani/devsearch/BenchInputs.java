@@ -0,0 +1,81 @@
+package com.vinayemani.devsearch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserKey;
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * Generates the inputs of the benchmarks. Inputs are made up deterministically from row numbers, so every run and
+ * every format of the same size works on the same users.
+ *
+ * @author Vinay E.
+ *
+ */
+class BenchInputs {
+	private static final String[] FIRST_NAMES = {"Vinay", "Ann", "Mary Jane", "Jos\u00e9", "Li", "Oluwaseun"};
+	private static final String[] LAST_NAMES = {"Emani", "Smith", "O'Brien", "Garc\u00eda", "", "Nakamura-Jones"};
+	private static final String[] LOCATIONS = {"Hyderabad", "San Francisco", "", "S\u00e3o Paulo", "New York, NY", "Berlin"};
+	
+	static UserKey key(int row) {
+		return new UserKey(firstName(row), lastName(row), location(row));
+	}
+	
+	static UserData user(int row) {
+		UserProfile profile = new UserProfile(firstName(row) + " " + lastName(row), "user" + row, "Company " + (row % 97),
+				"https://blog.example.com/user" + row, location(row), "user" + row + "@example.com");
+		return new UserData(profile, Arrays.asList(new RepoData(row % 500, "repo-" + row), new RepoData(1, "dotfiles")));
+	}
+	
+	static List<UserData> users(int rows) {
+		List<UserData> users = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			users.add(user(i));
+		}
+		return users;
+	}
+	
+	/** Writes a csv or json input file of the given no. of user keys. */
+	static void writeInput(File file, String format, int rows) throws IOException {
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			if (format.equals("csv")) {
+				writer.write("firstName,lastName,location\n");
+				for (int i = 0; i < rows; i++) {
+					writer.write(csvField(firstName(i)) + "," + csvField(lastName(i)) + "," + csvField(location(i)) + "\n");
+				}
+			} else {
+				writer.write("[\n");
+				for (int i = 0; i < rows; i++) {
+					writer.write("  {\"firstName\": \"" + firstName(i) + "\", \"lastName\": \"" + lastName(i)
+							+ "\", \"location\": \"" + location(i) + "\"}" + (i + 1 < rows ? ",\n" : "\n"));
+				}
+				writer.write("]\n");
+			}
+		}
+	}
+	
+	private static String csvField(String value) {
+		return value.indexOf(',') >= 0 ? "\"" + value + "\"" : value;
+	}
+	
+	private static String firstName(int row) {
+		return FIRST_NAMES[row % FIRST_NAMES.length] + (row / FIRST_NAMES.length);
+	}
+	
+	private static String lastName(int row) {
+		return LAST_NAMES[(row / 7) % LAST_NAMES.length];
+	}
+	
+	private static String location(int row) {
+		return LOCATIONS[(row / 3) % LOCATIONS.length];
+	}
+}
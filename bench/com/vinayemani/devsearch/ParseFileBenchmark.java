@@ -0,0 +1,61 @@
+package com.vinayemani.devsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.data.UserKey;
+
+/**
+ * Measures {@link FileUtils#parseFile(String)}, i.e., reading all user keys of a csv or json input file into memory.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParseFileBenchmark {
+	
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+	
+	@Param({"csv", "json"})
+	public String format;
+	
+	private File input;
+	
+	@Setup(Level.Trial)
+	public void writeInput() throws IOException {
+		input = File.createTempFile("devsearch-bench", "." + format);
+		BenchInputs.writeInput(input, format, rows);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteInput() {
+		input.delete();
+	}
+	
+	@Benchmark
+	public List<UserKey> parseFile() throws IOException, BadInputFileException {
+		return FileUtils.parseFile(input.getPath());
+	}
+}
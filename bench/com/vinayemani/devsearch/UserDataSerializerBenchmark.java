@@ -0,0 +1,77 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.data.UserData;
+
+/**
+ * Measures writing a user's data as json with {@link UserDataSerializer} against {@code new JSONObject(data)}, which
+ * it replaces. Output goes to a writer that drops it, so only the serializing is measured.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserDataSerializerBenchmark {
+	
+	@Param({"0", "2"})
+	public int indentFactor;
+	
+	private final Writer sink = new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+		
+		@Override
+		public void write(String str, int off, int len) {
+		}
+		
+		@Override
+		public void flush() {
+		}
+		
+		@Override
+		public void close() {
+		}
+	};
+	
+	private UserData data;
+	private UserDataSerializer serializer;
+	
+	@Setup
+	public void makeUser() {
+		data = BenchInputs.user(12345);
+		serializer = new UserDataSerializer(indentFactor);
+	}
+	
+	@Benchmark
+	public Writer jsonObject() {
+		return new JSONObject(data).write(sink, indentFactor, 0);
+	}
+	
+	@Benchmark
+	public Writer serializer() throws IOException {
+		serializer.write(data, sink, 0);
+		return sink;
+	}
+}
@@ -0,0 +1,49 @@
+package com.vinayemani.devsearch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.data.UserKey;
+
+/**
+ * Measures {@link UserKey#constructQueryParamString()}, which builds the search query of every user searched for.
+ * Keys are taken in turn from a set with and without locations, spaces and non ascii chars.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserKeyBenchmark {
+	private static final int NUM_KEYS = 1024;
+	
+	private final UserKey[] keys = new UserKey[NUM_KEYS];
+	private int next = 0;
+	
+	@Setup
+	public void makeKeys() {
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keys[i] = BenchInputs.key(i);
+		}
+	}
+	
+	@Benchmark
+	public String constructQueryParamString() {
+		next = (next + 1) & (NUM_KEYS - 1);
+		return keys[next].constructQueryParamString();
+	}
+}
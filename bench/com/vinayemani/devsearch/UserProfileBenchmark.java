@@ -0,0 +1,73 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * Measures {@link GitHubAPIClient#constructUserProfile(JsonReader)}, i.e., mapping a /users/:login response to a
+ * {@link UserProfile}. The response is a full one, so most of its fields are skipped, as they are in real responses.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserProfileBenchmark {
+	
+	private static final String RESPONSE = "{\n"
+			+ "  \"login\": \"octocat\",\n"
+			+ "  \"id\": 583231,\n"
+			+ "  \"node_id\": \"MDQ6VXNlcjU4MzIzMQ==\",\n"
+			+ "  \"avatar_url\": \"https://avatars.githubusercontent.com/u/583231?v=4\",\n"
+			+ "  \"gravatar_id\": \"\",\n"
+			+ "  \"url\": \"https://api.github.com/users/octocat\",\n"
+			+ "  \"html_url\": \"https://github.com/octocat\",\n"
+			+ "  \"followers_url\": \"https://api.github.com/users/octocat/followers\",\n"
+			+ "  \"following_url\": \"https://api.github.com/users/octocat/following{/other_user}\",\n"
+			+ "  \"gists_url\": \"https://api.github.com/users/octocat/gists{/gist_id}\",\n"
+			+ "  \"starred_url\": \"https://api.github.com/users/octocat/starred{/owner}{/repo}\",\n"
+			+ "  \"subscriptions_url\": \"https://api.github.com/users/octocat/subscriptions\",\n"
+			+ "  \"organizations_url\": \"https://api.github.com/users/octocat/orgs\",\n"
+			+ "  \"repos_url\": \"https://api.github.com/users/octocat/repos\",\n"
+			+ "  \"events_url\": \"https://api.github.com/users/octocat/events{/privacy}\",\n"
+			+ "  \"received_events_url\": \"https://api.github.com/users/octocat/received_events\",\n"
+			+ "  \"type\": \"User\",\n"
+			+ "  \"site_admin\": false,\n"
+			+ "  \"name\": \"The Octocat\",\n"
+			+ "  \"company\": \"@github\",\n"
+			+ "  \"blog\": \"https://github.blog\",\n"
+			+ "  \"location\": \"San Francisco\",\n"
+			+ "  \"email\": null,\n"
+			+ "  \"hireable\": null,\n"
+			+ "  \"bio\": null,\n"
+			+ "  \"twitter_username\": null,\n"
+			+ "  \"public_repos\": 8,\n"
+			+ "  \"public_gists\": 8,\n"
+			+ "  \"followers\": 17804,\n"
+			+ "  \"following\": 9,\n"
+			+ "  \"created_at\": \"2011-01-25T18:44:36Z\",\n"
+			+ "  \"updated_at\": \"2024-01-22T12:17:36Z\"\n"
+			+ "}\n";
+	
+	@Benchmark
+	public UserProfile constructUserProfile() throws IOException {
+		return GitHubAPIClient.constructUserProfile(new JsonReader(new StringReader(RESPONSE)));
+	}
+}
@@ -0,0 +1,77 @@
+package com.vinayemani.devsearch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.WorkQueue.QueueFinisher;
+import com.vinayemani.devsearch.WorkQueue.Worker;
+
+/**
+ * Measures how fast jobs are handed from a pusher to the workers of a {@link WorkQueue} and back, with a worker that
+ * does nothing, so only the queue's own overhead is measured. Each invocation runs a fresh queue through
+ * {@link #JOBS} jobs to the end, the score is per job.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WorkQueueBenchmark {
+	private static final int JOBS = 10000;
+	private static final APICallResult<Integer> DONE = APICallResult.successResult(0);
+	
+	@Param({"1", "4"})
+	public int workers;
+	
+	// Cap on pending jobs, 0 for none.
+	@Param({"0", "64"})
+	public int maxPendingJobs;
+	
+	private static final Worker<Integer, Integer> NO_OP_WORKER = new Worker<Integer, Integer>() {
+		@Override
+		public APICallResult<Integer> produce(Integer input) {
+			return DONE;
+		}
+		
+		@Override
+		public void onSuccess(long keyId, Integer output) {}
+	};
+	
+	private static final QueueFinisher NO_OP_FINISHER = new QueueFinisher() {
+		@Override
+		public void onQueueFinished() {}
+	};
+	
+	@Benchmark
+	@OperationsPerInvocation(JOBS)
+	public int handOff() {
+		WorkQueue<Integer, Integer> queue = new WorkQueue<>("core", NO_OP_WORKER, workers, null);
+		queue.setFinisher(NO_OP_FINISHER);
+		if (maxPendingJobs > 0) {
+			queue.setMaxPendingJobs(maxPendingJobs);
+		}
+		
+		Integer input = 0;
+		for (int i = 0; i < JOBS; i++) {
+			queue.pushNewJob(i, input);
+		}
+		queue.signalEndOfJobs();
+		queue.waitUntilFinish();
+		return queue.getPendingJobs();
+	}
+}
@@ -0,0 +1,63 @@
+package com.vinayemani.devsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vinayemani.devsearch.data.UserData;
+
+/**
+ * Measures {@link FileUtils#writeUserDataToFile(java.util.Collection, String)}, i.e., writing the data of as many users
+ * as {@link ParseFileBenchmark} reads keys, to each of the output formats.
+ *
+ * @author Vinay E.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WriteUserDataBenchmark {
+	
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+	
+	@Param({"json", "ndjson", "csv", "bin"})
+	public String format;
+	
+	private List<UserData> users;
+	private File output;
+	
+	@Setup(Level.Trial)
+	public void makeUsers() throws IOException {
+		users = BenchInputs.users(rows);
+		output = File.createTempFile("devsearch-bench", "." + format);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteOutput() {
+		output.delete();
+	}
+	
+	@Benchmark
+	public boolean writeUserDataToFile() throws IOException {
+		return FileUtils.writeUserDataToFile(users, output.getPath());
+	}
+}
@@ -17,7 +17,21 @@ if [ "$CMD" = "compile" ]; then
 elif [ "$CMD" = "run" ]; then
     java -classpath "lib/*:bin" com.vinayemani.devsearch.cli.CLIWrapper;
     exit;
+elif [ "$CMD" = "bench" ]; then
+    # JMH isn't vendored, its jars are expected in bench/lib, see docs/BUILD.
+    if ! ls bench/lib/jmh-core-*.jar > /dev/null 2>&1; then
+        echo "JMH jars not found in bench/lib, see docs/BUILD";
+        exit 1;
+    fi
+    rm -rf bench-bin && mkdir bench-bin;
+    find src bench -iregex .*java | xargs javac -classpath "lib/*:bench/lib/*" -d bench-bin;
+    java -classpath "lib/*:bench/lib/*:bench-bin" org.openjdk.jmh.Main -prof gc "${@:2}";
+    exit;
+elif [ "$CMD" = "loadtest" ]; then
+    java -classpath "lib/*:bin" com.vinayemani.devsearch.mock.LoadTest "${@:2}";
+    exit;
 elif [ "$CMD" = "clean" ]; then
     rm -rf bin && mkdir bin;
+    rm -rf bench-bin;
     exit;
 fi
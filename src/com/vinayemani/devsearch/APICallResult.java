@@ -8,6 +8,8 @@ package com.vinayemani.devsearch;
  * No match, there were no matching results.
  * Rate limit exceeded, we exceeded the rate limit and must now wait until next reset time.
  * Error, some other error occurred.
+ * Deadline exceeded, the call wasn't made because the result wouldn't have been needed by the time it was done.
+ * Unavailable, the call wasn't made because the api is down(see {@link CircuitBreaker}), it can be made once it's back.
  * 
  * APICallResultType is an enum representing all these cases.
  * 
@@ -18,42 +20,69 @@ enum APICallResultType {
 	SUCCESS,
 	NO_MATCH,
 	RATE_LIMIT_EXCEEDED,
-	ERROR
+	ERROR,
+	DEADLINE_EXCEEDED,
+	UNAVAILABLE
 }
 
 /**
  * APICallResult represents either a successfully fetched response object or a failure 
  * that occurred during the api request. 
  * 
+ * It also carries the http status code of the last response the result was made from, or 0 if there was none(e.g.,
+ * the connection failed). Unavailable results carry the time(epoch ms) the call can be made again.
+ * 
  * @author Vinay E.
  */
 @lombok.Getter
 class APICallResult<Output> {
 	private APICallResultType resultType;
 	private Output result;
+	private int httpCode;
+	private long retryAtMs = 0;
 	
-	private APICallResult(APICallResultType resultType, Output result) {
+	private APICallResult(APICallResultType resultType, Output result, int httpCode) {
 		this.resultType = resultType;
 		this.result = result;
+		this.httpCode = httpCode;
 	}
 	
-	private APICallResult(APICallResultType type) {
-		this(type, null);
+	private APICallResult(APICallResultType type, int httpCode) {
+		this(type, null, httpCode);
 	}
 	
 	public static <Item> APICallResult<Item> successResult(Item item) {
-		return new APICallResult<Item>(APICallResultType.SUCCESS, item);
+		return new APICallResult<Item>(APICallResultType.SUCCESS, item, Connection.RESP_CODE_OK);
+	}
+	
+	public static <Item> APICallResult<Item> rateLimitExceededResult(int httpCode) {
+		return new APICallResult<>(APICallResultType.RATE_LIMIT_EXCEEDED, httpCode);
 	}
 	
-	public static <Item> APICallResult<Item> rateLimitExceededResult() {
-		return new APICallResult<>(APICallResultType.RATE_LIMIT_EXCEEDED);
+	public static <Item> APICallResult<Item> noMatchResult(int httpCode) {
+		return new APICallResult<>(APICallResultType.NO_MATCH, httpCode);
 	}
 	
-	public static <Item> APICallResult<Item> noMatchResult() {
-		return new APICallResult<>(APICallResultType.NO_MATCH);
+	public static <Item> APICallResult<Item> errorResult(int httpCode) {
+		return new APICallResult<>(APICallResultType.ERROR, httpCode);
 	}
 	
+	/** Error result for a call that got no response at all. */
 	public static <Item> APICallResult<Item> errorResult() {
-		return new APICallResult<>(APICallResultType.ERROR);
+		return errorResult(0);
+	}
+	
+	public static <Item> APICallResult<Item> unavailableResult(long retryAtMs) {
+		APICallResult<Item> result = new APICallResult<>(APICallResultType.UNAVAILABLE, 0);
+		result.retryAtMs = retryAtMs;
+		return result;
+	}
+	
+	/** Result of a call that failed with the given exception, unavailable if it was stopped by the circuit breaker. */
+	public static <Item> APICallResult<Item> failureResult(Throwable e) {
+		if (e instanceof CircuitOpenException) {
+			return unavailableResult(((CircuitOpenException) e).getRetryAtMs());
+		}
+		return errorResult();
 	}
 }
@@ -0,0 +1,46 @@
+package com.vinayemani.devsearch;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * APIResponse holds the http status code of an api response along with whatever data was parsed out of its body.
+ * Data is only parsed for successful(200 OK) responses, so it's null for all other status codes.
+ * 
+ * Paginated responses also carry the page links from their Link header, keyed by relation(next, last etc.).
+ * 
+ * Responses that tell when to try again, with a Retry-After header, carry that wait in ms, see {@link RetryPolicy}.
+ * 
+ * A 403 is only a rate limit response if it says so, with no requests remaining or a Retry-After. Other 403s(e.g.,
+ * for a blocked repo) come back the same however long we wait, so they are plain errors.
+ *
+ * @author Vinay E.
+ */
+@lombok.Getter
+class APIResponse<Data> {
+	private final int statusCode;
+	private final Data data;
+	private final Map<String, String> links;
+	private final long retryAfterMs;
+	private final boolean rateLimited;
+	
+	APIResponse(int statusCode, Data data) {
+		this(statusCode, data, Collections.<String, String>emptyMap());
+	}
+	
+	APIResponse(int statusCode, Data data, Map<String, String> links) {
+		this(statusCode, data, links, RetryPolicy.NO_RETRY_AFTER);
+	}
+	
+	APIResponse(int statusCode, Data data, Map<String, String> links, long retryAfterMs) {
+		this(statusCode, data, links, retryAfterMs, false);
+	}
+	
+	APIResponse(int statusCode, Data data, Map<String, String> links, long retryAfterMs, boolean rateLimited) {
+		this.statusCode = statusCode;
+		this.data = data;
+		this.links = links;
+		this.retryAfterMs = retryAfterMs;
+		this.rateLimited = rateLimited;
+	}
+}
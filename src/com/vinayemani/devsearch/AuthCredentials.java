@@ -58,6 +58,19 @@ class AuthCredentials {
 		return true;
 	}
 	
+	/**
+	 * A printable name for these credentials that doesn't give away the secret, e.g., 'token ****abcd'. 
+	 */
+	public String getLabel() {
+		if (authScheme == AuthScheme.OAUTH2) {
+			String token = authParams[0];
+			return "token ****" + token.substring(Math.max(token.length() - 4, 0));
+		} else if (authScheme == AuthScheme.BASIC) {
+			return "user " + authParams[0];
+		}
+		return "anonymous";
+	}
+	
 	/**
 	 * GitHub servers require a 'Authorization' header to be passed. Its value typically depends on the
 	 * auth scheme and credentials.
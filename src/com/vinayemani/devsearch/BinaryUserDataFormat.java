@@ -0,0 +1,218 @@
+package com.vinayemani.devsearch;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * BinaryUserDataFormat is a compact binary encoding of user search results, for outputs that are loaded in bulk by
+ * other programs and never read by people. Files start with the magic bytes 'DSUD' and a version byte, followed by
+ * one record per user,
+ *
+ * 	profile     byte 1 if the user has a profile, 0 otherwise, followed by the profile's strings, if any
+ * 	            name, login, companyName, blogUrl, location, email
+ * 	repos       count, followed by name and numCommits of each repo
+ *
+ * Strings are their utf-8 byte length plus one followed by the bytes, a length of 0 meaning null. Counts are
+ * written the same way, a count of 0 meaning a null list. All lengths, counts and numCommits are unsigned
+ * varints(7 bits per byte, least significant group first), so small values take a single byte.
+ *
+ * @author Vinay E.
+ *
+ */
+class BinaryUserDataFormat {
+	private static final byte[] MAGIC = {'D', 'S', 'U', 'D'};
+	private static final int VERSION = 1;
+	
+	/**
+	 * Writes users in the binary format. Users' fields are encoded into a reusable buffer, which goes out to the
+	 * underlying stream only when it fills up and on close, so the stream needn't be buffered.
+	 *
+	 * @author Vinay E.
+	 */
+	static class Writer implements UserDataWriter {
+		private static final int BUFFER_SIZE = 64 * 1024;
+		
+		private final OutputStream out;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private int pos = 0;
+		
+		Writer(OutputStream out) throws IOException {
+			this.out = out;
+			out.write(MAGIC);
+			out.write(VERSION);
+		}
+		
+		@Override
+		public synchronized void write(UserData data) throws IOException {
+			UserProfile profile = data.getProfile();
+			if (profile == null) {
+				writeByte(0);
+			} else {
+				writeByte(1);
+				writeString(profile.getName());
+				writeString(profile.getLogin());
+				writeString(profile.getCompanyName());
+				writeString(profile.getBlogUrl());
+				writeString(profile.getLocation());
+				writeString(profile.getEmail());
+			}
+			
+			List<RepoData> repos = data.getRepos();
+			if (repos == null) {
+				writeVarInt(0);
+			} else {
+				writeVarInt(repos.size() + 1);
+				for (RepoData repo : repos) {
+					writeString(repo.getName());
+					writeVarInt(repo.getNumCommits());
+				}
+			}
+		}
+		
+		private void writeByte(int b) throws IOException {
+			if (pos == buf.length) {
+				flushBuffer();
+			}
+			buf[pos++] = (byte) b;
+		}
+		
+		private void writeVarInt(int value) throws IOException {
+			while ((value & ~0x7f) != 0) {
+				writeByte((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+		
+		private void writeString(String value) throws IOException {
+			if (value == null) {
+				writeVarInt(0);
+				return;
+			}
+			
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length + 1);
+			if (bytes.length > buf.length - pos) {
+				flushBuffer();
+				if (bytes.length > buf.length) {
+					out.write(bytes);
+					return;
+				}
+			}
+			System.arraycopy(bytes, 0, buf, pos, bytes.length);
+			pos += bytes.length;
+		}
+		
+		private void flushBuffer() throws IOException {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				flushBuffer();
+			} finally {
+				out.close();
+			}
+		}
+	}
+	
+	/**
+	 * Reads users back from the binary format, one at a time.
+	 *
+	 * @author Vinay E.
+	 */
+	static class Reader implements UserDataSource {
+		private final InputStream in;
+		
+		Reader(InputStream in) throws IOException {
+			this.in = in;
+			for (byte magic : MAGIC) {
+				if (in.read() != magic) {
+					throw new IOException("Not a devsearch binary user data file");
+				}
+			}
+			int version = in.read();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of devsearch binary user data");
+			}
+		}
+		
+		@Override
+		public UserData next() throws IOException {
+			int hasProfile = in.read();
+			if (hasProfile < 0) {
+				return null;
+			}
+			
+			UserProfile profile = null;
+			if (hasProfile == 1) {
+				profile = new UserProfile(readString(), readString(), readString(), readString(), readString(), readString());
+			}
+			
+			List<RepoData> repos = null;
+			int count = readVarInt();
+			if (count > 0) {
+				repos = new ArrayList<>(count - 1);
+				for (int i = 1; i < count; i++) {
+					String name = readString();
+					repos.add(new RepoData(readVarInt(), name));
+				}
+			}
+			return new UserData(profile, repos);
+		}
+		
+		private int readByte() throws IOException {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated devsearch binary user data");
+			}
+			return b;
+		}
+		
+		private int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint in devsearch binary user data");
+		}
+		
+		private String readString() throws IOException {
+			int length = readVarInt();
+			if (length == 0) {
+				return null;
+			}
+			
+			byte[] bytes = new byte[length - 1];
+			int read = 0;
+			while (read < bytes.length) {
+				int n = in.read(bytes, read, bytes.length - read);
+				if (n < 0) {
+					throw new EOFException("Truncated devsearch binary user data");
+				}
+				read += n;
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.vinayemani.devsearch;
+
+import com.vinayemani.devsearch.data.CircuitState;
+
+/**
+ * CircuitBreaker stops requests from going out while the api is down, so that workers fail fast instead of waiting
+ * on requests that are bound to fail.
+ * 
+ * The breaker starts CLOSED, letting all requests through, and keeps track of the results of the last windowSize
+ * requests. Once at least failureRate of them have failed(broken connections or 5xx responses), it OPENs and
+ * requests fail right away with a {@link CircuitOpenException}. After openMs, it goes HALF_OPEN and lets a single
+ * probe request through: if the probe succeeds the breaker CLOSEs again, otherwise it goes back to OPEN for another
+ * openMs.
+ * 
+ * @author Vinay E.
+ *
+ */
+class CircuitBreaker {
+	// While a probe is out, other requests are told to come back after this long.
+	private static final long PROBE_WAIT_MS = 100;
+	
+	private final double failureRate;
+	private final long openMs;
+	
+	// Results of the last requests, as a ring buffer.
+	private final boolean[] failures;
+	private int next = 0;
+	private int recorded = 0;
+	private int failed = 0;
+	
+	private CircuitState state = CircuitState.CLOSED;
+	private long openedAtMs = 0;
+	private boolean probing = false;
+	
+	// Counts for stats.
+	private long opens = 0;
+	private long rejected = 0;
+	
+	/**
+	 * @param windowSize No. of latest requests the failure rate is computed over.
+	 * @param failureRate The breaker opens when this fraction of the requests in the window failed. Values above 1
+	 * disable the breaker.
+	 * @param openMs How long the breaker stays open before it lets a probe through.
+	 */
+	CircuitBreaker(int windowSize, double failureRate, long openMs) {
+		this.failures = new boolean[Math.max(windowSize, 1)];
+		this.failureRate = failureRate;
+		this.openMs = openMs;
+	}
+	
+	/**
+	 * Lets a request through, or fails it right away if the breaker is open.
+	 * 
+	 * @throws CircuitOpenException If the request must not be made.
+	 */
+	public synchronized void acquire() throws CircuitOpenException {
+		if (state == CircuitState.OPEN && System.currentTimeMillis() - openedAtMs >= openMs) {
+			state = CircuitState.HALF_OPEN;
+		}
+		if (state == CircuitState.OPEN || (state == CircuitState.HALF_OPEN && probing)) {
+			rejected++;
+			long retryAtMs = state == CircuitState.OPEN ? openedAtMs + openMs : System.currentTimeMillis() + PROBE_WAIT_MS;
+			throw new CircuitOpenException("Requests are failing, not trying again for a while", retryAtMs);
+		}
+		if (state == CircuitState.HALF_OPEN) {
+			probing = true;
+		}
+	}
+	
+	/** Records the result of a request that was let through. */
+	public synchronized void record(boolean success) {
+		if (state == CircuitState.HALF_OPEN && probing) {
+			probing = false;
+			if (success) {
+				state = CircuitState.CLOSED;
+				next = recorded = failed = 0;
+			} else {
+				open();
+			}
+			return;
+		}
+		if (state != CircuitState.CLOSED) {
+			// A request let through before the breaker opened.
+			return;
+		}
+		
+		if (recorded == failures.length && failures[next]) {
+			failed--;
+		}
+		failures[next] = !success;
+		if (!success) {
+			failed++;
+		}
+		next = (next + 1) % failures.length;
+		recorded = Math.min(recorded + 1, failures.length);
+		
+		if (recorded == failures.length && failed >= failureRate * failures.length) {
+			open();
+		}
+	}
+	
+	/** Called instead of {@link #record(boolean)} for a request that was let through but not made after all. */
+	public synchronized void cancel() {
+		if (state == CircuitState.HALF_OPEN) {
+			probing = false;
+		}
+	}
+	
+	private void open() {
+		state = CircuitState.OPEN;
+		openedAtMs = System.currentTimeMillis();
+		opens++;
+	}
+	
+	public synchronized CircuitState getState() {
+		if (state == CircuitState.OPEN && System.currentTimeMillis() - openedAtMs >= openMs) {
+			return CircuitState.HALF_OPEN;
+		}
+		return state;
+	}
+	
+	/** No. of times the breaker opened. */
+	public synchronized long getOpens() {
+		return opens;
+	}
+	
+	/** No. of requests failed right away because the breaker was open. */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+}
@@ -0,0 +1,25 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+
+/**
+ * Thrown for requests that weren't made because the {@link CircuitBreaker} is open.
+ * 
+ * @author Vinay E.
+ *
+ */
+class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = 4172395083312659406L;
+	
+	// Time(epoch ms) after which the breaker may let requests through again.
+	private final long retryAtMs;
+	
+	public CircuitOpenException(String message, long retryAtMs) {
+		super(message);
+		this.retryAtMs = retryAtMs;
+	}
+	
+	public long getRetryAtMs() {
+		return retryAtMs;
+	}
+}
@@ -0,0 +1,102 @@
+package com.vinayemani.devsearch;
+
+import java.util.concurrent.ThreadFactory;
+
+import com.vinayemani.devsearch.metrics.MetricsRegistry;
+
+/**
+ * ClientSettings holds the tunable knobs of a {@link GitHubAPIClient}. A default constructed object has
+ * sensible values for all settings, so clients only need to change the ones they care about before passing
+ * it to the api client's constructor.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.Setter
+public class ClientSettings {
+	// Root url of the api, only needs changing for GitHub Enterprise or test servers.
+	private String apiRoot = GitHubAPIClient.GITHUB_API_URL_ROOT;
+	
+	// Max. no. of pooled http connections kept open per route(host) and in total.
+	private int maxConnectionsPerRoute = 8;
+	private int maxConnectionsTotal = 16;
+	
+	// Pooled connections are closed once they are older than this, even if they are still usable.
+	private long connectionTimeToLiveSecs = 300;
+	
+	// Pooled connections sitting idle for this long are evicted from the pool.
+	private long connectionIdleTimeoutSecs = 30;
+	
+	// No. of worker threads running core and search api calls in parallel.
+	private int coreWorkers = 4;
+	private int searchWorkers = 2;
+	
+	// Max. no. of users of a search waiting for their turn in the queues. Reading input is paused while this many
+	// are waiting, so memory use stays flat however large the input is.
+	private int maxPendingUsers = 1000;
+	
+	// Equal user keys are searched for once, and users with the same login are fetched once. Results are
+	// remembered for this many of the most recently seen keys and logins, to be handed to later duplicates.
+	private int maxCoalescedResults = 10000;
+	
+	// Logins found for user keys and data fetched for logins can be cached by the client across searches, for up to
+	// this many keys and as many logins, each for lookupCacheTtlSecs. The cache is disabled when this is 0.
+	private int lookupCacheMaxEntries = 0;
+	private long lookupCacheTtlSecs = 3600;
+	
+	// Creates the worker threads, plain platform threads are used when this is null.
+	private ThreadFactory workerThreadFactory = null;
+	
+	// Requests are paced to spread the remaining quota over the rate limit window, but up to this many
+	// requests per category may go out back to back.
+	private int rateLimitBurst = 10;
+	
+	// Directory of the persistent response cache, caching is disabled when this is null.
+	private String responseCacheDir = null;
+	
+	// Max. total size of cached response bodies, least recently used ones are evicted beyond this.
+	private long responseCacheMaxBytes = 256L * 1024 * 1024;
+	
+	// Max. no. of pages of a single paginated listing fetched in parallel.
+	private int pageFetchConcurrency = 4;
+	
+	// How user data is fetched once a user is found.
+	private FetchEngine fetchEngine = FetchEngine.REST;
+	
+	// With the GraphQL engine, up to this many users are fetched in a single query. A query is sent once it is full or
+	// once its first user has waited this long for others to join.
+	private int graphqlBatchSize = 10;
+	private long graphqlBatchLingerMs = 50;
+	
+	// Requests failing with transient errors(broken connections, 5xx responses, secondary rate limits) get up to
+	// this many tries in all. Waits between tries start at retryBaseDelayMs and double with each try, up to
+	// retryMaxDelayMs, with random jitter. Retries are disabled when this is 1.
+	private int maxRequestAttempts = 4;
+	private long retryBaseDelayMs = 500;
+	private long retryMaxDelayMs = 30000;
+	
+	// Requests in flight are capped by a limit that's halved when the api's error rate or p99 latency goes up, and
+	// raised again, one at a time up to maxConnectionsTotal, while it's healthy.
+	private boolean adaptiveConcurrency = true;
+	
+	// Once circuitBreakerFailureRate of the last circuitBreakerWindow requests failed(broken connections or 5xx
+	// responses), requests fail right away for circuitBreakerOpenMs, after which a single request is let through to
+	// see if the api is back. The breaker is disabled with a failure rate above 1.
+	private int circuitBreakerWindow = 20;
+	private double circuitBreakerFailureRate = 0.5;
+	private long circuitBreakerOpenMs = 30000;
+	
+	// Journal of the progress of file to file searches, used to resume an interrupted search. Journaling is disabled
+	// when this is null.
+	private String journalPath = null;
+	
+	// Receives the client's measurements of its own work(request latencies, queue depths, rate limit waits etc.), an
+	// in-memory registry is used when this is null, see GitHubAPIClient#getMetrics().
+	private MetricsRegistry metricsRegistry = null;
+	
+	// A snapshot of the metrics is appended to this file every metricsDumpIntervalSecs, and once more when the
+	// client is closed. Dumping is disabled when this is null.
+	private String metricsDumpPath = null;
+	private long metricsDumpIntervalSecs = 60;
+}
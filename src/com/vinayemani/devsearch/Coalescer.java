@@ -0,0 +1,135 @@
+package com.vinayemani.devsearch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalescer lets jobs with equal inputs share a single api call. The first job with a given input becomes its leader
+ * and is the only one that's actually run, later jobs with the same input wait for the leader's result. Once the
+ * result is in, it's delivered to the leader and all its waiters, and remembered for jobs with that input that come
+ * later still. Only a bounded no. of results are remembered, least recently used ones are forgotten first.
+ *
+ * Errors and missed deadlines aren't remembered, so a later job with the same input gets another try.
+ *
+ * Successful results can also be stored in a longer lived cache.
+ *
+ * @author Vinay E.
+ *
+ */
+class Coalescer<K, V> {
+	
+	/**
+	 * Delivery tells the coalescer what to do with the result of a job. The result comes with the key id of the
+	 * leader whose job produced it, or {@link #NO_LEADER} if it's a remembered result.
+	 *
+	 * @author Vinay E.
+	 */
+	interface Delivery<V> {
+		void deliver(long keyId, V value, APICallResultType resultType, long leaderKeyId);
+	}
+	
+	/** Leader key id of remembered results. */
+	static final long NO_LEADER = -1;
+	
+	// Result of a finished job.
+	private static class Result<V> {
+		private final V value;
+		private final APICallResultType resultType;
+		
+		private Result(V value, APICallResultType resultType) {
+			this.value = value;
+			this.resultType = resultType;
+		}
+	}
+	
+	private final Delivery<V> delivery;
+	
+	// Jobs waiting for a result, by input, the leader being the first.
+	private final Map<K, List<Long>> waiting = new HashMap<>();
+	
+	// Input of each leader.
+	private final Map<Long, K> leaders = new HashMap<>();
+	
+	// Results of finished jobs, in least to most recently used order.
+	private final LinkedHashMap<K, Result<V>> finished;
+	
+	// Gets the successful results, may be null.
+	private final LookupCache<K, V> cache;
+	
+	Coalescer(Delivery<V> delivery, int maxFinished) {
+		this(delivery, maxFinished, null);
+	}
+	
+	Coalescer(Delivery<V> delivery, final int maxFinished, LookupCache<K, V> cache) {
+		this.delivery = delivery;
+		this.cache = cache;
+		this.finished = new LinkedHashMap<K, Result<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = -3871045566154519826L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Result<V>> eldest) {
+				return size() > maxFinished;
+			}
+		};
+	}
+	
+	/**
+	 * Adds a job for the given input.
+	 *
+	 * @return true if the job is the input's leader and must be run, false if its result will be delivered without
+	 * running it. If the input's result is already known, it's delivered before returning.
+	 */
+	public boolean join(K input, long keyId) {
+		Result<V> result;
+		synchronized (this) {
+			result = finished.get(input);
+			if (result == null) {
+				List<Long> waiters = waiting.get(input);
+				if (waiters != null) {
+					waiters.add(keyId);
+					return false;
+				}
+				
+				waiters = new ArrayList<>();
+				waiters.add(keyId);
+				waiting.put(input, waiters);
+				leaders.put(keyId, input);
+				return true;
+			}
+		}
+		
+		delivery.deliver(keyId, result.value, result.resultType, NO_LEADER);
+		return false;
+	}
+	
+	/**
+	 * Hands the result of a leader's job to the leader and its waiters. The leader gets it last, so whatever the
+	 * delivery keeps about the leader's job is still around while the waiters get it.
+	 */
+	public void finish(long leaderKeyId, V value, APICallResultType resultType) {
+		List<Long> waiters;
+		synchronized (this) {
+			K input = leaders.remove(leaderKeyId);
+			if (input == null) {
+				// Not a job of this coalescer.
+				waiters = new ArrayList<>();
+				waiters.add(leaderKeyId);
+			} else {
+				waiters = waiting.remove(input);
+				if (resultType == APICallResultType.SUCCESS || resultType == APICallResultType.NO_MATCH) {
+					finished.put(input, new Result<>(value, resultType));
+				}
+				if (cache != null && resultType == APICallResultType.SUCCESS) {
+					cache.put(input, value);
+				}
+			}
+		}
+		
+		for (int i = waiters.size() - 1; i >= 0; i--) {
+			delivery.deliver(waiters.get(i), value, resultType, leaderKeyId);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.vinayemani.devsearch;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrencyLimiter caps the no. of requests in flight at a time, and adapts the cap to how the api is doing, using
+ * additive increase/multiplicative decrease(AIMD).
+ * 
+ * Requests are looked at in windows of {@link #WINDOW_SIZE} completed requests. A window is unhealthy if more than
+ * {@link #MAX_ERROR_RATE} of its requests failed(broken connections, 5xx responses, or being told to back off), or
+ * its p99 latency is more than {@link #LATENCY_TOLERANCE} times the usual p99 latency. After an unhealthy window the
+ * cap is halved, after a healthy one it goes up by 1, up to the max. The usual p99 latency is a moving average of the
+ * p99 latencies of healthy windows.
+ * 
+ * Latency is measured up to the response headers, and a request's slot is given back as soon as they are in.
+ * 
+ * @author Vinay E.
+ *
+ */
+class ConcurrencyLimiter {
+	static final int WINDOW_SIZE = 50;
+	static final double MAX_ERROR_RATE = 0.1;
+	static final double LATENCY_TOLERANCE = 2.0;
+	
+	// Weight of the latest healthy window in the usual p99 latency.
+	private static final double BASELINE_WEIGHT = 0.2;
+	
+	private final int maxLimit;
+	private int limit;
+	private int inFlight = 0;
+	
+	// The current window.
+	private final long[] latencies = new long[WINDOW_SIZE];
+	private int samples = 0;
+	private int errors = 0;
+	
+	// Usual p99 latency in ns, 0 until the first window is done.
+	private double baselineNanos = 0;
+	private long lastP99Nanos = 0;
+	private long decreases = 0;
+	
+	ConcurrencyLimiter(int maxLimit) {
+		this.maxLimit = Math.max(maxLimit, 1);
+		this.limit = this.maxLimit;
+	}
+	
+	/** Blocks until there is room for another request in flight. */
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			wait();
+		}
+		inFlight++;
+	}
+	
+	/**
+	 * Gives back the slot of a request that's done.
+	 * 
+	 * @param latencyNanos Time the request took.
+	 * @param failed Whether the request failed in a way that suggests the api is overloaded.
+	 */
+	public synchronized void release(long latencyNanos, boolean failed) {
+		inFlight--;
+		latencies[samples++] = latencyNanos;
+		if (failed) {
+			errors++;
+		}
+		if (samples == WINDOW_SIZE) {
+			endWindow();
+		}
+		notifyAll();
+	}
+	
+	private void endWindow() {
+		Arrays.sort(latencies);
+		long p99 = latencies[(int) Math.ceil(0.99 * WINDOW_SIZE) - 1];
+		boolean healthy = errors <= MAX_ERROR_RATE * WINDOW_SIZE 
+				&& (baselineNanos == 0 || p99 <= LATENCY_TOLERANCE * baselineNanos);
+		if (healthy) {
+			baselineNanos = baselineNanos == 0 ? p99 : (1 - BASELINE_WEIGHT) * baselineNanos + BASELINE_WEIGHT * p99;
+			limit = Math.min(limit + 1, maxLimit);
+		} else {
+			limit = Math.max(limit / 2, 1);
+			decreases++;
+		}
+		lastP99Nanos = p99;
+		samples = 0;
+		errors = 0;
+	}
+	
+	public synchronized int getLimit() {
+		return limit;
+	}
+	
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	/** No. of times the limit was cut. */
+	public synchronized long getDecreases() {
+		return decreases;
+	}
+	
+	/** p99 latency of the last full window in ms. */
+	public synchronized long getLastP99Ms() {
+		return TimeUnit.NANOSECONDS.toMillis(lastP99Nanos);
+	}
+}
@@ -1,32 +1,104 @@
 package com.vinayemani.devsearch;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
-import org.json.JSONArray;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.vinayemani.devsearch.data.APIRateLimit;
+import com.vinayemani.devsearch.CredentialPool.PooledCredential;
+import com.vinayemani.devsearch.data.ConnectionStats;
+import com.vinayemani.devsearch.data.FlowControlStats;
+import com.vinayemani.devsearch.data.TokenUsage;
+import com.vinayemani.devsearch.metrics.InMemoryMetricsRegistry;
+import com.vinayemani.devsearch.metrics.MetricsRegistry;
 
 /**
  * A Connection object prevents a simple interface for making successful api requests, by hiding the state and logic 
  * required. e.g., it stores the credentials, sets certain request headers etc...
  * 
+ * All requests made through a Connection share a single pooled http client, so TCP/TLS connections to the api
+ * host are kept alive and reused across calls instead of being set up afresh for every request. The pool must be
+ * released by calling {@link #close()} once the connection is no longer needed.
+ * 
+ * Requests are made with credentials picked from a {@link CredentialPool} and paced by the chosen credential's
+ * {@link RateLimitScheduler}, which is kept up to date from the rate limit headers of every response.
+ * 
+ * If a {@link ResponseCache} directory is configured, responses are cached on disk and revalidated with
+ * conditional requests, so unchanged data doesn't use up the rate limit.
+ * 
+ * Requests that fail with transient errors are made again as per a {@link RetryPolicy}. Each try picks its
+ * credential afresh and is paced like any other request, so retries don't hammer the api.
+ * 
+ * While the api is struggling, fewer requests are let out at a time(see {@link ConcurrencyLimiter}), and while it's
+ * down, requests fail right away instead of going out(see {@link CircuitBreaker}).
+ * 
+ * Every request sent is timed and its body bytes counted per end point, and time spent waiting on the rate limit is
+ * timed per category, in the connection's {@link MetricsRegistry}. Remaining quotas and the flow control state are
+ * registered there as gauges.
+ * 
  * @author Vinay E.
  *
  */
-class Connection {
+class Connection implements Closeable {
 	public static final String RESP_CODE_KEY = "respCode";
 	public static final int RESP_CODE_OK = 200;
+	public static final int RESP_CODE_NOT_MODIFIED = 304;
 	public static final int RESP_CODE_UNAUTHORIZED = 401;
 	public static final int RESP_CODE_FORBIDDEN = 403;
 	public static final int RESP_CODE_NOT_FOUND = 404;
-
+	public static final int RESP_CODE_TOO_MANY_REQUESTS = 429;
+	
 	public static final String RESP_DATA_KEY = "data";
 	
 	private static final String AUTH_HEADER_KEY = "Authorization";
@@ -35,109 +107,700 @@ class Connection {
 	private static final String ACCEPT_HEADER_VALUE = "application/vnd.github.v3+json";
 	private static final String DEV_SEARCH_TOOL_APP_NAME = "Dev Search Tool";
 	
-	private final AuthCredentials credentials;
+	// Rate limit status headers sent by GitHub with every response.
+	private static final String RATE_LIMIT_LIMIT_HEADER = "X-RateLimit-Limit";
+	private static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
+	private static final String RATE_LIMIT_RESET_HEADER = "X-RateLimit-Reset";
+	private static final String RATE_LIMIT_RESOURCE_HEADER = "X-RateLimit-Resource";
+	
+	// Cache validation headers.
+	private static final String ETAG_HEADER = "ETag";
+	private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+	
+	// Sent with 5xx and secondary rate limit responses, tells how long to wait before retrying.
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	
+	// Pagination header, holds links to the next, last etc. pages of a paginated response.
+	private static final String LINK_HEADER = "Link";
+	private static final Pattern LINK_PATTERN = Pattern.compile("<([^>]*)>\\s*;\\s*rel=\"([^\"]*)\"");
+	
+	private static final String SEARCH_PATH_PREFIX = "/search/";
+	private static final String RATE_LIMIT_PATH = "/rate_limit";
+	private static final String GRAPHQL_PATH = "/graphql";
+	private static final String JSON_CONTENT_TYPE = "application/json";
+	
+	private final String apiRoot;
+	private final CredentialPool credentialPool;
+	private final PoolingHttpClientConnectionManager connManager;
+	private final CloseableHttpClient client;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker breaker;
+	
+	// Limits requests in flight, null if adaptive concurrency is disabled.
+	private final ConcurrencyLimiter limiter;
+	
+	// Fetches the pages of paginated listings in parallel, see getSequence().
+	private final ExecutorService pageExecutor;
+	private final int pageFetchConcurrency;
+	
+	// Persistent response cache, null if caching is disabled.
+	private final ResponseCache cache;
+	private final String cacheScope;
+	
+	// Counts of connections opened and requests sent, requests that didn't need a new connection reused one.
+	private final AtomicLong newConnections = new AtomicLong();
+	private final AtomicLong totalRequests = new AtomicLong();
+	
+	private final MetricsRegistry metrics;
 	
 	public Connection(AuthCredentials credentials) {
-		this.credentials = credentials;
+		this(credentials, new ClientSettings());
+	}
+	
+	public Connection(AuthCredentials credentials, ClientSettings settings) {
+		this(Collections.singletonList(credentials), settings);
+	}
+	
+	/** A connection that spreads its requests over a pool of credentials, see {@link CredentialPool}. */
+	public Connection(List<AuthCredentials> credentials, ClientSettings settings) {
+		this.apiRoot = settings.getApiRoot();
+		this.credentialPool = new CredentialPool(credentials, settings.getRateLimitBurst());
+		this.cacheScope = credentialPool.getScope();
+		this.metrics = settings.getMetricsRegistry() != null ? settings.getMetricsRegistry() : new InMemoryMetricsRegistry();
+		if (settings.getResponseCacheDir() != null) {
+			try {
+				this.cache = new ResponseCache(settings.getResponseCacheDir(), settings.getResponseCacheMaxBytes());
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Unusable response cache directory " + settings.getResponseCacheDir(), e);
+			}
+		} else {
+			this.cache = null;
+		}
+		
+		Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", SSLConnectionSocketFactory.getSocketFactory())
+				.build();
+		HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory = 
+				new HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection>() {
+			@Override
+			public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+				newConnections.incrementAndGet();
+				return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+			}
+		};
+		connManager = new PoolingHttpClientConnectionManager(socketFactories, connFactory, null, null, 
+				settings.getConnectionTimeToLiveSecs(), TimeUnit.SECONDS);
+		connManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+		connManager.setMaxTotal(Math.max(settings.getMaxConnectionsTotal(), settings.getMaxConnectionsPerRoute()));
+		
+		retryPolicy = new RetryPolicy(settings.getMaxRequestAttempts(), settings.getRetryBaseDelayMs(), 
+				settings.getRetryMaxDelayMs());
+		breaker = new CircuitBreaker(settings.getCircuitBreakerWindow(), settings.getCircuitBreakerFailureRate(), 
+				settings.getCircuitBreakerOpenMs());
+		limiter = settings.isAdaptiveConcurrency() ? new ConcurrencyLimiter(connManager.getMaxTotal()) : null;
+		
+		long idleTimeoutMs = settings.getConnectionIdleTimeoutSecs() * 1000;
+		client = HttpClients.custom()
+				.setConnectionManager(connManager)
+				.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+					@Override
+					public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+						// Honor the server's Keep-Alive header if present, otherwise keep the connection around
+						// until it is evicted for being idle.
+						long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+						return duration > 0 ? Math.min(duration, idleTimeoutMs) : idleTimeoutMs;
+					}
+				})
+				.addInterceptorLast(new HttpResponseInterceptor() {
+					@Override
+					public void process(HttpResponse response, HttpContext context) {
+						totalRequests.incrementAndGet();
+					}
+				})
+				// Retries are left to the retry policy, so that they count against its budget and back off.
+				.disableAutomaticRetries()
+				.evictExpiredConnections()
+				.evictIdleConnections(settings.getConnectionIdleTimeoutSecs(), TimeUnit.SECONDS)
+				.build();
+		
+		// More page fetches than connections per route would just wait on the connection pool.
+		final AtomicInteger pageThreadCount = new AtomicInteger();
+		pageExecutor = Executors.newFixedThreadPool(settings.getMaxConnectionsPerRoute(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "devsearch-pages-" + pageThreadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pageFetchConcurrency = settings.getPageFetchConcurrency();
+		registerGauges();
+	}
+	
+	private void registerGauges() {
+		for (final String category : new String[] {GitHubAPIClient.RATE_LIMIT_CORE_KEY, GitHubAPIClient.RATE_LIMIT_SEARCH_KEY,
+				GitHubAPIClient.RATE_LIMIT_GRAPHQL_KEY}) {
+			metrics.gauge("devsearch.ratelimit.remaining", new MetricsRegistry.Gauge() {
+				@Override
+				public double value() {
+					APIRateLimit limit = credentialPool.getRateLimit(category);
+					return limit == null ? Double.NaN : limit.getRequestsLeft();
+				}
+			}, "category", category);
+		}
+		
+		metrics.gauge("devsearch.concurrency.limit", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return limiter == null ? connManager.getMaxTotal() : limiter.getLimit();
+			}
+		});
+		metrics.gauge("devsearch.concurrency.inflight", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return limiter == null ? connManager.getTotalStats().getLeased() : limiter.getInFlight();
+			}
+		});
+		metrics.gauge("devsearch.concurrency.decreases", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return limiter == null ? 0 : limiter.getDecreases();
+			}
+		});
+		
+		// Ordinal of the CircuitState, i.e., 0 closed, 1 open and 2 half open.
+		metrics.gauge("devsearch.circuit.state", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return breaker.getState().ordinal();
+			}
+		});
+		metrics.gauge("devsearch.circuit.opens", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return breaker.getOpens();
+			}
+		});
+		metrics.gauge("devsearch.circuit.rejected", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return breaker.getRejected();
+			}
+		});
+	}
+	
+	/** Full url of an api end point, null if the end point doesn't make a valid url. */
+	public URI apiURI(String endPoint) {
+		try {
+			return new URI(apiRoot + endPoint);
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Rate limit state of a category(core/search/graphql) as seen in the latest response headers, combined across all
+	 * credentials of this connection.
+	 */
+	public APIRateLimit getRateLimit(String category) {
+		return credentialPool.getRateLimit(category);
+	}
+	
+	/** Per credential usage stats. */
+	public List<TokenUsage> getTokenUsage() {
+		return credentialPool.getUsage();
+	}
+	
+	/** Usage stats of the pooled connections so far. */
+	public ConnectionStats getStats() {
+		long opened = newConnections.get();
+		return new ConnectionStats(opened, Math.max(totalRequests.get() - opened, 0));
+	}
+	
+	/** Registry the connection's metrics are recorded in. */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/** Current state of the circuit breaker and the concurrency limit. */
+	public FlowControlStats getFlowControlStats() {
+		return new FlowControlStats(breaker.getState(), breaker.getOpens(), breaker.getRejected(), 
+				limiter == null ? connManager.getMaxTotal() : limiter.getLimit(), limiter == null ? 0 : limiter.getInFlight(),
+				limiter == null ? 0 : limiter.getDecreases(), limiter == null ? 0 : limiter.getLastP99Ms());
+	}
+	
+	/** Shuts down the connection pool, its eviction thread and the page fetch threads. Requests can't be made after this. */
+	@Override
+	public void close() throws IOException {
+		pageExecutor.shutdownNow();
+		client.close();
+	}
+	
+	/** Rate limit category a request counts against, null for requests that aren't rate limited. */
+	private static String rateLimitCategory(URI uri) {
+		String path = uri.getPath();
+		if (path.equals(RATE_LIMIT_PATH)) {
+			return null;
+		}
+		if (path.endsWith(GRAPHQL_PATH)) {
+			return GitHubAPIClient.RATE_LIMIT_GRAPHQL_KEY;
+		}
+		return path.startsWith(SEARCH_PATH_PREFIX) ? GitHubAPIClient.RATE_LIMIT_SEARCH_KEY : GitHubAPIClient.RATE_LIMIT_CORE_KEY;
+	}
+	
+	/** Name of the end point a request is made to, requests are measured per end point. */
+	static String endPointName(URI uri) {
+		String path = uri.getPath();
+		if (path.equals(RATE_LIMIT_PATH)) {
+			return "rate_limit";
+		} else if (path.endsWith(GRAPHQL_PATH)) {
+			return "graphql";
+		} else if (path.startsWith(SEARCH_PATH_PREFIX)) {
+			return "search";
+		} else if (path.startsWith(GitHubAPIClient.GET_USER_ENDPOINT)) {
+			return path.endsWith("/repos") ? "repos" : "user";
+		} else if (path.startsWith(GitHubAPIClient.GET_REPO_ENDPOINT) && path.endsWith("/commits")) {
+			return "commits";
+		}
+		return "other";
+	}
+	
+	/** Picks the credential to make a request of the given category with, waiting for the rate limit if needed. */
+	private PooledCredential acquireCredential(String category) throws IOException {
+		long startNanos = System.nanoTime();
+		try {
+			PooledCredential pooled = credentialPool.acquire(category);
+			if (category != null) {
+				metrics.timer("devsearch.ratelimit.wait", "category", category).record(System.nanoTime() - startNanos);
+			}
+			return pooled;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for rate limit");
+		}
+	}
+	
+	/**
+	 * Sends a request made with a pooled credential and feeds the rate limit headers of the response back to that
+	 * credential's scheduler.
+	 */
+	private CloseableHttpResponse execute(HttpRequestBase request, PooledCredential pooled, String category) throws IOException {
+		CloseableHttpResponse resp = send(request);
+		Header limit = resp.getFirstHeader(RATE_LIMIT_LIMIT_HEADER);
+		Header remaining = resp.getFirstHeader(RATE_LIMIT_REMAINING_HEADER);
+		Header reset = resp.getFirstHeader(RATE_LIMIT_RESET_HEADER);
+		Header resource = resp.getFirstHeader(RATE_LIMIT_RESOURCE_HEADER);
+		if (resource != null) {
+			category = resource.getValue();
+		}
+		
+		if (category != null && limit != null && remaining != null && reset != null) {
+			try {
+				pooled.getScheduler().update(category, Integer.parseInt(limit.getValue()), Integer.parseInt(remaining.getValue()),
+						Long.parseLong(reset.getValue()));
+			} catch (NumberFormatException e) {
+				// Ignore malformed headers.
+			}
+		}
+		return resp;
+	}
+	
+	/**
+	 * Sends a request, if the circuit breaker lets it through, once the concurrency limiter has room for it. The
+	 * request's result is fed back to both.
+	 * 
+	 * @throws CircuitOpenException If the breaker is open.
+	 */
+	private CloseableHttpResponse send(HttpRequestBase request) throws IOException {
+		breaker.acquire();
+		if (limiter != null) {
+			try {
+				limiter.acquire();
+			} catch (InterruptedException e) {
+				breaker.cancel();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to send a request");
+			}
+		}
+		
+		long startNanos = System.nanoTime();
+		boolean failed = true, overloaded = true;
+		String endPoint = endPointName(request.getURI()), status = "io_error";
+		try {
+			CloseableHttpResponse resp = client.execute(request);
+			int respCode = resp.getStatusLine().getStatusCode();
+			failed = respCode >= 500;
+			overloaded = failed || resp.getFirstHeader(RETRY_AFTER_HEADER) != null;
+			status = Integer.toString(respCode);
+			if (resp.getEntity() != null) {
+				resp.setEntity(new CountingEntity(resp.getEntity(), metrics.counter("devsearch.http.received.bytes", 
+						"endpoint", endPoint)));
+			}
+			return resp;
+		} finally {
+			long latencyNanos = System.nanoTime() - startNanos;
+			breaker.record(!failed);
+			if (limiter != null) {
+				limiter.release(latencyNanos, overloaded);
+			}
+			metrics.timer("devsearch.http.requests", "endpoint", endPoint, "status", status).record(latencyNanos);
+		}
+	}
+	
+	/**
+	 * Counts the bytes of a response body as they're read. Bytes left unread are counted too, when the body is drained
+	 * on release.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class CountingEntity extends HttpEntityWrapper {
+		private final MetricsRegistry.Counter counter;
+		private InputStream content = null;
+		
+		CountingEntity(HttpEntity entity, MetricsRegistry.Counter counter) {
+			super(entity);
+			this.counter = counter;
+		}
+		
+		@Override
+		public InputStream getContent() throws IOException {
+			if (content == null) {
+				content = new FilterInputStream(super.getContent()) {
+					@Override
+					public int read() throws IOException {
+						int b = super.read();
+						if (b >= 0) {
+							counter.increment(1);
+						}
+						return b;
+					}
+					
+					@Override
+					public int read(byte[] buf, int off, int len) throws IOException {
+						int read = super.read(buf, off, len);
+						if (read > 0) {
+							counter.increment(read);
+						}
+						return read;
+					}
+					
+					@Override
+					public long skip(long n) throws IOException {
+						long skipped = super.skip(n);
+						counter.increment(skipped);
+						return skipped;
+					}
+					
+					@Override
+					public void close() throws IOException {
+						try {
+							byte[] buf = new byte[4096];
+							while (read(buf, 0, buf.length) > 0) {
+								// Drain the rest, so that it's counted.
+							}
+						} finally {
+							super.close();
+						}
+					}
+				};
+			}
+			return content;
+		}
 	}
 	
 	// A small helper routine to construct get requests for GitHub API.
-	private HttpGet buildAPIGetRequest(URI uri) {
+	private HttpGet buildAPIGetRequest(URI uri, AuthCredentials credentials) {
 		HttpGet get = new HttpGet(uri);
-		
+		addAPIHeaders(get, credentials);
+		return get;
+	}
+	
+	private static void addAPIHeaders(HttpRequestBase request, AuthCredentials credentials) {
 		// GitHub documentation suggests 'Accept' header be included in requests.
-		get.addHeader(ACCEPT_HEADER_KEY, ACCEPT_HEADER_VALUE);
+		request.addHeader(ACCEPT_HEADER_KEY, ACCEPT_HEADER_VALUE);
 		
 		// User-Agent can't be empty for github requests.
-		get.addHeader(USER_AGENT_HEADER_KEY, DEV_SEARCH_TOOL_APP_NAME);
+		request.addHeader(USER_AGENT_HEADER_KEY, DEV_SEARCH_TOOL_APP_NAME);
 		
 		// Authentication is done via passing the Authorization header.
 		AuthScheme scheme = credentials.getAuthScheme();
 		if (scheme == AuthScheme.BASIC || scheme == AuthScheme.OAUTH2) {
-			get.addHeader(AUTH_HEADER_KEY, credentials.getAuthHeader());
+			request.addHeader(AUTH_HEADER_KEY, credentials.getAuthHeader());
 		}
-		return get;
 	}
 	
 	/**
-	 * The primary interface of this class. Given an encoded url, it makes a request to the server
-	 * and parses the output(json) into a {@link JSONObject} which can then be converted to application objects.
-	 *   
-	 * @param url An api end point url with special chars encoded.
+	 * ResponseParser tells the connection how to pull application data out of a response body. Parsers read
+	 * straight off the response stream, so the body is never held in memory as a whole.
+	 * 
+	 * @author Vinay E.
+	 */
+	interface ResponseParser<Data> {
+		Data parse(JsonReader reader) throws IOException;
+	}
+	
+	/**
+	 * The primary interface of this class. Given an encoded url, it makes a request to the server and, if the
+	 * request succeeds, hands the response body to the given parser as it streams in. Transient failures are
+	 * retried, so the response is that of the last try.
+	 * 
+	 * @param uri An api end point url with special chars encoded.
+	 * @param parser Pulls the required data out of a successful response.
 	 * 
-	 * @return Received response(json) as a JsonObject.
+	 * @return Status code of the response, along with the parsed data.
 	 * 
-	 * @throws IOException
+	 * @throws IOException If the last try failed without a response.
 	 */
-	public JSONObject getResponse(URI url) throws IOException {
-		CloseableHttpClient client = HttpClients.createDefault();
+	public <Data> APIResponse<Data> get(URI uri, ResponseParser<Data> parser) throws IOException {
+		return retryPolicy.execute(new RetryPolicy.Attempt<Data>() {
+			@Override
+			public APIResponse<Data> run() throws IOException {
+				return get(uri, parser, cache != null);
+			}
+		});
+	}
+	
+	private <Data> APIResponse<Data> get(URI uri, ResponseParser<Data> parser, boolean useCache) throws IOException {
+		String category = rateLimitCategory(uri);
+		ResponseCache.Entry cached = useCache ? cache.lookup(cacheScope, uri) : null;
 		CloseableHttpResponse resp = null;
-		HttpGet get = buildAPIGetRequest(url);
-		
-		JSONObject obj = new JSONObject();
 		try {
-			resp = client.execute(get);
+			PooledCredential pooled = acquireCredential(category);
+			HttpGet get = buildAPIGetRequest(uri, pooled.getCredentials());
+			if (cached != null) {
+				// Ask the server to send the body only if it has changed since we cached it.
+				if (cached.getEtag() != null) {
+					get.addHeader(IF_NONE_MATCH_HEADER, cached.getEtag());
+				}
+				if (cached.getLastModified() != null) {
+					get.addHeader(IF_MODIFIED_SINCE_HEADER, cached.getLastModified());
+				}
+			}
+			
+			resp = execute(get, pooled, category);
 			int respCode = resp.getStatusLine().getStatusCode();
-			obj.put(RESP_CODE_KEY, respCode);
-			obj.put(RESP_DATA_KEY, new JSONObject(readStringFromEntity(resp.getEntity())));
-			return obj;
-		} catch (IOException e) {
-			if (resp != null) {
-				resp.close();
+			if (respCode == RESP_CODE_NOT_MODIFIED && cached != null) {
+				// Not modified responses don't count against the rate limit.
+				pooled.getScheduler().refund(category);
+				InputStream body;
+				try {
+					body = cache.openBody(cached);
+				} catch (IOException e) {
+					// Evicted in the mean time, fetch it afresh.
+					release(resp);
+					resp = null;
+					return get(uri, parser, false);
+				}
+				
+				Header link = resp.getFirstHeader(LINK_HEADER);
+				try (InputStream in = body) {
+					return new APIResponse<>(RESP_CODE_OK, parse(parser, in), 
+							parseLinks(link != null ? link.getValue() : cached.getLink()));
+				}
 			}
+			
+			Data data = null;
+			Header link = resp.getFirstHeader(LINK_HEADER);
+			if (respCode == RESP_CODE_OK) {
+				InputStream in = resp.getEntity().getContent();
+				Header etag = resp.getFirstHeader(ETAG_HEADER);
+				Header lastModified = resp.getFirstHeader(LAST_MODIFIED_HEADER);
+				ResponseCache.StoringInputStream storing = null;
+				if (cache != null && (etag != null || lastModified != null)) {
+					storing = cache.store(cacheScope, uri, etag == null ? null : etag.getValue(),
+							lastModified == null ? null : lastModified.getValue(), link == null ? null : link.getValue(), in);
+					in = storing;
+				}
+				
+				try {
+					data = parse(parser, in);
+					if (storing != null) {
+						storing.commit();
+						storing = null;
+					}
+				} finally {
+					if (storing != null) {
+						storing.discard();
+					}
+				}
+			}
+			return new APIResponse<>(respCode, data, parseLinks(link == null ? null : link.getValue()), retryAfterMs(resp),
+					isRateLimited(resp));
+		} finally {
+			release(resp);
 		}
-		return null;
 	}
 	
 	/**
-	 * Similar to {@link #getResponse(URI)}, this method parses the json response into a JsonArray object.
-	 * This is used in cases where the response is an array of elements, e.g., when we are listing a user's repos.
+	 * Whether a response was refused for the rate limit, i.e., it's a 429, or a 403 with no requests remaining or with
+	 * a Retry-After(as secondary rate limits have). Other 403s are for things like blocked repos, and waiting for a
+	 * reset won't change them.
+	 */
+	static boolean isRateLimited(HttpResponse resp) {
+		int respCode = resp.getStatusLine().getStatusCode();
+		if (respCode == RESP_CODE_TOO_MANY_REQUESTS) {
+			return true;
+		} else if (respCode != RESP_CODE_FORBIDDEN) {
+			return false;
+		}
+		Header remaining = resp.getFirstHeader(RATE_LIMIT_REMAINING_HEADER);
+		return (remaining != null && remaining.getValue().trim().equals("0")) || resp.getFirstHeader(RETRY_AFTER_HEADER) != null;
+	}
+	
+	private static long retryAfterMs(HttpResponse resp) {
+		Header retryAfter = resp.getFirstHeader(RETRY_AFTER_HEADER);
+		return RetryPolicy.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue(), System.currentTimeMillis());
+	}
+	
+	/**
+	 * Iterates over all elements of a paginated listing, whose pages are parsed by the given parser. Pages are fetched
+	 * lazily as the iteration proceeds, see {@link PagedSequence}.
+	 * 
+	 * @param uri Url of the first page of the listing.
+	 * @param pageParser Pulls the elements out of a single page.
+	 */
+	public <T> PagedSequence<T> getSequence(URI uri, ResponseParser<List<T>> pageParser) {
+		return new PagedSequence<>(this, uri, pageParser, pageExecutor, pageFetchConcurrency);
+	}
+	
+	/**
+	 * Posts a json body to an api end point(e.g., a GraphQL query) and hands the response body to the given parser.
+	 * Posts are rate limited and retried like gets, but never cached.
+	 * 
+	 * @return Status code of the response, along with the parsed data.
+	 */
+	public <Data> APIResponse<Data> post(URI uri, String jsonBody, ResponseParser<Data> parser) throws IOException {
+		return retryPolicy.execute(new RetryPolicy.Attempt<Data>() {
+			@Override
+			public APIResponse<Data> run() throws IOException {
+				return postOnce(uri, jsonBody, parser);
+			}
+		});
+	}
+	
+	private <Data> APIResponse<Data> postOnce(URI uri, String jsonBody, ResponseParser<Data> parser) throws IOException {
+		String category = rateLimitCategory(uri);
+		CloseableHttpResponse resp = null;
+		try {
+			PooledCredential pooled = acquireCredential(category);
+			HttpPost post = new HttpPost(uri);
+			addAPIHeaders(post, pooled.getCredentials());
+			post.setEntity(new StringEntity(jsonBody, ContentType.create(JSON_CONTENT_TYPE, StandardCharsets.UTF_8)));
+			
+			resp = execute(post, pooled, category);
+			int respCode = resp.getStatusLine().getStatusCode();
+			Data data = null;
+			if (respCode == RESP_CODE_OK) {
+				data = parse(parser, resp.getEntity().getContent());
+			}
+			return new APIResponse<>(respCode, data, Collections.<String, String>emptyMap(), retryAfterMs(resp),
+					isRateLimited(resp));
+		} finally {
+			release(resp);
+		}
+	}
+	
+	private static <Data> Data parse(ResponseParser<Data> parser, InputStream in) throws IOException {
+		return parser.parse(new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Parses a Link header like {@code <https://api.github.com/...&page=2>; rel="next", <...&page=5>; rel="last"}
+	 * into a map of relation -> url.
+	 */
+	static Map<String, String> parseLinks(String header) {
+		if (header == null) {
+			return Collections.emptyMap();
+		}
+		
+		Map<String, String> links = new HashMap<>();
+		Matcher matcher = LINK_PATTERN.matcher(header);
+		while (matcher.find()) {
+			links.put(matcher.group(2), matcher.group(1));
+		}
+		return links;
+	}
+	
+	/**
+	 * Makes a request to the server and parses the output(json) into a {@link JSONObject}. This materializes the
+	 * whole response, so it is only meant for small responses like rate limit checks, {@link #get(URI, ResponseParser)}
+	 * should be preferred otherwise. Transient failures are retried like those of gets.
 	 *   
 	 * @param url An api end point url with special chars encoded.
 	 * 
-	 * @return Received response(json) as a JsonArray.
+	 * @return Received response(json) as a JsonObject, with the status code under RESP_CODE_KEY and, for successful
+	 * responses, the body under RESP_DATA_KEY.
 	 * 
-	 * @throws IOException
+	 * @throws IOException If the last try failed without a response, or its body isn't json.
 	 */
-	public JSONObject getSequence(URI uri) throws IOException {
-		CloseableHttpClient client = HttpClients.createDefault();
-		CloseableHttpResponse resp = null;
-		HttpGet get = buildAPIGetRequest(uri);
+	public JSONObject getResponse(URI url) throws IOException {
+		return getResponse(url, null);
+	}
+	
+	/** Same as {@link #getResponse(URI)}, but the request is made with the given credentials, if not null. */
+	public JSONObject getResponse(URI url, AuthCredentials credentials) throws IOException {
+		APIResponse<JSONObject> resp = retryPolicy.execute(new RetryPolicy.Attempt<JSONObject>() {
+			@Override
+			public APIResponse<JSONObject> run() throws IOException {
+				return getResponseOnce(url, credentials);
+			}
+		});
 		
 		JSONObject obj = new JSONObject();
+		obj.put(RESP_CODE_KEY, resp.getStatusCode());
+		if (resp.getData() != null) {
+			obj.put(RESP_DATA_KEY, resp.getData());
+		}
+		return obj;
+	}
+	
+	private APIResponse<JSONObject> getResponseOnce(URI url, AuthCredentials credentials) throws IOException {
+		CloseableHttpResponse resp = null;
 		try {
-			resp = client.execute(get);
+			if (credentials != null) {
+				resp = send(buildAPIGetRequest(url, credentials));
+			} else {
+				String category = rateLimitCategory(url);
+				PooledCredential pooled = acquireCredential(category);
+				resp = execute(buildAPIGetRequest(url, pooled.getCredentials()), pooled, category);
+			}
 			int respCode = resp.getStatusLine().getStatusCode();
-			obj.put(RESP_CODE_KEY, respCode);
-
+			JSONObject data = null;
 			if (respCode == RESP_CODE_OK) {
-				String str = readStringFromEntity(resp.getEntity());
-				obj.put(RESP_DATA_KEY, new JSONArray(str));
-			}
-			
-			return obj;
-		} catch (IOException e) {
-			if (resp != null) {
-				resp.close();
+				Reader reader = new InputStreamReader(resp.getEntity().getContent(), StandardCharsets.UTF_8);
+				try {
+					data = new JSONObject(new JSONTokener(reader));
+				} catch (JSONException e) {
+					// The tokener wraps errors reading the body too, those may go away on another try.
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new JsonReader.MalformedJsonException("Malformed response from " + url, e);
+				}
 			}
+			return new APIResponse<>(respCode, data, Collections.<String, String>emptyMap(), retryAfterMs(resp),
+					isRateLimited(resp));
+		} finally {
+			release(resp);
 		}
-		return null;
 	}
 	
-	/** Reads the entire response body and constructs a string from it. */
-	private String readStringFromEntity(HttpEntity entity) throws IOException {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
-		StringBuilder builder = new StringBuilder();
-		while (true) {
-			String line = reader.readLine();
-			if (line == null) {
-				break;
-			}
-			
-			builder.append(line + "\n");
+	/**
+	 * Hands the response's connection back to the pool. Any unread body is drained first so that the connection 
+	 * can be kept alive, otherwise closing the response would close the connection too.
+	 */
+	private static void release(CloseableHttpResponse resp) throws IOException {
+		if (resp == null) {
+			return;
 		}
 		
-		reader.close();
-		return builder.toString();
+		try {
+			EntityUtils.consume(resp.getEntity());
+		} finally {
+			resp.close();
+		}
 	}
 }
@@ -0,0 +1,132 @@
+package com.vinayemani.devsearch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vinayemani.devsearch.data.APIRateLimit;
+import com.vinayemani.devsearch.data.TokenUsage;
+
+/**
+ * CredentialPool holds one or more credentials that api requests can be made with. GitHub applies rate limits per
+ * credential, so each credential has its own {@link RateLimitScheduler}. Every request is routed to the credential
+ * that has the most requests left in its category, which means that once a credential is exhausted, traffic moves to
+ * the remaining ones and the pool as a whole only blocks when none of its credentials can make a request.
+ * 
+ * @author Vinay E.
+ *
+ */
+class CredentialPool {
+	
+	/**
+	 * A single credential along with its rate limit state and usage count.
+	 * 
+	 * @author Vinay E.
+	 */
+	@lombok.Getter
+	static class PooledCredential {
+		private final AuthCredentials credentials;
+		private final RateLimitScheduler scheduler;
+		private final AtomicLong requestCount = new AtomicLong();
+		
+		PooledCredential(AuthCredentials credentials, int burst) {
+			this.credentials = credentials;
+			this.scheduler = new RateLimitScheduler(burst);
+		}
+	}
+	
+	private final List<PooledCredential> members = new ArrayList<>();
+	
+	public CredentialPool(List<AuthCredentials> credentials, int burst) {
+		for (AuthCredentials creds : credentials) {
+			members.add(new PooledCredential(creds, burst));
+		}
+	}
+	
+	public List<PooledCredential> getMembers() {
+		return members;
+	}
+	
+	/**
+	 * Identifies the set of credentials in this pool without revealing them. Cached responses are scoped by this, so
+	 * that they are only reused by clients with the same credentials.
+	 */
+	public String getScope() {
+		StringBuilder builder = new StringBuilder();
+		for (PooledCredential pc : members) {
+			builder.append(pc.credentials.getAuthScheme()).append(':').append(pc.credentials.getAuthHeader()).append('\n');
+		}
+		return ResponseCache.sha256Hex(builder.toString());
+	}
+	
+	/**
+	 * Picks the credential to make a request of the given category with, blocking until one of them is allowed to
+	 * make a request. Requests that aren't rate limited(category is null) always use the first credential.
+	 */
+	public PooledCredential acquire(String category) throws InterruptedException {
+		if (category == null) {
+			PooledCredential first = members.get(0);
+			first.requestCount.incrementAndGet();
+			return first;
+		}
+		
+		while (true) {
+			List<PooledCredential> byRemaining = new ArrayList<>(members);
+			byRemaining.sort(Comparator.comparingInt((PooledCredential pc) -> pc.scheduler.getRemaining(category)).reversed());
+			
+			long toWaitMs = Long.MAX_VALUE;
+			for (PooledCredential pc : byRemaining) {
+				long wait = pc.scheduler.tryAcquire(category);
+				if (wait == 0) {
+					pc.requestCount.incrementAndGet();
+					return pc;
+				}
+				toWaitMs = Math.min(toWaitMs, wait);
+			}
+			Thread.sleep(toWaitMs);
+		}
+	}
+	
+	/**
+	 * Combined rate limit state of a category across all credentials. Requests left and max requests are summed up,
+	 * while the reset time is the earliest time at which an exhausted credential becomes usable again. Null if none
+	 * of the credentials have seen a response yet.
+	 */
+	public APIRateLimit getRateLimit(String category) {
+		long resetTime = Long.MAX_VALUE, anyResetTime = Long.MAX_VALUE;
+		int left = 0, max = 0, resetPeriod = 0;
+		boolean known = false;
+		for (PooledCredential pc : members) {
+			APIRateLimit limit = pc.scheduler.getRateLimit(category);
+			if (limit == null) {
+				continue;
+			}
+			
+			known = true;
+			left += limit.getRequestsLeft();
+			max += limit.getRequestsMax();
+			resetPeriod = limit.getResetPeriodSecs();
+			anyResetTime = Math.min(anyResetTime, limit.getResetTime());
+			if (limit.getRequestsLeft() == 0) {
+				resetTime = Math.min(resetTime, limit.getResetTime());
+			}
+		}
+		
+		if (!known) {
+			return null;
+		}
+		return APIRateLimit.fromValues(resetTime == Long.MAX_VALUE ? anyResetTime : resetTime, resetPeriod, left, max);
+	}
+	
+	/** Per credential usage stats. */
+	public List<TokenUsage> getUsage() {
+		List<TokenUsage> usage = new ArrayList<>();
+		for (PooledCredential pc : members) {
+			usage.add(new TokenUsage(pc.credentials.getLabel(), pc.requestCount.get(),
+					pc.scheduler.getRateLimit(GitHubAPIClient.RATE_LIMIT_CORE_KEY),
+					pc.scheduler.getRateLimit(GitHubAPIClient.RATE_LIMIT_SEARCH_KEY)));
+		}
+		return usage;
+	}
+}
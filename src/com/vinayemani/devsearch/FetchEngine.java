@@ -0,0 +1,16 @@
+package com.vinayemani.devsearch;
+
+/**
+ * FetchEngine selects how user data(profile, repos and commit counts) is fetched once a user has been found.
+ * 
+ * REST makes one api call for the profile, one per page of repos and one per repo for its commit count.
+ * GRAPHQL fetches all of it for several users at once with batched GraphQL queries, see {@link GraphQLFetcher}. 
+ * GitHub's GraphQL api only accepts authenticated requests.
+ * 
+ * @author Vinay E.
+ *
+ */
+public enum FetchEngine {
+	REST,
+	GRAPHQL
+}
@@ -1,10 +1,15 @@
 package com.vinayemani.devsearch;
 
 import java.io.BufferedReader;
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -12,61 +17,171 @@ import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.SearchOutcome;
 import com.vinayemani.devsearch.data.UserData;
 import com.vinayemani.devsearch.data.UserKey;
+import com.vinayemani.devsearch.data.UserProfile;
 
 /**
  * FileUtils provides a few utility methods to convert data to/from csv/json files to application data.
  * File extensions are used to determine input/output formats (e.g., 'user.json' for json input and 'data.csv' for
  * csv output) 
  * 
+ * Input files can be read and output files written incrementally, one user at a time, so that memory use doesn't
+ * grow with the size of the files.
+ * 
  * @author Vinay E.
  *
  */
 public class FileUtils {
+	// Fields of a user key in csv/json input files.
+	private static final String FIRST_NAME_KEY = "firstName";
+	private static final String LAST_NAME_KEY = "lastName";
+	private static final String LOCATION_KEY = "location";
+	
+	// Indentation of json output.
+	private static final int JSON_INDENT = 2;
+	
+	// Outcomes of the keys of an output file go next to it, in a file with this suffix.
+	private static final String OUTCOMES_SUFFIX = ".outcomes.csv";
+	private static final String[] OUTCOME_HEADER = {"keyId", "status", "attempts", "latencyMs", "lastHttpCode"};
+	
+	// Columns of csv output, one row per user and repo.
+	private static final String[] USER_DATA_HEADER = {"login", "name", "companyName", "blogUrl", "location", "email",
+			"repoName", "numCommits"};
+	
 	public static List<UserKey> parseFile(String inputFilePath) throws IOException, BadInputFileException {
-		File inputFile = new File(inputFilePath);
-		String extn = getFileExt(inputFilePath);
-		if (extn.equals("csv")) {
+		try (UserKeySource source = openUserKeys(inputFilePath)) {
+			if (source == null) {
+				return null;
+			}
+			
 			List<UserKey> userKeys = new ArrayList<>();
-			FileReader reader = new FileReader(inputFile);
-			CSVParser parser = CSVFormat.RFC4180.withQuote('"').withFirstRecordAsHeader().parse(reader);
-			Iterator<CSVRecord> iter = parser.iterator();
-			while (iter.hasNext()) {
-				CSVRecord rec = iter.next();
-				String firstName = rec.get("firstName");
-				String lastName = rec.get("lastName");
-				String location = rec.get("location");
-				userKeys.add(new UserKey(firstName, lastName, location));
+			UserKey key;
+			while ((key = source.next()) != null) {
+				userKeys.add(key);
 			}
-			reader.close();
 			return userKeys;
+		}
+	}
+	
+	/**
+	 * Opens an input file for reading its user keys one at a time. Keys are parsed as they are asked for, so only a
+	 * small part of the file is held in memory at any time.
+	 * 
+	 * @param inputFilePath Path of a csv or json input file.
+	 * @return The user keys in the file, null if the file isn't a csv or json file.
+	 * @throws IOException
+	 */
+	public static UserKeySource openUserKeys(String inputFilePath) throws IOException {
+		String extn = getFileExt(inputFilePath);
+		if (extn.equals("csv")) {
+			return new CsvUserKeySource(inputFilePath);
 		} else if (extn.equals("json")) {
+			return new JsonUserKeySource(inputFilePath);
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads user keys off the rows of a csv file with firstName, lastName and location columns.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class CsvUserKeySource implements UserKeySource {
+		private final CSVParser parser;
+		private final Iterator<CSVRecord> iter;
+		
+		CsvUserKeySource(String inputFilePath) throws IOException {
+			Reader reader = new BufferedReader(new FileReader(inputFilePath));
+			this.parser = CSVFormat.RFC4180.withQuote('"').withFirstRecordAsHeader().parse(reader);
+			this.iter = parser.iterator();
+		}
+		
+		@Override
+		public UserKey next() throws BadInputFileException {
+			if (!iter.hasNext()) {
+				return null;
+			}
+			
+			CSVRecord rec = iter.next();
+			try {
+				return new UserKey(rec.get(FIRST_NAME_KEY), rec.get(LAST_NAME_KEY), rec.get(LOCATION_KEY));
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				throw new BadInputFileException("Row " + rec.getRecordNumber() + " is badly formed.");
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			parser.close();
+		}
+	}
+	
+	/**
+	 * Reads user keys off a json array of {"firstName": .., "lastName": .., "location": ..} objects.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class JsonUserKeySource implements UserKeySource {
+		private final String inputFilePath;
+		private final JsonReader reader;
+		private boolean started = false;
+		
+		JsonUserKeySource(String inputFilePath) throws IOException {
+			this.inputFilePath = inputFilePath;
+			this.reader = new JsonReader(new BufferedReader(new FileReader(inputFilePath)));
+		}
+		
+		@Override
+		public UserKey next() throws IOException, BadInputFileException {
 			try {
-				JSONArray userArray = new JSONArray(readFileContents(inputFilePath));
-				List<UserKey> userKeys = new ArrayList<>();
-				Iterator<Object> iter = userArray.iterator();
-				while (iter.hasNext()) {
-					JSONObject user = (JSONObject) iter.next();
-					// Expect firstName, lastName and location fields in this object.
-					String firstName = user.getString("firstName");
-					String lastName = user.getString("lastName");
-					String location = user.getString("location");
-					userKeys.add(new UserKey(firstName, lastName, location));
+				if (!started) {
+					reader.beginArray();
+					started = true;
+				}
+				if (!reader.hasNext()) {
+					return null;
+				}
+				
+				String firstName = null, lastName = null, location = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					switch (reader.nextName()) {
+					case FIRST_NAME_KEY:
+						firstName = reader.nextStringOrNull();
+						break;
+					case LAST_NAME_KEY:
+						lastName = reader.nextStringOrNull();
+						break;
+					case LOCATION_KEY:
+						location = reader.nextStringOrNull();
+						break;
+					default:
+						reader.skipValue();
+					}
 				}
-				return userKeys;
-			} catch (JSONException e) {
+				reader.endObject();
+				
+				// Expect firstName, lastName and location fields in this object.
+				if (firstName == null || lastName == null || location == null) {
+					throw new BadInputFileException("File " + inputFilePath + " is badly formed.");
+				}
+				return new UserKey(firstName, lastName, location);
+			} catch (JsonReader.MalformedJsonException e) {
 				// Error parsing the json file, throw BadInputFileException
 				throw new BadInputFileException("File " + inputFilePath + " is badly formed.");
 			}
 		}
 		
-		return null;
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
 	}
 	
 	/**
@@ -79,19 +194,229 @@ public class FileUtils {
 	 * @throws IOException
 	 */
 	public static boolean writeUserDataToFile(Collection<UserData> users, String outputFilePath) throws IOException {
-		Iterator<UserData> iter = users.iterator();
-		JSONArray array = new JSONArray();
-		while (iter.hasNext()) {
-			UserData data = iter.next();
-			JSONObject obj = new JSONObject(data);
-			array.put(obj);
-		}
-		FileWriter writer = new FileWriter(outputFilePath);
-		writer.write(array.toString(2));
-		writer.close();
+		try (UserDataWriter writer = openUserDataWriter(outputFilePath)) {
+			for (UserData data : users) {
+				writer.write(data);
+			}
+		}
 		return true;
 	}
 	
+	/**
+	 * Opens an output file for writing user search results one at a time. The format goes by the file's extension,
+	 * 
+	 * 	.ndjson  one json object per line
+	 * 	.csv     one row per user and repo, with login, name, companyName, blogUrl, location, email, repoName and
+	 * 	         numCommits columns. Users without repos get a single row with empty repo columns.
+	 * 	.bin     compact binary records, see {@link BinaryUserDataFormat}, read back with {@link #openUserData(String)}
+	 * 
+	 * Any other file gets a json array, formatted the same as {@link #writeUserDataToFile} would.
+	 * 
+	 * @param outputFilePath File location to write to.
+	 * @throws IOException
+	 */
+	public static UserDataWriter openUserDataWriter(String outputFilePath) throws IOException {
+		String extn = getFileExt(outputFilePath);
+		if (extn.equals("bin")) {
+			return new BinaryUserDataFormat.Writer(new FileOutputStream(outputFilePath));
+		}
+		
+		Writer writer = new BufferedWriter(new FileWriter(outputFilePath));
+		if (extn.equals("ndjson")) {
+			return new NdjsonUserDataWriter(writer);
+		} else if (extn.equals("csv")) {
+			return new CsvUserDataWriter(writer);
+		}
+		return new JsonArrayUserDataWriter(writer);
+	}
+	
+	/**
+	 * Opens a binary output file(with a '.bin' extension) for reading its users back one at a time.
+	 * 
+	 * @param filePath Path of a file written by {@link #openUserDataWriter(String)}.
+	 * @return The users in the file, null if the file isn't a binary output file.
+	 * @throws IOException If the file can't be read or isn't in the binary format.
+	 */
+	public static UserDataSource openUserData(String filePath) throws IOException {
+		if (!getFileExt(filePath).equals("bin")) {
+			return null;
+		}
+		
+		FileInputStream in = new FileInputStream(filePath);
+		try {
+			return new BinaryUserDataFormat.Reader(new BufferedInputStream(in));
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Writes users as csv rows, one per repo. Fields are printed straight off the getters, nothing is built up per
+	 * user but the rows themselves.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class CsvUserDataWriter implements UserDataWriter {
+		private final CSVPrinter printer;
+		
+		CsvUserDataWriter(Writer writer) throws IOException {
+			this.printer = CSVFormat.RFC4180.withHeader(USER_DATA_HEADER).print(writer);
+		}
+		
+		@Override
+		public synchronized void write(UserData data) throws IOException {
+			List<RepoData> repos = data.getRepos();
+			if (repos == null || repos.isEmpty()) {
+				printProfile(data.getProfile());
+				printer.print(null);
+				printer.print(null);
+				printer.println();
+			} else {
+				for (RepoData repo : repos) {
+					printProfile(data.getProfile());
+					printer.print(repo.getName());
+					printer.print(repo.getNumCommits());
+					printer.println();
+				}
+			}
+		}
+		
+		private void printProfile(UserProfile profile) throws IOException {
+			if (profile == null) {
+				for (int i = 0; i < USER_DATA_HEADER.length - 2; i++) {
+					printer.print(null);
+				}
+				return;
+			}
+			
+			printer.print(profile.getLogin());
+			printer.print(profile.getName());
+			printer.print(profile.getCompanyName());
+			printer.print(profile.getBlogUrl());
+			printer.print(profile.getLocation());
+			printer.print(profile.getEmail());
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			printer.close();
+		}
+	}
+	
+	/**
+	 * Writes each user as a single line json object.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class NdjsonUserDataWriter implements UserDataWriter {
+		private final Writer writer;
+		private final UserDataSerializer serializer = new UserDataSerializer(0);
+		
+		NdjsonUserDataWriter(Writer writer) {
+			this.writer = writer;
+		}
+		
+		@Override
+		public synchronized void write(UserData data) throws IOException {
+			serializer.write(data, writer, 0);
+			writer.write('\n');
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes users as the elements of a json array, laid out exactly like JSONArray.toString(2) lays them out. That
+	 * layout differs for single element arrays, so the first element is held back until the second one comes in.
+	 * 
+	 * @author Vinay E.
+	 */
+	private static class JsonArrayUserDataWriter implements UserDataWriter {
+		private final Writer writer;
+		private final UserDataSerializer serializer = new UserDataSerializer(JSON_INDENT);
+		private int count = 0;
+		private UserData first = null;
+		
+		JsonArrayUserDataWriter(Writer writer) {
+			this.writer = writer;
+		}
+		
+		@Override
+		public synchronized void write(UserData data) throws IOException {
+			if (count == 0) {
+				first = data;
+			} else {
+				if (count == 1) {
+					writer.write('[');
+					writeElement(first);
+					first = null;
+				}
+				writer.write(',');
+				writeElement(data);
+			}
+			count++;
+		}
+		
+		private void writeElement(UserData data) throws IOException {
+			writer.write('\n');
+			for (int i = 0; i < JSON_INDENT; i++) {
+				writer.write(' ');
+			}
+			serializer.write(data, writer, JSON_INDENT);
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				if (count == 0) {
+					writer.write("[]");
+				} else if (count == 1) {
+					writer.write('[');
+					serializer.write(first, writer, 0);
+					writer.write(']');
+				} else {
+					writer.write("\n]");
+				}
+			} finally {
+				writer.close();
+			}
+		}
+	}
+	
+	/** Path of the file the outcomes of the keys written to the given output file go to. */
+	public static String getOutcomesPath(String outputFilePath) {
+		return outputFilePath + OUTCOMES_SUFFIX;
+	}
+	
+	/**
+	 * Opens a csv file for writing key outcomes one at a time, with keyId, status, attempts, latencyMs and
+	 * lastHttpCode columns. Key ids are the positions(from 0) of the keys in the input file, rows are in the order
+	 * the keys finished.
+	 * 
+	 * @param outcomesFilePath File location to write to.
+	 * @throws IOException
+	 */
+	public static OutcomeWriter openOutcomeWriter(String outcomesFilePath) throws IOException {
+		CSVPrinter printer = CSVFormat.RFC4180.withHeader(OUTCOME_HEADER)
+				.print(new BufferedWriter(new FileWriter(outcomesFilePath)));
+		return new OutcomeWriter() {
+			@Override
+			public synchronized void write(SearchOutcome outcome) throws IOException {
+				printer.printRecord(outcome.getKeyId(), outcome.getStatus(), outcome.getAttempts(), 
+						outcome.getLatencyMs(), outcome.getLastHttpCode());
+			}
+			
+			@Override
+			public synchronized void close() throws IOException {
+				printer.close();
+			}
+		};
+	}
+	
 	/**
 	 * Reads the entire file contents into a string.
 	 * 
@@ -122,7 +447,11 @@ public class FileUtils {
 	 * @return Extension path of the path.
 	 */
 	public static String getFileExt(String path) {
-		if (path.endsWith(".json")) {
+		if (path.endsWith(".ndjson")) {
+			return "ndjson";
+		} else if (path.endsWith(".bin")) {
+			return "bin";
+		} else if (path.endsWith(".json")) {
 			return "json";
 		} else if (path.endsWith(".csv")) {
 			return "csv";
@@ -2,28 +2,41 @@ package com.vinayemani.devsearch;
 
 import static com.vinayemani.devsearch.Connection.RESP_CODE_KEY;
 import static com.vinayemani.devsearch.Connection.RESP_CODE_OK;
-import static com.vinayemani.devsearch.Connection.RESP_CODE_FORBIDDEN;
+import static com.vinayemani.devsearch.Connection.RESP_CODE_NOT_FOUND;
 import static com.vinayemani.devsearch.Connection.RESP_DATA_KEY;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 import com.vinayemani.devsearch.data.*;
+import com.vinayemani.devsearch.metrics.MetricsDumper;
+import com.vinayemani.devsearch.metrics.MetricsRegistry;
 
 /**
  * GitHubAPIClient is a easy to use interface for querying GitHub's API.
  * 
+ * A client holds a pool of open http connections, so it should be closed once it is no longer needed.
+ * 
+ * User data is fetched with the REST api by default, the GraphQL api can be selected instead with
+ * {@link ClientSettings#setFetchEngine(FetchEngine)}.
+ * 
+ * A client measures its own work, e.g., request latencies per end point, queue depths and time spent waiting on
+ * rate limits, see {@link #getMetrics()}.
+ * 
  * @author Vinay E.
  *
  */
-public class GitHubAPIClient {
+public class GitHubAPIClient implements Closeable {
 	// API end points.
 	public static final String GITHUB_API_URL_ROOT = "https://api.github.com";
 	public static final String SEARCH_USERS_ENDPOINT = "/search/users?q=";
@@ -31,22 +44,71 @@ public class GitHubAPIClient {
 	public static final String GET_USER_ENDPOINT = "/users/";
 	public static final String GET_REPO_ENDPOINT = "/repos/";
 	
+	// Commits are listed one per page, so that the no. of pages is the no. of commits.
+	private static final String COMMITS_PER_PAGE_PARAM = "&per_page=1";
+	private static final String LAST_PAGE_REL = "last";
+	
+	// Other listings are fetched with the largest page size allowed, to keep the no. of requests down.
+	private static final String LISTING_PER_PAGE_PARAM = "&per_page=100";
+	
 	// Rate limit JSON responses will have these keys.
 	private static final String RATE_LIMIT_RESOURCES_KEY = "resources";
-	private static final String RATE_LIMIT_CORE_KEY = "core";
-	private static final String RATE_LIMIT_SEARCH_KEY = "search";
+	static final String RATE_LIMIT_CORE_KEY = "core";
+	static final String RATE_LIMIT_SEARCH_KEY = "search";
+	static final String RATE_LIMIT_GRAPHQL_KEY = "graphql";
 	
 	// Rate limit reset periods(in sec) for core & search apis. 
-	private static final int CORE_API_RESET_PERIOD_SEC = 3600;
-	private static final int SEARCH_API_RESET_PERIOD_SEC = 60;
+	static final int CORE_API_RESET_PERIOD_SEC = 3600;
+	static final int SEARCH_API_RESET_PERIOD_SEC = 60;
+	static final int GRAPHQL_API_RESET_PERIOD_SEC = 3600;
 	
 	// The connection state for this client.
 	private Connection connection;
+	private ClientSettings settings;
+	
+	// Logins of user keys and data of(lower cased) logins found in earlier searches, null if not enabled.
+	private LookupCache<UserKey, String> searchCache = null;
+	private LookupCache<String, UserData> userCache = null;
+	
+	// Runs all searches of this client.
+	private RateLimiter engine;
+	
+	// Dumps the client's metrics periodically, null if not enabled.
+	private MetricsDumper metricsDumper = null;
 	
-	private GitHubAPIClient(AuthCredentials credentials) throws InvalidCredentialsException {
-		this.connection = new Connection(credentials);
-		if (!verifyCredentials(credentials)) {
-			throw new InvalidCredentialsException("Invalid credentials");
+	private GitHubAPIClient(ClientSettings settings, AuthCredentials... credentials) throws InvalidCredentialsException {
+		if (credentials.length == 0) {
+			throw new InvalidCredentialsException("No credentials given");
+		}
+		
+		this.settings = settings;
+		this.connection = new Connection(Arrays.asList(credentials), settings);
+		for (AuthCredentials creds : credentials) {
+			if (!verifyCredentials(creds)) {
+				try {
+					connection.close();
+				} catch (IOException e) {}
+				throw new InvalidCredentialsException("Invalid credentials " + (creds == null ? null : creds.getLabel()));
+			}
+		}
+		
+		if (settings.getLookupCacheMaxEntries() > 0) {
+			long ttlMs = settings.getLookupCacheTtlSecs() * 1000;
+			searchCache = new LookupCache<>(settings.getLookupCacheMaxEntries(), ttlMs);
+			userCache = new LookupCache<>(settings.getLookupCacheMaxEntries(), ttlMs);
+		}
+		engine = new RateLimiter(connection, settings, searchCache, userCache);
+		
+		if (settings.getMetricsDumpPath() != null) {
+			try {
+				metricsDumper = new MetricsDumper(connection.getMetrics(), settings.getMetricsDumpPath(), 
+						settings.getMetricsDumpIntervalSecs() * 1000);
+			} catch (IOException e) {
+				try {
+					close();
+				} catch (IOException closeError) {}
+				throw new IllegalArgumentException("Unusable metrics dump path " + settings.getMetricsDumpPath(), e);
+			}
 		}
 	}
 	
@@ -65,7 +127,7 @@ public class GitHubAPIClient {
 		// Now, actually verify these credentials on the server by sending a rate_limit request and
 		// receiving a 200 OK response.
 		try {
-			JSONObject resp = connection.getResponse(getFullURI(RATE_LIMIT_CHECK_ENDPOINT));
+			JSONObject resp = connection.getResponse(getFullURI(connection, RATE_LIMIT_CHECK_ENDPOINT), credentials);
 			return resp.getInt(RESP_CODE_KEY) == RESP_CODE_OK;
 		} catch (IOException e) {
 			// Connection aborted, we consider the verification failed.
@@ -74,12 +136,8 @@ public class GitHubAPIClient {
 		return false;
 	}
 	
-	private static URI getFullURI(String endPoint) {
-		try {
-			return new URI(GITHUB_API_URL_ROOT + endPoint);
-		} catch (URISyntaxException e) {
-			return null;
-		}
+	private static URI getFullURI(Connection conn, String endPoint) {
+		return conn.apiURI(endPoint);
 	}
 	
 	/**
@@ -89,48 +147,146 @@ public class GitHubAPIClient {
 	 * @return Login of the best match user for the search.
 	 */
 	static APICallResult<String> searchForSingleUser(UserKey key, Connection conn) {
-		URI searchQry = getFullURI(SEARCH_USERS_ENDPOINT + key.constructQueryParamString());
+		// Only the best match is used, so there's no need for the server to send other results.
+		URI searchQry = getFullURI(conn, SEARCH_USERS_ENDPOINT + key.constructQueryParamString() + "&per_page=1");
 		try {
-			JSONObject resp = conn.getResponse(searchQry);
-			if (resp.getInt(RESP_CODE_KEY) == RESP_CODE_FORBIDDEN) {
+			APIResponse<String> resp = conn.get(searchQry, GitHubAPIClient::parseBestMatchLogin);
+			if (resp.isRateLimited()) {
 				// rate limit exceeded.
-				return APICallResult.rateLimitExceededResult();
-			} else {
-				// successful output.
-				JSONArray users = resp.getJSONObject("data").getJSONArray("items");
-				if (users.length() == 0) {
-					// no matching users found.
-					return APICallResult.noMatchResult();
-				}
-				
-				JSONObject bestMatchingUser = users.getJSONObject(0);
-				return APICallResult.successResult(bestMatchingUser.getString("login"));
+				return APICallResult.rateLimitExceededResult(resp.getStatusCode());
+			} else if (resp.getStatusCode() != RESP_CODE_OK) {
+				return APICallResult.errorResult(resp.getStatusCode());
+			} else if (resp.getData() == null) {
+				// no matching users found.
+				return APICallResult.noMatchResult(resp.getStatusCode());
 			}
+			
+			// successful output.
+			return APICallResult.successResult(resp.getData());
 		} catch (IOException e) {
-			// Exception in search query, return error result.
-			return APICallResult.errorResult();
+			// Exception in search query, return error result(or unavailable, if the api is down).
+			return APICallResult.failureResult(e);
 		}
 	}
 	
-	private static String getIfPresent(JSONObject obj, String key) {
-		try {
-			return obj.getString(key);
-		} catch (JSONException e) {
-			return "";
+	/** Reads items[0].login from a search response, null if there are no items. */
+	private static String parseBestMatchLogin(JsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (!reader.nextName().equals("items")) {
+				reader.skipValue();
+				continue;
+			}
+			
+			reader.beginArray();
+			if (!reader.hasNext()) {
+				return null;
+			}
+			
+			// Rest of the response is of no interest, so we stop reading right after the login.
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (reader.nextName().equals("login")) {
+					return reader.nextStringOrNull();
+				}
+				reader.skipValue();
+			}
+			return null;
 		}
+		return null;
 	}
 	
-	private static UserProfile constructUserProfile(JSONObject obj) {
+	static String emptyIfNull(String s) {
+		return s == null ? "" : s;
+	}
+	
+	static UserProfile constructUserProfile(JsonReader reader) throws IOException {
 		// name, login, company, email, blog, location
-		String name = getIfPresent(obj, "name");
-		String login = getIfPresent(obj, "login");
-		String email = getIfPresent(obj, "email");
-		String company = getIfPresent(obj, "company");
-		String blog = getIfPresent(obj, "blog");
-		String location = getIfPresent(obj, "location");
+		String name = "", login = "", email = "", company = "", blog = "", location = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "name":
+				name = emptyIfNull(reader.nextStringOrNull());
+				break;
+			case "login":
+				login = emptyIfNull(reader.nextStringOrNull());
+				break;
+			case "email":
+				email = emptyIfNull(reader.nextStringOrNull());
+				break;
+			case "company":
+				company = emptyIfNull(reader.nextStringOrNull());
+				break;
+			case "blog":
+				blog = emptyIfNull(reader.nextStringOrNull());
+				break;
+			case "location":
+				location = emptyIfNull(reader.nextStringOrNull());
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 		return new UserProfile(name, login, company, blog, location, email);
 	}
 	
+	/** Reads the [owner login, name] pairs of a repo listing. */
+	private static List<String[]> parseRepoNames(JsonReader reader) throws IOException {
+		List<String[]> repos = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String name = null, ownerLogin = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				if (field.equals("name")) {
+					name = reader.nextStringOrNull();
+				} else if (field.equals("owner")) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if (reader.nextName().equals("login")) {
+							ownerLogin = reader.nextStringOrNull();
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			repos.add(new String[] {ownerLogin, name});
+		}
+		reader.endArray();
+		return repos;
+	}
+	
+	/** Counts the elements of a json array without looking into them. */
+	private static Integer countElements(JsonReader reader) throws IOException {
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.skipValue();
+			count++;
+		}
+		reader.endArray();
+		return count;
+	}
+	
+	/**
+	 * Works out the total no. of commits from the first page of a commit listing made with one commit per page. The
+	 * 'last' link of the listing points to the page holding the last commit, so its page no. is the commit count. 
+	 * Listings with at most one commit have no links, their count is just the no. of commits on the page.
+	 */
+	static int countCommits(APIResponse<Integer> firstPage) {
+		String lastPageUrl = firstPage.getLinks().get(LAST_PAGE_REL);
+		int lastPage = lastPageUrl != null ? PagedSequence.pageNumber(lastPageUrl) : -1;
+		return lastPage >= 0 ? lastPage : firstPage.getData();
+	}
+	
 	/**
 	 * Fetches user data (public profile data + public repos + commits) given the login id. 
 	 *  
@@ -140,52 +296,53 @@ public class GitHubAPIClient {
 	 * @return Data for a single user.
 	 */
 	static APICallResult<UserData> fetchSingleUserData(String userLogin, Connection conn) {
-		URI getUserQry = getFullURI(GET_USER_ENDPOINT + userLogin);
+		URI getUserQry = getFullURI(conn, GET_USER_ENDPOINT + userLogin);
 		try {
-			JSONObject resp = conn.getResponse(getUserQry);
-			if (resp.getInt(RESP_CODE_KEY) == RESP_CODE_FORBIDDEN) {
-				return APICallResult.rateLimitExceededResult();
-			} else if (resp.getInt(RESP_CODE_KEY) != RESP_CODE_OK) {
+			APIResponse<UserProfile> resp = conn.get(getUserQry, GitHubAPIClient::constructUserProfile);
+			if (resp.isRateLimited()) {
+				return APICallResult.rateLimitExceededResult(resp.getStatusCode());
+			} else if (resp.getStatusCode() == RESP_CODE_NOT_FOUND) {
 				// no matching user found.
-				return APICallResult.noMatchResult();
+				return APICallResult.noMatchResult(resp.getStatusCode());
+			} else if (resp.getStatusCode() != RESP_CODE_OK) {
+				// Still failing after the connection's retries.
+				return APICallResult.errorResult(resp.getStatusCode());
 			} else {
-				UserProfile profile = constructUserProfile(resp.getJSONObject(RESP_DATA_KEY));
-				
-				// Fetch repositories.
-				URI userRepoQry = getFullURI(GET_USER_ENDPOINT + userLogin + "/repos?type=all");
-				JSONObject reposResp = conn.getSequence(userRepoQry);
-				if (reposResp.getInt(RESP_CODE_KEY) == RESP_CODE_FORBIDDEN) {
-					return APICallResult.rateLimitExceededResult();
-				} else if (reposResp.getInt(RESP_CODE_KEY) != RESP_CODE_OK) {
-					return APICallResult.errorResult();
-				}
-				
-				JSONArray repos = reposResp.getJSONArray(RESP_DATA_KEY);
+				UserProfile profile = resp.getData();
 				
+				// Fetch repositories, page by page, and count commits in each repo as the pages come in.
+				URI userRepoQry = getFullURI(conn, GET_USER_ENDPOINT + userLogin + "/repos?type=all" + LISTING_PER_PAGE_PARAM);
 				List<RepoData> userRepos = new ArrayList<>();
-				int numRepos = repos.length();
-				for (int i = 0;i < numRepos; i++) {
-					JSONObject repo = repos.getJSONObject(i);
-					String repoName = repo.getString("name");
-					String ownerLogin = repo.getJSONObject("owner").getString("login");
-					URI getUserRepoCommitsQry = getFullURI(GET_REPO_ENDPOINT + 
-							ownerLogin + "/" + repoName + "/commits?author=" + userLogin);
-					JSONObject commitsResp = conn.getSequence(getUserRepoCommitsQry);
-					if (commitsResp.getInt(RESP_CODE_KEY) == RESP_CODE_FORBIDDEN) {
-						return APICallResult.rateLimitExceededResult();
-					} else if (commitsResp.getInt(RESP_CODE_KEY) != RESP_CODE_OK) {
-						continue;
+				try (PagedSequence<String[]> repos = conn.getSequence(userRepoQry, GitHubAPIClient::parseRepoNames)) {
+					while (repos.hasNext()) {
+						String[] repo = repos.next();
+						String ownerLogin = repo[0], repoName = repo[1];
+						URI getUserRepoCommitsQry = getFullURI(conn, GET_REPO_ENDPOINT + 
+								ownerLogin + "/" + repoName + "/commits?author=" + userLogin + COMMITS_PER_PAGE_PARAM);
+						APIResponse<Integer> commitsResp = conn.get(getUserRepoCommitsQry, GitHubAPIClient::countElements);
+						if (commitsResp.isRateLimited()) {
+							return APICallResult.rateLimitExceededResult(commitsResp.getStatusCode());
+						} else if (commitsResp.getStatusCode() != RESP_CODE_OK) {
+							// e.g., a blocked or empty repo, or one we aren't allowed to see.
+							continue;
+						}
+						
+						userRepos.add(new RepoData(countCommits(commitsResp), repoName));
 					}
-					
-					JSONArray commits = commitsResp.getJSONArray(RESP_DATA_KEY);
-					userRepos.add(new RepoData(commits.length(), repoName));
+				} catch (SequenceFetchException e) {
+					if (e.isRateLimited()) {
+						return APICallResult.rateLimitExceededResult(e.getStatusCode());
+					} else if (e.getStatusCode() == 0) {
+						return APICallResult.failureResult(e.getCause());
+					}
+					return APICallResult.errorResult(e.getStatusCode());
 				}
 				
 				return APICallResult.successResult(new UserData(profile, userRepos));
 			}
 		} catch (IOException e) {
-			// Exception in get user query, error result is returned.
-			return APICallResult.errorResult();
+			// Exception in get user query, error result(or unavailable, if the api is down) is returned.
+			return APICallResult.failureResult(e);
 		}
 	}
 	
@@ -196,24 +353,108 @@ public class GitHubAPIClient {
 	
 	/** An api client using no authentication. */
 	public GitHubAPIClient() throws InvalidCredentialsException {
-		this(AuthCredentials.createNoAuthCredentials());
+		this(new ClientSettings());
 	}
 	
 	/** An api client using basic authentication. */
 	public GitHubAPIClient(String username, String password) throws InvalidCredentialsException {
-		this(AuthCredentials.createBasicAuthCredentials(username, password));
+		this(username, password, new ClientSettings());
 	}
 	
 	/** An api client using OAuth2 authentication. */
 	public GitHubAPIClient(String oAuthToken) throws InvalidCredentialsException {
-		this(AuthCredentials.createOAuth2AuthCredentials(oAuthToken));
+		this(oAuthToken, new ClientSettings());
+	}
+	
+	/** An api client using no authentication and the given settings. */
+	public GitHubAPIClient(ClientSettings settings) throws InvalidCredentialsException {
+		this(settings, AuthCredentials.createNoAuthCredentials());
+	}
+	
+	/** An api client using basic authentication and the given settings. */
+	public GitHubAPIClient(String username, String password, ClientSettings settings) throws InvalidCredentialsException {
+		this(settings, AuthCredentials.createBasicAuthCredentials(username, password));
+	}
+	
+	/** An api client using OAuth2 authentication and the given settings. */
+	public GitHubAPIClient(String oAuthToken, ClientSettings settings) throws InvalidCredentialsException {
+		this(settings, AuthCredentials.createOAuth2AuthCredentials(oAuthToken));
+	}
+	
+	/**
+	 * An api client using a pool of OAuth2 tokens. Each token has its own rate limits, so requests are spread over
+	 * the tokens, always using the one with the most requests left.
+	 */
+	public GitHubAPIClient(List<String> oAuthTokens) throws InvalidCredentialsException {
+		this(oAuthTokens, new ClientSettings());
+	}
+	
+	/** An api client using a pool of OAuth2 tokens and the given settings. */
+	public GitHubAPIClient(List<String> oAuthTokens, ClientSettings settings) throws InvalidCredentialsException {
+		this(settings, toCredentials(oAuthTokens));
+	}
+	
+	private static AuthCredentials[] toCredentials(List<String> oAuthTokens) {
+		AuthCredentials[] credentials = new AuthCredentials[oAuthTokens.size()];
+		for (int i = 0; i < credentials.length; i++) {
+			credentials[i] = AuthCredentials.createOAuth2AuthCredentials(oAuthTokens.get(i));
+		}
+		return credentials;
+	}
+	
+	/** Finishes the searches in progress, then releases the worker threads and pooled http connections. */
+	@Override
+	public void close() throws IOException {
+		engine.close();
+		try {
+			if (metricsDumper != null) {
+				metricsDumper.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/**
+	 * Registry of the client's metrics, the one set in the settings or an in-memory one. Meters are named
+	 * devsearch.*, e.g., devsearch.http.requests(a timer per end point and status code), devsearch.queue.depth(a
+	 * gauge per queue category) and devsearch.ratelimit.wait(a timer per rate limit category).
+	 */
+	public MetricsRegistry getMetrics() {
+		return connection.getMetrics();
+	}
+	
+	/** How many requests so far were made over new vs reused http connections. */
+	public ConnectionStats getConnectionStats() {
+		return connection.getStats();
+	}
+	
+	/**
+	 * State of the client's circuit breaker and adaptive concurrency limit. Requests fail right away while the breaker
+	 * is OPEN, their keys end with an ERROR outcome and can be searched for again later.
+	 */
+	public FlowControlStats getFlowControlStats() {
+		return connection.getFlowControlStats();
+	}
+	
+	/** Usage of the cache of logins found for user keys, null if the lookup cache isn't enabled. */
+	public CacheStats getSearchCacheStats() {
+		return searchCache == null ? null : searchCache.getStats();
+	}
+	
+	/** Usage of the cache of data fetched for logins, null if the lookup cache isn't enabled. */
+	public CacheStats getUserCacheStats() {
+		return userCache == null ? null : userCache.getStats();
 	}
 	
 	/** Current APIRateLimits(core and search) for this user. */
 	public static APIRateLimit[] getRateLimits(Connection connection) {
 		APIRateLimit[] ret = new APIRateLimit[2];
 		try {
-			JSONObject resp = connection.getResponse(getFullURI(RATE_LIMIT_CHECK_ENDPOINT));
+			JSONObject resp = connection.getResponse(getFullURI(connection, RATE_LIMIT_CHECK_ENDPOINT));
+			if (resp.getInt(RESP_CODE_KEY) != RESP_CODE_OK) {
+				return null;
+			}
 			JSONObject resources = resp.getJSONObject(RESP_DATA_KEY).getJSONObject(RATE_LIMIT_RESOURCES_KEY);
 			ret[0] = APIRateLimit.fromJSONObject(resources.getJSONObject(RATE_LIMIT_CORE_KEY), CORE_API_RESET_PERIOD_SEC);
 			ret[1] = APIRateLimit.fromJSONObject(resources.getJSONObject(RATE_LIMIT_SEARCH_KEY), SEARCH_API_RESET_PERIOD_SEC);
@@ -223,25 +464,93 @@ public class GitHubAPIClient {
 		}
 	}
 	
+	/** Current APIRateLimits(core and search) of this client. With a pool of tokens, these are of the first token. */
 	public APIRateLimit[] getRateLimits() {
 		return getRateLimits(connection);
 	}
 	
+	/** No. of requests made and latest known rate limits of each token of this client. */
+	public List<TokenUsage> getTokenUsage() {
+		return connection.getTokenUsage();
+	}
+	
 	/**
 	 * This is a low level api for searching GitHub users given their name, location attributes.
 	 *  
 	 * @param users List of user search keys
 	 * 
+	 * With the lookup cache enabled, users found in earlier searches are answered from the cache, without any api
+	 * calls.
+	 * 
 	 * @return User data.
 	 */
 	public Map<Long, UserData> searchForUsers(List<UserKey> users) {
-		RateLimiter limiter = new RateLimiter(connection);
-		return limiter.getSearchResults(users);
+		return engine.getSearchResults(users);
+	}
+	
+	/**
+	 * Same as {@link #searchForUsers(List)}, but also reports how the search for each user ended, see
+	 * {@link SearchOutcome}. Users that failed can be searched for again, e.g., with
+	 * {@link SearchReport#getRetriableKeyIds()}.
+	 * 
+	 * @return User data, and the outcomes of the users in the same order as the users.
+	 */
+	public SearchReport searchForUsersWithOutcomes(List<UserKey> users) {
+		return engine.getSearchReport(users);
+	}
+	
+	/**
+	 * Non blocking version of {@link #searchForUsers(List)} for a single user, with HIGH priority.
+	 * 
+	 * @return Future of the user's data, completed with null if the user isn't found, or exceptionally with an
+	 * IOException if the search fails.
+	 */
+	public CompletableFuture<UserData> lookup(UserKey user) {
+		return lookup(user, Priority.HIGH, 0);
+	}
+	
+	/**
+	 * Same as {@link #lookup(UserKey)}, with the given priority and timeout.
+	 * 
+	 * @param timeoutMs If the user isn't done in this many ms, its future is completed exceptionally with a
+	 * TimeoutException. 0 for no timeout.
+	 */
+	public CompletableFuture<UserData> lookup(UserKey user, Priority priority, long timeoutMs) {
+		return lookupAll(Collections.singletonList(user), priority, timeoutMs).get(0);
+	}
+	
+	/**
+	 * Non blocking version of {@link #searchForUsers(List)}, with HIGH priority. Searches are run by the same worker
+	 * threads as all other searches of this client, and each user's future is completed as soon as its data has been
+	 * fetched.
+	 * 
+	 * @return Futures of the users' data, in the same order as the users. See {@link #lookup(UserKey)}.
+	 */
+	public List<CompletableFuture<UserData>> lookupAll(List<UserKey> users) {
+		return lookupAll(users, Priority.HIGH, 0);
+	}
+	
+	/**
+	 * Same as {@link #lookupAll(List)}, with the given priority and timeout. See {@link #lookup(UserKey, Priority, long)}.
+	 */
+	public List<CompletableFuture<UserData>> lookupAll(List<UserKey> users, Priority priority, long timeoutMs) {
+		long deadlineMs = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : WorkQueue.NO_DEADLINE;
+		return engine.lookupAll(users, priority, deadlineMs);
 	}
 	
 	/**
 	 * This is a high level api for reading user keys from input file and writing user data to output file.
 	 * 
+	 * Users are read from the input as the search proceeds and each user's data is written out as soon as it's 
+	 * fetched, so memory use doesn't grow with the size of the input. The output is a json array, or another format
+	 * going by the output file's extension, see {@link FileUtils#openUserDataWriter(String)}.
+	 * 
+	 * If a journal path is set in the settings, progress is journaled there. Running the same search again after
+	 * it was interrupted then picks up where it left off, and the output ends up with all users' data.
+	 * 
+	 * The outcome of every user key is written to a csv file next to the output, see
+	 * {@link FileUtils#getOutcomesPath(String)}, so that the keys that failed can be told apart and searched for again.
+	 * 
 	 * @param inputFile Input file path on the system.
 	 * @param outputDest Output file path.
 	 * 
@@ -249,9 +558,50 @@ public class GitHubAPIClient {
 	 * @throws IOException
 	 */
 	public boolean searchForUsers(String inputFile, String outputDest) throws IOException, BadInputFileException {
-		List<UserKey> userKeys = FileUtils.parseFile(inputFile);
-		Map<Long, UserData> userData = searchForUsers(userKeys);
-		
-		return FileUtils.writeUserDataToFile(userData.values(), outputDest);
+		try (UserKeySource userKeys = FileUtils.openUserKeys(inputFile)) {
+			if (userKeys == null) {
+				throw new BadInputFileException("Unsupported input file " + inputFile);
+			}
+			
+			// Results come in on the core workers, the first write error is reported once the search is done.
+			AtomicReference<IOException> writeError = new AtomicReference<>();
+			try (UserDataWriter writer = FileUtils.openUserDataWriter(outputDest);
+					OutcomeWriter outcomeWriter = FileUtils.openOutcomeWriter(FileUtils.getOutcomesPath(outputDest))) {
+				RateLimiter.ResultHandler handler = new RateLimiter.ResultHandler() {
+					@Override
+					public void onResult(long keyId, UserData data) {
+						try {
+							writer.write(data);
+						} catch (IOException e) {
+							writeError.compareAndSet(null, e);
+						}
+					}
+					
+					@Override
+					public void onOutcome(SearchOutcome outcome) {
+						try {
+							outcomeWriter.write(outcome);
+						} catch (IOException e) {
+							writeError.compareAndSet(null, e);
+						}
+					}
+				};
+				
+				if (settings.getJournalPath() == null) {
+					engine.streamSearchResults(userKeys, handler);
+				} else {
+					// Replaying the journal writes out the users fetched by earlier runs.
+					try (Journal journal = Journal.open(settings.getJournalPath(), 
+							new File(inputFile).getAbsolutePath(), handler)) {
+						engine.streamSearchResults(userKeys, handler, journal);
+					}
+				}
+			}
+			
+			if (writeError.get() != null) {
+				throw writeError.get();
+			}
+			return true;
+		}
 	}
 }
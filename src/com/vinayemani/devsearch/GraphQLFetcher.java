@@ -0,0 +1,467 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONObject;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * GraphQLFetcher fetches user data through GitHub's GraphQL api instead of the REST api. The REST api needs 2 calls
+ * plus one call per repo for every user, while a single GraphQL query can return the profile, the repos and the
+ * no. of commits the user authored in each repo, for several users at once(each user is queried under an alias).
+ *
+ * Commit counts are filtered by the author's node id, which isn't known up front, so a batch of users takes 2
+ * queries - one for the node ids of all users in the batch, and one for their data. Users with more than 100 repos
+ * take one more query for every further 100 repos.
+ *
+ * Callers fetch users one at a time with {@link #fetch(String)}, which blocks until the user's batch has been
+ * fetched. Concurrent callers are grouped into the same batch. The first caller of a batch waits for a short while
+ * for others to join, and then runs the queries for the whole batch on its own thread.
+ *
+ * @author Vinay E.
+ *
+ */
+class GraphQLFetcher {
+	private static final String GRAPHQL_ENDPOINT = "/graphql";
+	private static final String QUERY_KEY = "query";
+	private static final String VARIABLES_KEY = "variables";
+	private static final String RATE_LIMITED_ERROR_TYPE = "RATE_LIMITED";
+	
+	// Same repos as the REST api's /users/{login}/repos?type=all listing.
+	private static final String REPO_AFFILIATIONS = "[OWNER, COLLABORATOR]";
+	private static final int REPOS_PER_PAGE = 100;
+	
+	// Where the author's commit count sits in the defaultBranchRef of a repo node.
+	private static final String[] COMMIT_COUNT_PATH = {"target", "history", "totalCount"};
+	
+	/**
+	 * A user waiting for its batch to be fetched.
+	 *
+	 * @author Vinay E.
+	 */
+	private static class Pending {
+		private final String login;
+		private final CompletableFuture<APICallResult<UserData>> result = new CompletableFuture<>();
+		
+		Pending(String login) {
+			this.login = login;
+		}
+	}
+	
+	/**
+	 * Parsed response of a query.
+	 *
+	 * @author Vinay E.
+	 */
+	static class QueryResult {
+		// Alias -> user, null for users that weren't found.
+		final Map<String, ParsedUser> users = new HashMap<>();
+		boolean rateLimited = false;
+	}
+	
+	/**
+	 * Fields of a single user, as far as they were asked for in the query.
+	 *
+	 * @author Vinay E.
+	 */
+	static class ParsedUser {
+		String id, name, login, company, websiteUrl, location, email;
+		final List<RepoData> repos = new ArrayList<>();
+		boolean hasMoreRepos = false;
+		String reposCursor = null;
+	}
+	
+	private final Connection conn;
+	private final URI endpoint;
+	private final int batchSize;
+	private final long lingerMs;
+	
+	// Batch that callers currently join, null if there is none.
+	private List<Pending> openBatch = null;
+	private final Object batchLock = new Object();
+	
+	public GraphQLFetcher(Connection conn, ClientSettings settings) {
+		this.conn = conn;
+		this.endpoint = conn.apiURI(GRAPHQL_ENDPOINT);
+		this.batchSize = Math.max(settings.getGraphqlBatchSize(), 1);
+		this.lingerMs = Math.max(settings.getGraphqlBatchLingerMs(), 0);
+	}
+	
+	/** Fetches data of a single user, blocking until its batch has been fetched. */
+	public APICallResult<UserData> fetch(String login) {
+		Pending pending = new Pending(login);
+		List<Pending> toRun = null;
+		synchronized(batchLock) {
+			boolean leader = false;
+			if (openBatch == null || openBatch.size() >= batchSize) {
+				openBatch = new ArrayList<>();
+				leader = true;
+			}
+			List<Pending> batch = openBatch;
+			batch.add(pending);
+			
+			if (leader) {
+				// Give other callers a chance to join this batch.
+				long deadline = System.currentTimeMillis() + lingerMs;
+				long toWait;
+				while (batch.size() < batchSize && (toWait = deadline - System.currentTimeMillis()) > 0) {
+					try {
+						batchLock.wait(toWait);
+					} catch (InterruptedException e) {
+						// Others are waiting on this batch too, so send it right away.
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				if (openBatch == batch) {
+					openBatch = null;
+				}
+				toRun = batch;
+			} else if (batch.size() >= batchSize) {
+				batchLock.notifyAll();
+			}
+		}
+		
+		if (toRun != null) {
+			APICallResult<UserData> failure = APICallResult.errorResult();
+			try {
+				failure = runBatch(toRun);
+			} finally {
+				// Whatever wasn't fetched is an error, or unavailable if the api is down.
+				for (Pending p : toRun) {
+					p.result.complete(failure);
+				}
+			}
+		}
+		return pending.result.join();
+	}
+	
+	/** Fetches the users of a batch, returns the result of those that couldn't be fetched. */
+	private APICallResult<UserData> runBatch(List<Pending> batch) {
+		try {
+			// First the node ids of the users, they are needed to filter commits by author.
+			StringBuilder query = new StringBuilder("query(");
+			JSONObject variables = new JSONObject();
+			for (int i = 0; i < batch.size(); i++) {
+				query.append(i > 0 ? ", " : "").append("$l").append(i).append(": String!");
+				variables.put("l" + i, batch.get(i).login);
+			}
+			query.append(") {");
+			for (int i = 0; i < batch.size(); i++) {
+				query.append(" u").append(i).append(": user(login: $l").append(i).append(") { id }");
+			}
+			query.append(" }");
+			
+			APIResponse<QueryResult> idsResp = query(query.toString(), variables);
+			if (!completeOnFailure(batch, idsResp)) {
+				return APICallResult.errorResult();
+			}
+			
+			List<Pending> found = new ArrayList<>();
+			List<String> ids = new ArrayList<>();
+			for (int i = 0; i < batch.size(); i++) {
+				ParsedUser user = idsResp.getData().users.get("u" + i);
+				if (user == null || user.id == null) {
+					batch.get(i).result.complete(APICallResult.noMatchResult(idsResp.getStatusCode()));
+				} else {
+					found.add(batch.get(i));
+					ids.add(user.id);
+				}
+			}
+			if (found.isEmpty()) {
+				return APICallResult.errorResult();
+			}
+			
+			// Now the profiles, repos and commit counts.
+			query = new StringBuilder("query(");
+			variables = new JSONObject();
+			for (int i = 0; i < found.size(); i++) {
+				query.append(i > 0 ? ", " : "").append("$l").append(i).append(": String!, $a").append(i).append(": ID!");
+				variables.put("l" + i, found.get(i).login);
+				variables.put("a" + i, ids.get(i));
+			}
+			query.append(") {");
+			for (int i = 0; i < found.size(); i++) {
+				appendUserQuery(query, i, true, false);
+			}
+			query.append(" }");
+			
+			APIResponse<QueryResult> dataResp = query(query.toString(), variables);
+			if (!completeOnFailure(found, dataResp)) {
+				return APICallResult.errorResult();
+			}
+			
+			for (int i = 0; i < found.size(); i++) {
+				ParsedUser user = dataResp.getData().users.get("u" + i);
+				if (user == null) {
+					found.get(i).result.complete(APICallResult.noMatchResult(dataResp.getStatusCode()));
+					continue;
+				}
+				
+				APICallResult<UserData> result = fetchRemainingRepos(found.get(i).login, ids.get(i), user);
+				if (result == null) {
+					UserProfile profile = new UserProfile(GitHubAPIClient.emptyIfNull(user.name),
+							GitHubAPIClient.emptyIfNull(user.login), GitHubAPIClient.emptyIfNull(user.company),
+							GitHubAPIClient.emptyIfNull(user.websiteUrl), GitHubAPIClient.emptyIfNull(user.location),
+							GitHubAPIClient.emptyIfNull(user.email));
+					result = APICallResult.successResult(new UserData(profile, user.repos));
+				}
+				found.get(i).result.complete(result);
+			}
+		} catch (IOException e) {
+			// Connection aborted, the batch is completed by the caller.
+			return APICallResult.failureResult(e);
+		}
+		return APICallResult.errorResult();
+	}
+	
+	/**
+	 * Pages through the rest of a user's repos, if there are more than fit in the first page.
+	 *
+	 * @return null once all repos have been added to the user, otherwise a failure result.
+	 */
+	private APICallResult<UserData> fetchRemainingRepos(String login, String id, ParsedUser user) throws IOException {
+		while (user.hasMoreRepos) {
+			StringBuilder query = new StringBuilder("query($l0: String!, $a0: ID!, $c0: String!) {");
+			appendUserQuery(query, 0, false, true);
+			query.append(" }");
+			
+			JSONObject variables = new JSONObject();
+			variables.put("l0", login);
+			variables.put("a0", id);
+			variables.put("c0", user.reposCursor);
+			
+			APIResponse<QueryResult> resp = query(query.toString(), variables);
+			APICallResult<UserData> failure = failureResult(resp);
+			if (failure != null) {
+				return failure;
+			}
+			
+			ParsedUser page = resp.getData().users.get("u0");
+			if (page == null) {
+				return APICallResult.errorResult(resp.getStatusCode());
+			}
+			user.repos.addAll(page.repos);
+			user.hasMoreRepos = page.hasMoreRepos;
+			user.reposCursor = page.reposCursor;
+		}
+		return null;
+	}
+	
+	// Appends the aliased query of the i-th user, whose login and node id are in the variables $li and $ai.
+	private static void appendUserQuery(StringBuilder query, int i, boolean withProfile, boolean withCursor) {
+		query.append(" u").append(i).append(": user(login: $l").append(i).append(") {");
+		if (withProfile) {
+			query.append(" login name company websiteUrl location email");
+		}
+		query.append(" repositories(first: ").append(REPOS_PER_PAGE);
+		if (withCursor) {
+			query.append(", after: $c").append(i);
+		}
+		query.append(", ownerAffiliations: ").append(REPO_AFFILIATIONS).append(") {")
+				.append(" pageInfo { hasNextPage endCursor }")
+				.append(" nodes { name defaultBranchRef { target { ... on Commit {")
+				.append(" history(author: {id: $a").append(i).append("}) { totalCount } } } } } } }");
+	}
+	
+	private APIResponse<QueryResult> query(String query, JSONObject variables) throws IOException {
+		JSONObject body = new JSONObject();
+		body.put(QUERY_KEY, query);
+		body.put(VARIABLES_KEY, variables);
+		return conn.post(endpoint, body.toString(), GraphQLFetcher::parseQueryResult);
+	}
+	
+	/** Completes all the given users with a failure result if the response failed, returns false if it did. */
+	private static boolean completeOnFailure(List<Pending> users, APIResponse<QueryResult> resp) {
+		APICallResult<UserData> failure = failureResult(resp);
+		if (failure == null) {
+			return true;
+		}
+		for (Pending p : users) {
+			p.result.complete(failure);
+		}
+		return false;
+	}
+	
+	private static APICallResult<UserData> failureResult(APIResponse<QueryResult> resp) {
+		int respCode = resp.getStatusCode();
+		if (resp.isRateLimited() || (respCode == Connection.RESP_CODE_OK && resp.getData().rateLimited)) {
+			return APICallResult.rateLimitExceededResult(respCode);
+		} else if (respCode != Connection.RESP_CODE_OK) {
+			return APICallResult.errorResult(respCode);
+		}
+		return null;
+	}
+	
+	/** Parses a query response of the form {"data": {"u0": {...}, "u1": null, ...}, "errors": [...]} */
+	static QueryResult parseQueryResult(JsonReader reader) throws IOException {
+		QueryResult result = new QueryResult();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String field = reader.nextName();
+			if (field.equals("data") && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String alias = reader.nextName();
+					if (reader.peek() == JsonReader.Token.NULL) {
+						reader.nextNull();
+						result.users.put(alias, null);
+					} else {
+						result.users.put(alias, parseUser(reader));
+					}
+				}
+				reader.endObject();
+			} else if (field.equals("errors") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if (reader.nextName().equals("type") && RATE_LIMITED_ERROR_TYPE.equals(reader.nextStringOrNull())) {
+							result.rateLimited = true;
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+	
+	private static ParsedUser parseUser(JsonReader reader) throws IOException {
+		ParsedUser user = new ParsedUser();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				user.id = reader.nextStringOrNull();
+				break;
+			case "login":
+				user.login = reader.nextStringOrNull();
+				break;
+			case "name":
+				user.name = reader.nextStringOrNull();
+				break;
+			case "company":
+				user.company = reader.nextStringOrNull();
+				break;
+			case "websiteUrl":
+				user.websiteUrl = reader.nextStringOrNull();
+				break;
+			case "location":
+				user.location = reader.nextStringOrNull();
+				break;
+			case "email":
+				user.email = reader.nextStringOrNull();
+				break;
+			case "repositories":
+				parseRepositories(reader, user);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return user;
+	}
+	
+	// Reads a page of repositories along with its pagination info into the user.
+	private static void parseRepositories(JsonReader reader, ParsedUser user) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String field = reader.nextName();
+			if (field.equals("pageInfo")) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String name = reader.nextName();
+					if (name.equals("hasNextPage") && reader.peek() == JsonReader.Token.BOOLEAN) {
+						user.hasMoreRepos = reader.nextBoolean();
+					} else if (name.equals("endCursor")) {
+						user.reposCursor = reader.nextStringOrNull();
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else if (field.equals("nodes")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					RepoData repo = parseRepo(reader);
+					if (repo != null) {
+						user.repos.add(repo);
+					}
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+	
+	/**
+	 * Reads a repo node, {"name": ..., "defaultBranchRef": {"target": {"history": {"totalCount": n}}}}.
+	 *
+	 * @return The repo, null for empty repos(no default branch), which the REST engine skips too.
+	 */
+	private static RepoData parseRepo(JsonReader reader) throws IOException {
+		String name = null;
+		int commits = -1;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String field = reader.nextName();
+			if (field.equals("name")) {
+				name = reader.nextStringOrNull();
+			} else if (field.equals("defaultBranchRef")) {
+				commits = readNestedInt(reader, COMMIT_COUNT_PATH, 0);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return commits >= 0 ? new RepoData(commits, name) : null;
+	}
+	
+	/**
+	 * Reads the number found by following the given path of field names down nested objects, starting at 
+	 * path[depth], and skips everything else.
+	 *
+	 * @return The number, -1 if it isn't there.
+	 */
+	private static int readNestedInt(JsonReader reader, String[] path, int depth) throws IOException {
+		if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+			reader.skipValue();
+			return -1;
+		}
+		
+		int value = -1;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (!reader.nextName().equals(path[depth])) {
+				reader.skipValue();
+			} else if (depth < path.length - 1) {
+				value = readNestedInt(reader, path, depth + 1);
+			} else if (reader.peek() == JsonReader.Token.NUMBER) {
+				value = reader.nextInt();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return value;
+	}
+}
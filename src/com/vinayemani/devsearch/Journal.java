@@ -0,0 +1,376 @@
+package com.vinayemani.devsearch;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.vinayemani.devsearch.RateLimiter.ResultHandler;
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * Journal is an append-only log of the progress of a search run, so that a run that dies midway can be resumed
+ * without redoing the work already done. Each user key(identified by its position in the input) gets a record when
+ * its search finds a login, when its data is fetched, when there's no match and when an error occurs. Records are
+ * single lines of text,
+ *
+ * 	S <keyId> <login>
+ * 	F <keyId> <user data as json>
+ * 	N <keyId>
+ * 	E <keyId>
+ *
+ * preceded by a header line naming the input the keyIds refer to.
+ *
+ * Records are buffered and forced to disk in batches, every {@link #SYNC_BATCH_SIZE} records or every
+ * {@link #SYNC_INTERVAL_MS} ms, whichever comes first. So a crash loses at most the last batch, which is simply
+ * redone on resume. A partially written last record is discarded when the journal is reopened.
+ *
+ * On reopening, the journal is replayed. Keys with fetched data or no match are done, and their data is handed to
+ * a result handler again. Keys that were searched but not fetched only need their data fetched. All other keys,
+ * including the ones that ran into errors, are searched afresh.
+ *
+ * @author Vinay E.
+ *
+ */
+class Journal implements Closeable {
+	private static final String HEADER_PREFIX = "# devsearch journal v1 ";
+	private static final char SEARCHED = 'S';
+	private static final char FETCHED = 'F';
+	private static final char NO_MATCH = 'N';
+	private static final char ERROR = 'E';
+	
+	private static final int SYNC_BATCH_SIZE = 256;
+	private static final long SYNC_INTERVAL_MS = 1000;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	
+	// Replayed state. Keys are positions in the input, so a bit set holds the done ones compactly.
+	private final BitSet done = new BitSet();
+	private final BitSet noMatches = new BitSet();
+	private final Map<Long, String> searchedLogins = new HashMap<>();
+	
+	// Used under the journal's lock, like the writer.
+	private final UserDataSerializer serializer = new UserDataSerializer(0);
+	
+	private final FileOutputStream out;
+	private final Writer writer;
+	private int unsynced = 0;
+	private IOException failure = null;
+	private final ScheduledExecutorService syncer;
+	
+	private Journal(File file, String inputId, ResultHandler replayHandler) throws IOException {
+		long goodLength = file.exists() ? replay(file, inputId, replayHandler) : 0;
+		
+		out = new FileOutputStream(file, true);
+		// Cut off a partially written last record.
+		FileChannel channel = out.getChannel();
+		if (channel.size() > goodLength) {
+			channel.truncate(goodLength);
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (goodLength == 0) {
+			writer.write(HEADER_PREFIX + inputId + "\n");
+		}
+		
+		syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "devsearch-journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		syncer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (Journal.this) {
+					try {
+						sync();
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+			}
+		}, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Opens a journal, creating it if it doesn't exist, otherwise replaying it.
+	 *
+	 * @param path Path of the journal file.
+	 * @param inputId Identifies the input the run is for, e.g., the input file path. A journal can't be resumed with
+	 * another input.
+	 * @param replayHandler Receives the data of users fetched in earlier runs.
+	 * @throws IOException If the journal can't be read or written, or it belongs to another input.
+	 */
+	public static Journal open(String path, String inputId, ResultHandler replayHandler) throws IOException {
+		return new Journal(new File(path), inputId, replayHandler);
+	}
+	
+	/** Whether a key was finished in an earlier run. */
+	public boolean isDone(long keyId) {
+		return keyId <= Integer.MAX_VALUE && done.get((int) keyId);
+	}
+	
+	/** Whether a key was found to have no match in an earlier run. */
+	public boolean isNoMatch(long keyId) {
+		return keyId <= Integer.MAX_VALUE && noMatches.get((int) keyId);
+	}
+	
+	/** Login found for a key in an earlier run whose data is yet to be fetched, null if there's none. */
+	public String getSearchedLogin(long keyId) {
+		return searchedLogins.get(keyId);
+	}
+	
+	// Records are appended by the workers, which can't do much about write errors. So the first one is kept and
+	// reported on close.
+	public void searched(long keyId, String login) {
+		append(SEARCHED + " " + keyId + " " + login);
+	}
+	
+	public synchronized void fetched(long keyId, UserData data) {
+		if (failure != null) {
+			return;
+		}
+		try {
+			// The data goes straight to the writer, rather than being built up into a record first.
+			writer.write(FETCHED + " " + keyId + " ");
+			serializer.write(data, writer, 0);
+			endRecord();
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+	
+	public void noMatch(long keyId) {
+		append(NO_MATCH + " " + keyId);
+	}
+	
+	public void error(long keyId) {
+		append(ERROR + " " + keyId);
+	}
+	
+	private synchronized void append(String record) {
+		if (failure != null) {
+			return;
+		}
+		try {
+			writer.write(record);
+			endRecord();
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+	
+	private void endRecord() throws IOException {
+		writer.write('\n');
+		if (++unsynced >= SYNC_BATCH_SIZE) {
+			sync();
+		}
+	}
+	
+	// Forces buffered records to disk.
+	private synchronized void sync() throws IOException {
+		if (unsynced == 0) {
+			return;
+		}
+		writer.flush();
+		out.getChannel().force(false);
+		unsynced = 0;
+	}
+	
+	/**
+	 * Forces the remaining records to disk and closes the journal.
+	 *
+	 * @throws IOException If this or any earlier write to the journal failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		syncer.shutdownNow();
+		synchronized (this) {
+			try {
+				if (failure == null) {
+					writer.flush();
+					out.getChannel().force(false);
+				}
+			} finally {
+				writer.close();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the journal's records into the replayed state.
+	 *
+	 * @return Length of the journal up to the end of its last complete record.
+	 */
+	private long replay(File file, String inputId, ResultHandler replayHandler) throws IOException {
+		long goodLength = 0;
+		boolean first = true;
+		try (InputStream in = new FileInputStream(file)) {
+			// Lines are split by hand, as readers can't tell whether the last line was terminated.
+			byte[] buf = new byte[READ_BUFFER_SIZE];
+			ByteArrayOutputStream partial = new ByteArrayOutputStream();
+			int read;
+			while ((read = in.read(buf)) > 0) {
+				int start = 0;
+				for (int i = 0; i < read; i++) {
+					if (buf[i] != '\n') {
+						continue;
+					}
+					
+					String line;
+					if (partial.size() > 0) {
+						partial.write(buf, start, i - start);
+						line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+						partial.reset();
+					} else {
+						line = new String(buf, start, i - start, StandardCharsets.UTF_8);
+					}
+					goodLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+					start = i + 1;
+					
+					if (first) {
+						if (!line.equals(HEADER_PREFIX + inputId)) {
+							throw new IOException("Journal " + file + " belongs to another input");
+						}
+						first = false;
+					} else {
+						applyRecord(line, replayHandler);
+					}
+				}
+				partial.write(buf, start, read - start);
+			}
+		}
+		return goodLength;
+	}
+	
+	private void applyRecord(String line, ResultHandler replayHandler) throws IOException {
+		int keyEnd = line.indexOf(' ', 2);
+		long keyId;
+		try {
+			keyId = Long.parseLong(keyEnd < 0 ? line.substring(2) : line.substring(2, keyEnd));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			// Not a record we wrote, skip it.
+			return;
+		}
+		if (keyId > Integer.MAX_VALUE) {
+			return;
+		}
+		
+		switch (line.charAt(0)) {
+		case SEARCHED:
+			if (!done.get((int) keyId)) {
+				searchedLogins.put(keyId, line.substring(keyEnd + 1));
+			}
+			break;
+		case FETCHED:
+			if (!done.get((int) keyId)) {
+				replayHandler.onResult(keyId, readUserData(new JsonReader(new StringReader(line.substring(keyEnd + 1)))));
+			}
+			done.set((int) keyId);
+			searchedLogins.remove(keyId);
+			break;
+		case NO_MATCH:
+			if (!done.get((int) keyId)) {
+				noMatches.set((int) keyId);
+			}
+			done.set((int) keyId);
+			searchedLogins.remove(keyId);
+			break;
+		default:
+			// Errors are retried.
+			break;
+		}
+	}
+	
+	/** Reads user data back from the json written by {@link #fetched(long, UserData)}. */
+	static UserData readUserData(JsonReader reader) throws IOException {
+		UserProfile profile = null;
+		List<RepoData> repos = new ArrayList<>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String field = reader.nextName();
+			if (field.equals("profile")) {
+				profile = readProfile(reader);
+			} else if (field.equals("repos")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					String name = null;
+					int numCommits = 0;
+					reader.beginObject();
+					while (reader.hasNext()) {
+						String repoField = reader.nextName();
+						if (repoField.equals("name")) {
+							name = reader.nextStringOrNull();
+						} else if (repoField.equals("numCommits")) {
+							numCommits = reader.nextInt();
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					repos.add(new RepoData(numCommits, name));
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return new UserData(profile, repos);
+	}
+	
+	private static UserProfile readProfile(JsonReader reader) throws IOException {
+		String name = null, login = null, company = null, blog = null, location = null, email = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "name":
+				name = reader.nextStringOrNull();
+				break;
+			case "login":
+				login = reader.nextStringOrNull();
+				break;
+			case "companyName":
+				company = reader.nextStringOrNull();
+				break;
+			case "blogUrl":
+				blog = reader.nextStringOrNull();
+				break;
+			case "location":
+				location = reader.nextStringOrNull();
+				break;
+			case "email":
+				email = reader.nextStringOrNull();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return new UserProfile(name, login, company, blog, location, email);
+	}
+}
@@ -0,0 +1,423 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * JsonReader is a minimal pull style json parser. Instead of building the whole document tree in memory(like
+ * {@link org.json.JSONObject} does), it lets the caller walk the document token by token and pick out only the
+ * values it is interested in, while skipping everything else. Only a small fixed size buffer is held in memory,
+ * irrespective of how large the document is.
+ *
+ * Typical usage for reading the 'login' field of an object looks like
+ *
+ * 	reader.beginObject();
+ * 	while (reader.hasNext()) {
+ * 		if (reader.nextName().equals("login")) {
+ * 			login = reader.nextString();
+ * 		} else {
+ * 			reader.skipValue();
+ * 		}
+ * 	}
+ * 	reader.endObject();
+ *
+ * @author Vinay E.
+ *
+ */
+class JsonReader implements Closeable {
+	
+	/**
+	 * Thrown when the document isn't valid json, as opposed to other IOExceptions that come from reading it.
+	 * 
+	 * @author Vinay E.
+	 */
+	static class MalformedJsonException extends IOException {
+		private static final long serialVersionUID = 2473021836270548119L;
+		
+		MalformedJsonException(String message) {
+			super(message);
+		}
+		
+		MalformedJsonException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+	
+	/** Kinds of tokens a json document is made up of. */
+	enum Token {
+		BEGIN_OBJECT,
+		END_OBJECT,
+		BEGIN_ARRAY,
+		END_ARRAY,
+		NAME,
+		STRING,
+		NUMBER,
+		BOOLEAN,
+		NULL,
+		END_DOCUMENT
+	}
+	
+	// Nesting scopes, tracked on a stack so that we know which separators to expect next.
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+	
+	private static final int BUFFER_SIZE = 2048;
+	
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	
+	private int[] stack = new int[16];
+	private int stackSize = 0;
+	
+	// The token returned by the last peek() that hasn't been consumed yet, along with its literal value if any.
+	private Token peeked = null;
+	private String peekedLiteral = null;
+	
+	// Reused for building strings and numbers.
+	private final StringBuilder builder = new StringBuilder();
+	
+	public JsonReader(Reader in) {
+		this.in = in;
+		push(EMPTY_DOCUMENT);
+	}
+	
+	/** Returns the type of the next token without consuming it. */
+	public Token peek() throws IOException {
+		if (peeked == null) {
+			peeked = doPeek();
+		}
+		return peeked;
+	}
+	
+	/** Returns true if the current array or object has more elements. */
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+	
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+	
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		stackSize--;
+	}
+	
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+	
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		stackSize--;
+	}
+	
+	/** Consumes the next property name of the current object. */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		return readString();
+	}
+	
+	/** Consumes the next string value. */
+	public String nextString() throws IOException {
+		Token token = peek();
+		if (token == Token.NUMBER || token == Token.BOOLEAN) {
+			peeked = null;
+			return peekedLiteral;
+		}
+		expect(Token.STRING);
+		return readString();
+	}
+	
+	/** Consumes the next value if it's a string, else skips it and returns null. */
+	public String nextStringOrNull() throws IOException {
+		if (peek() == Token.STRING) {
+			return nextString();
+		}
+		skipValue();
+		return null;
+	}
+	
+	public long nextLong() throws IOException {
+		expect(Token.NUMBER);
+		try {
+			return Long.parseLong(peekedLiteral);
+		} catch (NumberFormatException e) {
+			return (long) Double.parseDouble(peekedLiteral);
+		}
+	}
+	
+	public int nextInt() throws IOException {
+		return (int) nextLong();
+	}
+	
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		return peekedLiteral.equals("true");
+	}
+	
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+	}
+	
+	/** Skips the next value, recursively skipping nested objects and arrays. */
+	public void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			Token token = peek();
+			peeked = null;
+			switch (token) {
+			case BEGIN_OBJECT:
+				push(EMPTY_OBJECT);
+				depth++;
+				break;
+			case BEGIN_ARRAY:
+				push(EMPTY_ARRAY);
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				stackSize--;
+				depth--;
+				break;
+			case NAME:
+			case STRING:
+				skipString();
+				break;
+			case END_DOCUMENT:
+				throw syntaxError("Unexpected end of document");
+			default:
+				break;
+			}
+		} while (depth > 0);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+	
+	private void expect(Token expected) throws IOException {
+		Token token = peek();
+		if (token != expected) {
+			throw syntaxError("Expected " + expected + " but was " + token);
+		}
+		peeked = null;
+	}
+	
+	private void push(int scope) {
+		if (stackSize == stack.length) {
+			int[] newStack = new int[stackSize * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = scope;
+	}
+	
+	private Token doPeek() throws IOException {
+		int scope = stack[stackSize - 1];
+		if (scope == EMPTY_ARRAY) {
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+		} else if (scope == NONEMPTY_ARRAY) {
+			int c = nextNonWhitespace();
+			if (c == ']') {
+				return Token.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Unterminated array");
+			}
+		} else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+			stack[stackSize - 1] = DANGLING_NAME;
+			int c = nextNonWhitespace();
+			if (scope == NONEMPTY_OBJECT) {
+				if (c == '}') {
+					return Token.END_OBJECT;
+				} else if (c != ',') {
+					throw syntaxError("Unterminated object");
+				}
+				c = nextNonWhitespace();
+			}
+			
+			if (c == '"') {
+				return Token.NAME;
+			} else if (c == '}' && scope == EMPTY_OBJECT) {
+				return Token.END_OBJECT;
+			}
+			throw syntaxError("Expected name");
+		} else if (scope == DANGLING_NAME) {
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+		} else if (scope == EMPTY_DOCUMENT) {
+			stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+		} else if (scope == NONEMPTY_DOCUMENT) {
+			if (nextNonWhitespace() == -1) {
+				return Token.END_DOCUMENT;
+			}
+			throw syntaxError("Expected end of document");
+		}
+		
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case ']':
+			if (scope == EMPTY_ARRAY) {
+				return Token.END_ARRAY;
+			}
+			throw syntaxError("Unexpected ']'");
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			pos--;
+			peekedLiteral = readLiteral();
+			if (!peekedLiteral.equals("true") && !peekedLiteral.equals("false")) {
+				throw syntaxError("Unexpected literal " + peekedLiteral);
+			}
+			return Token.BOOLEAN;
+		case 'n':
+			pos--;
+			if (!readLiteral().equals("null")) {
+				throw syntaxError("Unexpected literal");
+			}
+			return Token.NULL;
+		case -1:
+			throw syntaxError("Unexpected end of document");
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				pos--;
+				peekedLiteral = readLiteral();
+				return Token.NUMBER;
+			}
+			throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+	
+	// Makes sure there's at least one unread char in the buffer, returns false at end of input.
+	private boolean fill() throws IOException {
+		if (pos < limit) {
+			return true;
+		}
+		
+		int read = in.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = read;
+		return true;
+	}
+	
+	private int nextNonWhitespace() throws IOException {
+		while (fill()) {
+			char c = buffer[pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+		return -1;
+	}
+	
+	// Reads an unquoted literal like a number, true, false or null.
+	private String readLiteral() throws IOException {
+		builder.setLength(0);
+		while (fill()) {
+			char c = buffer[pos];
+			if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				break;
+			}
+			builder.append(c);
+			pos++;
+		}
+		return builder.toString();
+	}
+	
+	// Reads the rest of a string whose opening quote has already been consumed.
+	private String readString() throws IOException {
+		builder.setLength(0);
+		while (true) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					builder.append(buffer, start, pos - start - 1);
+					return builder.toString();
+				} else if (c == '\\') {
+					builder.append(buffer, start, pos - start - 1);
+					builder.append(readEscapeChar());
+					start = pos;
+				}
+			}
+			builder.append(buffer, start, pos - start);
+			if (!fill()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+	
+	private void skipString() throws IOException {
+		while (fill()) {
+			char c = buffer[pos++];
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscapeChar();
+			}
+		}
+		throw syntaxError("Unterminated string");
+	}
+	
+	private char readEscapeChar() throws IOException {
+		if (!fill()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		
+		char escaped = buffer[pos++];
+		switch (escaped) {
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				if (!fill()) {
+					throw syntaxError("Unterminated escape sequence");
+				}
+				int digit = Character.digit(buffer[pos++], 16);
+				if (digit < 0) {
+					throw syntaxError("Bad unicode escape");
+				}
+				value = (value << 4) + digit;
+			}
+			return (char) value;
+		case 't':
+			return '\t';
+		case 'b':
+			return '\b';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		default:
+			// Covers \" \\ and \/
+			return escaped;
+		}
+	}
+	
+	private MalformedJsonException syntaxError(String message) {
+		return new MalformedJsonException("Malformed json: " + message);
+	}
+}
@@ -0,0 +1,76 @@
+package com.vinayemani.devsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vinayemani.devsearch.data.CacheStats;
+
+/**
+ * LookupCache is a bounded in-memory cache with least recently used eviction and a time to live for each entry.
+ * It's safe to use from several threads.
+ *
+ * @author Vinay E.
+ *
+ */
+class LookupCache<K, V> {
+	
+	// Cached value and the time(System.nanoTime()) it expires at.
+	private static class Entry<V> {
+		private final V value;
+		private final long expiresAtNanos;
+		
+		private Entry(V value, long expiresAtNanos) {
+			this.value = value;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+	
+	private final long ttlNanos;
+	private final LinkedHashMap<K, Entry<V>> entries;
+	
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	LookupCache(final int maxEntries, long ttlMs) {
+		this.ttlNanos = ttlMs * 1000000;
+		// Access ordered, so the eldest entry is the least recently used one.
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 6014836420377823495L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				if (size() > maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/** Cached value of a key, null if it isn't cached or has expired. */
+	public synchronized V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && entry.expiresAtNanos - System.nanoTime() <= 0) {
+			entries.remove(key);
+			evictions++;
+			entry = null;
+		}
+		
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+	
+	public synchronized void put(K key, V value) {
+		entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+	}
+	
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, evictions, entries.size());
+	}
+}
@@ -0,0 +1,17 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.vinayemani.devsearch.data.SearchOutcome;
+
+/**
+ * OutcomeWriter writes the outcomes of user keys out one at a time as the keys finish, see
+ * {@link FileUtils#openOutcomeWriter(String)}.
+ * 
+ * @author Vinay E.
+ *
+ */
+public interface OutcomeWriter extends Closeable {
+	void write(SearchOutcome outcome) throws IOException;
+}
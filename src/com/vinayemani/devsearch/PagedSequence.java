@@ -0,0 +1,199 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.vinayemani.devsearch.Connection.ResponseParser;
+
+/**
+ * PagedSequence lazily iterates over all elements of a paginated api listing(repos of a user etc.), page by page.
+ *
+ * The first page is fetched on the first call to {@link #hasNext()}. If its Link header tells us the no. of the last
+ * page, the rest of the pages are fetched concurrently on an executor, with at most a fixed no. of them in flight at
+ * a time, and handed out in page order. Otherwise pages are fetched one after another by following their 'next'
+ * links. Either way, elements of a page can be consumed while the pages after it are still being fetched.
+ *
+ * Pages that can't be fetched are reported with a {@link SequenceFetchException}. A sequence that isn't iterated
+ * to the end should be closed, to cancel the page fetches still in flight.
+ *
+ * @author Vinay E.
+ *
+ */
+class PagedSequence<T> implements Iterator<T>, Closeable {
+	private static final String NEXT_REL = "next";
+	private static final String LAST_REL = "last";
+	private static final Pattern PAGE_PARAM_PATTERN = Pattern.compile("([?&])page=(\\d+)");
+	
+	private final Connection conn;
+	private final ResponseParser<List<T>> pageParser;
+	private final ExecutorService executor;
+	private final int maxInFlight;
+	
+	// Uri of the first page, null once it has been fetched.
+	private URI firstPageUri;
+	
+	// Url of the last page, used as a template for the urls of the pages before it. Null if the last page isn't known.
+	private String lastPageUrl = null;
+	private int lastPage = 0;
+	private int nextPageToFetch = 0;
+	
+	// Pending page fetches, in page order.
+	private final ArrayDeque<Future<APIResponse<List<T>>>> inFlight = new ArrayDeque<>();
+	
+	// Url of the next page, when pages are being followed one by one.
+	private String nextPageUrl = null;
+	
+	private Iterator<T> current = Collections.emptyIterator();
+	
+	PagedSequence(Connection conn, URI firstPageUri, ResponseParser<List<T>> pageParser, ExecutorService executor,
+			int maxInFlight) {
+		this.conn = conn;
+		this.firstPageUri = firstPageUri;
+		this.pageParser = pageParser;
+		this.executor = executor;
+		this.maxInFlight = Math.max(maxInFlight, 1);
+	}
+	
+	/**
+	 * Page no. of a page url, i.e., the value of its 'page' query parameter.
+	 *
+	 * @return The page no., -1 if the url has no page parameter.
+	 */
+	static int pageNumber(String url) {
+		Matcher matcher = PAGE_PARAM_PATTERN.matcher(url);
+		return matcher.find() ? Integer.parseInt(matcher.group(2)) : -1;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		try {
+			while (!current.hasNext()) {
+				List<T> page = nextPage();
+				if (page == null) {
+					return false;
+				}
+				current = page.iterator();
+			}
+			return true;
+		} catch (SequenceFetchException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+	
+	/** Cancels the page fetches still in flight. */
+	@Override
+	public void close() {
+		for (Future<APIResponse<List<T>>> page : inFlight) {
+			page.cancel(true);
+		}
+		inFlight.clear();
+		lastPageUrl = null;
+		nextPageUrl = null;
+	}
+	
+	// Returns the elements of the next page, null when there are no more pages.
+	private List<T> nextPage() {
+		if (firstPageUri != null) {
+			APIResponse<List<T>> page = fetch(firstPageUri);
+			firstPageUri = null;
+			
+			Map<String, String> links = page.getLinks();
+			String last = links.get(LAST_REL);
+			if (last != null && pageNumber(last) > 1) {
+				lastPageUrl = last;
+				lastPage = pageNumber(last);
+				nextPageToFetch = 2;
+				fetchAhead();
+			} else {
+				nextPageUrl = links.get(NEXT_REL);
+			}
+			return page.getData();
+		}
+		
+		if (!inFlight.isEmpty()) {
+			APIResponse<List<T>> page = await(inFlight.poll());
+			fetchAhead();
+			return page.getData();
+		}
+		
+		if (nextPageUrl != null) {
+			APIResponse<List<T>> page = fetch(toURI(nextPageUrl));
+			nextPageUrl = page.getLinks().get(NEXT_REL);
+			return page.getData();
+		}
+		return null;
+	}
+	
+	// Tops up the in flight page fetches.
+	private void fetchAhead() {
+		while (lastPageUrl != null && inFlight.size() < maxInFlight && nextPageToFetch <= lastPage) {
+			Matcher matcher = PAGE_PARAM_PATTERN.matcher(lastPageUrl);
+			final URI pageUri = toURI(matcher.replaceFirst("$1page=" + nextPageToFetch++));
+			inFlight.add(executor.submit(new Callable<APIResponse<List<T>>>() {
+				@Override
+				public APIResponse<List<T>> call() {
+					return fetch(pageUri);
+				}
+			}));
+		}
+	}
+	
+	private APIResponse<List<T>> fetch(URI uri) {
+		APIResponse<List<T>> page;
+		try {
+			page = conn.get(uri, pageParser);
+		} catch (IOException e) {
+			throw new SequenceFetchException(e);
+		}
+		
+		if (page.getStatusCode() != Connection.RESP_CODE_OK) {
+			throw new SequenceFetchException(page.getStatusCode(), page.isRateLimited());
+		}
+		return page;
+	}
+	
+	private APIResponse<List<T>> await(Future<APIResponse<List<T>>> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SequenceFetchException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SequenceFetchException) {
+				throw (SequenceFetchException) e.getCause();
+			}
+			throw new SequenceFetchException(e.getCause());
+		}
+	}
+	
+	private static URI toURI(String url) {
+		try {
+			return new URI(url);
+		} catch (URISyntaxException e) {
+			throw new SequenceFetchException(e);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.vinayemani.devsearch;
+
+/**
+ * Priority of a search relative to the other searches running on the same client at the same time.
+ * 
+ * Searches share the api calls they get in proportion to their priorities' weights, e.g., while a HIGH and a LOW
+ * search are both running, the HIGH one gets 16 calls for every call the LOW one gets. So a search of any priority
+ * keeps making progress. Non blocking lookups are HIGH by default, other searches NORMAL.
+ * 
+ * @author Vinay E.
+ *
+ */
+public enum Priority {
+	HIGH(16),
+	NORMAL(4),
+	LOW(1);
+	
+	private final int weight;
+	
+	private Priority(int weight) {
+		this.weight = weight;
+	}
+	
+	int getWeight() {
+		return weight;
+	}
+}
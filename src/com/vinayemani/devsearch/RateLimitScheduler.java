@@ -0,0 +1,186 @@
+package com.vinayemani.devsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vinayemani.devsearch.data.APIRateLimit;
+
+/**
+ * RateLimitScheduler paces api requests so that they never run into GitHub's rate limits. Every api response
+ * carries X-RateLimit-* headers telling us how many requests are left in the current window and when the window
+ * resets. The scheduler keeps a token bucket per rate limit category(core, search, graphql) that is refilled at a
+ * rate that spreads the remaining requests evenly over the rest of the window, while allowing small bursts.
+ *
+ * Requests must call {@link #acquire(String)} before going out and {@link #update(String, int, int, long)} with
+ * the header values once the response comes back.
+ *
+ * @author Vinay E.
+ *
+ */
+class RateLimitScheduler {
+	
+	/**
+	 * Token bucket state for a single rate limit category.
+	 *
+	 * @author Vinay E.
+	 */
+	private static class Bucket {
+		private final int resetPeriodSecs;
+		
+		// Whether we have seen the rate limit headers for this category yet.
+		private boolean known = false;
+		private int limit;
+		private int remaining;
+		private long resetTimeMs;
+		
+		private double tokens;
+		private long lastRefillMs;
+		
+		Bucket(int resetPeriodSecs, int burst) {
+			this.resetPeriodSecs = resetPeriodSecs;
+			this.tokens = burst;
+			this.lastRefillMs = System.currentTimeMillis();
+		}
+	}
+	
+	private final int burst;
+	private final Map<String, Bucket> buckets = new HashMap<>();
+	
+	public RateLimitScheduler(int burst) {
+		this.burst = Math.max(burst, 1);
+		buckets.put(GitHubAPIClient.RATE_LIMIT_CORE_KEY, new Bucket(GitHubAPIClient.CORE_API_RESET_PERIOD_SEC, this.burst));
+		buckets.put(GitHubAPIClient.RATE_LIMIT_SEARCH_KEY, new Bucket(GitHubAPIClient.SEARCH_API_RESET_PERIOD_SEC, this.burst));
+		buckets.put(GitHubAPIClient.RATE_LIMIT_GRAPHQL_KEY, new Bucket(GitHubAPIClient.GRAPHQL_API_RESET_PERIOD_SEC, this.burst));
+	}
+	
+	/**
+	 * Blocks the calling thread until a request of the given category can be made without exceeding the rate limit.
+	 * Unknown categories are not paced.
+	 */
+	public void acquire(String category) throws InterruptedException {
+		while (true) {
+			long toWaitMs = tryAcquire(category);
+			if (toWaitMs == 0) {
+				return;
+			}
+			Thread.sleep(toWaitMs);
+		}
+	}
+	
+	/**
+	 * Non blocking version of {@link #acquire(String)}.
+	 * 
+	 * @return 0 if the request can be made right away, otherwise the no. of milliseconds to wait before trying again.
+	 */
+	public long tryAcquire(String category) {
+		Bucket bucket = buckets.get(category);
+		if (bucket == null) {
+			return 0;
+		}
+		
+		synchronized(bucket) {
+			long now = System.currentTimeMillis();
+			if (bucket.known && now >= bucket.resetTimeMs) {
+				// Window has rolled over, the next response will tell us about the new one.
+				bucket.known = false;
+				bucket.tokens = burst;
+			}
+			
+			if (!bucket.known) {
+				// Nothing to go by until a response comes in.
+				return 0;
+			}
+			
+			// Refill at the rate that spends the remaining requests evenly until the reset.
+			double ratePerMs = bucket.remaining / (double) Math.max(bucket.resetTimeMs - now, 1);
+			bucket.tokens = Math.min(bucket.tokens + (now - bucket.lastRefillMs) * ratePerMs, Math.min(burst, bucket.remaining));
+			bucket.lastRefillMs = now;
+			
+			if (bucket.remaining > 0 && bucket.tokens >= 1) {
+				bucket.tokens--;
+				bucket.remaining--;
+				return 0;
+			}
+			
+			long toWaitMs = bucket.remaining <= 0 ? bucket.resetTimeMs - now : (long) Math.ceil((1 - bucket.tokens) / ratePerMs);
+			return Math.max(toWaitMs, 1);
+		}
+	}
+	
+	/**
+	 * Gives back a request acquired for a category, for requests that turned out not to count against the rate
+	 * limit(e.g., 304 Not Modified responses).
+	 */
+	public void refund(String category) {
+		Bucket bucket = buckets.get(category);
+		if (bucket == null) {
+			return;
+		}
+		
+		synchronized(bucket) {
+			if (bucket.known) {
+				bucket.remaining = Math.min(bucket.remaining + 1, bucket.limit);
+				bucket.tokens = Math.min(bucket.tokens + 1, burst);
+			}
+		}
+	}
+	
+	/** No. of requests left in the current window of a category, Integer.MAX_VALUE if that isn't known yet. */
+	public int getRemaining(String category) {
+		Bucket bucket = buckets.get(category);
+		if (bucket == null) {
+			return Integer.MAX_VALUE;
+		}
+		
+		synchronized(bucket) {
+			if (!bucket.known || System.currentTimeMillis() >= bucket.resetTimeMs) {
+				return Integer.MAX_VALUE;
+			}
+			return bucket.remaining;
+		}
+	}
+	
+	/**
+	 * Records the rate limit state reported by the server in a response.
+	 *
+	 * @param category Rate limit category of the request.
+	 * @param limit Value of X-RateLimit-Limit.
+	 * @param remaining Value of X-RateLimit-Remaining.
+	 * @param resetTime Value of X-RateLimit-Reset, in epoch seconds.
+	 */
+	public void update(String category, int limit, int remaining, long resetTime) {
+		Bucket bucket = buckets.get(category);
+		if (bucket == null) {
+			return;
+		}
+		
+		synchronized(bucket) {
+			long resetTimeMs = resetTime * 1000;
+			if (!bucket.known || resetTimeMs != bucket.resetTimeMs) {
+				// New window, take the server's word for it.
+				bucket.known = true;
+				bucket.remaining = remaining;
+				bucket.resetTimeMs = resetTimeMs;
+			} else {
+				// Requests we've let through may not have reached the server yet, so don't let our count go back up.
+				bucket.remaining = Math.min(bucket.remaining, remaining);
+			}
+			bucket.limit = limit;
+		}
+	}
+	
+	/** Current rate limit state of a category as last seen in response headers, null if it isn't known yet. */
+	public APIRateLimit getRateLimit(String category) {
+		Bucket bucket = buckets.get(category);
+		if (bucket == null) {
+			return null;
+		}
+		
+		synchronized(bucket) {
+			if (!bucket.known) {
+				return null;
+			}
+			return APIRateLimit.fromValues(bucket.resetTimeMs / 1000, bucket.resetPeriodSecs, bucket.remaining, bucket.limit);
+		}
+	}
+}
@@ -1,52 +1,133 @@
 package com.vinayemani.devsearch;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.vinayemani.devsearch.WorkQueue.Worker;
 import com.vinayemani.devsearch.WorkQueue.QueueFinisher;
 import com.vinayemani.devsearch.WorkQueue.RateLimitFetcher;
 import com.vinayemani.devsearch.data.APIRateLimit;
+import com.vinayemani.devsearch.data.OutcomeStatus;
+import com.vinayemani.devsearch.data.SearchOutcome;
+import com.vinayemani.devsearch.data.SearchReport;
 import com.vinayemani.devsearch.data.UserData;
 import com.vinayemani.devsearch.data.UserKey;
 
 /**
  * RateLimiter implements the rate limiting logic required to make efficient use of api calls while
  * honoring rate limits.
- * 
+ *
  * GitHub API has 2 separate rate limits for its search and core apis. The usual pattern is to search for a user
  * first using a search api call and then retrieve her profile data using core api calls. If there is a large number of
  * users to search for, we can run these 2 types of queries in parallel in 2 threads, so whenever a particular rate limit
- * is reached, only that thread is blocked, while the other thread can continue. 
- *  
- * It uses two WorkQueues(a thread and a queue) to run core and search queries. When a user search is finished, the best 
- * match is then pushed to the core queue to retrieve its data.
- * 
+ * is reached, only that thread is blocked, while the other thread can continue.
+ *
+ * Requests are paced by the connection's {@link RateLimitScheduler}, so the queues should rarely see a rate limit
+ * exceeded error. If they do(e.g., the same credentials are used elsewhere too), the reset time is taken from the
+ * last seen response headers, no extra rate limit api call is made.
+ *
+ * It uses two WorkQueues(worker threads and a queue) to run core and search queries. When a user search is finished, the best
+ * match is then pushed to the core queue to retrieve its data. No. of workers per queue is taken from {@link ClientSettings}.
+ * User data is fetched with the REST api or the GraphQL api, depending on the configured {@link FetchEngine}.
+ *
+ * The queues are shared by all searches made through a RateLimiter, and live until it's closed. Each search is a
+ * batch of users, whose results are handed to the batch's own handler. Users of a batch wait in the batch's own
+ * backlog, and a single dispatcher thread takes them from the backlogs of all batches in turn, one at a time, into
+ * the queues. The queues are kept short, so a small batch submitted while a large one is running gets its share of
+ * the workers right away, instead of waiting for the large one to finish.
+ *
+ * Turns are weighted by the batches' {@link Priority}, using start time fair queueing: each batch has a virtual time
+ * that advances by the inverse of its weight with each user dispatched, and the batch with the lowest virtual time
+ * goes next. The virtual time a user is dispatched at is also its rank in the queues, so users of higher priority
+ * batches get ahead there too, without starving the others. Users of a batch with a deadline are dropped with a
+ * DEADLINE_EXCEEDED result once it passes, whether they're still in the backlog or waiting in a queue, even while the
+ * queues are paused on a rate limit. Within a batch, duplicate user keys are
+ * searched for only once, and users that turn out to have the same login have their data fetched only once, see
+ * {@link Coalescer}. Every key still gets its own result.
+ *
+ * Every key also ends with a {@link SearchOutcome}, whether it was found or not, so that a caller can tell which keys
+ * failed and submit only those again. The outcome counts the api calls tried for the key and has the http status
+ * code of the last one.
+ *
  * @author Vinay E.
  *
  */
-class RateLimiter {
-	public RateLimiter(Connection conn) {
-		this.conn = conn;
+class RateLimiter implements Closeable {
+	public RateLimiter(Connection conn, ClientSettings settings) {
+		this(conn, settings, null, null);
 	}
 	
-	public Map<Long, UserData> getSearchResults(List<UserKey> users) {
-		// Maintain a map of collected results.
-		Map<Long, UserData> results = new HashMap<>();
-				
-		// Initialize the work queues.
-		WorkQueue<String, UserData> coreQ = new WorkQueue<>("core", new Worker<String, UserData>() {
+	/**
+	 * @param searchCache Logins found for user keys in earlier searches, consulted before searching. May be null.
+	 * @param userCache Data fetched for(lower cased) logins earlier, consulted before fetching. May be null.
+	 */
+	public RateLimiter(Connection conn, ClientSettings settings, LookupCache<UserKey, String> searchCache,
+			LookupCache<String, UserData> userCache) {
+		this.conn = conn;
+		this.settings = settings;
+		this.graphQLFetcher = settings.getFetchEngine() == FetchEngine.GRAPHQL ? new GraphQLFetcher(conn, settings) : null;
+		this.searchCache = searchCache;
+		this.userCache = userCache;
+		
+		// The queues outlive any single search, so unless told otherwise their threads shouldn't keep the jvm alive.
+		threadFactory = settings.getWorkerThreadFactory() != null ? settings.getWorkerThreadFactory() : new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = Executors.defaultThreadFactory().newThread(r);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		
+		// Initialize the work queues. With the GraphQL engine, users are fetched in batches made up of the users that
+		// core workers are fetching at the same time, so there should be at least as many workers as a batch holds.
+		int coreWorkers = graphQLFetcher == null ? settings.getCoreWorkers()
+				: Math.max(settings.getCoreWorkers(), settings.getGraphqlBatchSize());
+		String coreCategory = graphQLFetcher == null ? GitHubAPIClient.RATE_LIMIT_CORE_KEY : GitHubAPIClient.RATE_LIMIT_GRAPHQL_KEY;
+		
+		coreQ = new WorkQueue<>("core", new Worker<String, UserData>() {
 			@Override
 			public APICallResult<UserData> produce(String userLogin) {
+				if (graphQLFetcher != null) {
+					return graphQLFetcher.fetch(userLogin);
+				}
 				return GitHubAPIClient.fetchSingleUserData(userLogin, conn);
 			}
 			
 			@Override
-			public void onSuccess(long keyId, UserData output) {
-				results.put(keyId, output);
+			public void onSuccess(long jobId, UserData output) {
+				jobs.get(jobId).batch.fetches.finish(jobId, output, APICallResultType.SUCCESS);
 			}
-		});
+			
+			@Override
+			public void onFailure(long jobId, APICallResultType resultType) {
+				jobs.get(jobId).batch.fetches.finish(jobId, null, resultType);
+			}
+			
+			@Override
+			public void onAttempt(long jobId, APICallResult<UserData> result) {
+				jobs.get(jobId).attempted(result.getHttpCode());
+			}
+		}, coreWorkers, threadFactory);
+		coreQ.setMaxPendingJobs(coreWorkers * QUEUED_JOBS_PER_WORKER);
+		coreQ.setMetrics(conn.getMetrics());
 		
 		coreQ.setFinisher(new QueueFinisher() {
 			@Override
@@ -56,24 +137,35 @@ class RateLimiter {
 		coreQ.setRateLimitFetcher(new RateLimitFetcher() {
 			@Override
 			public APIRateLimit fetchRateLimit() {
-				APIRateLimit[] limits = GitHubAPIClient.getRateLimits(conn);
-				return limits[0];
+				return conn.getRateLimit(coreCategory);
 			}
 		});
 		
-		WorkQueue<UserKey, String> searchQ = new WorkQueue<>("search", new Worker<UserKey, String>() {
+		searchQ = new WorkQueue<>("search", new Worker<UserKey, String>() {
 			@Override
 			public APICallResult<String> produce(UserKey input) {
 				return GitHubAPIClient.searchForSingleUser(input, conn);
 			}
 			
 			@Override
-			public void onSuccess(long keyId, String output) {
-				coreQ.pushNewJob(keyId, output);
+			public void onSuccess(long jobId, String output) {
+				jobs.get(jobId).batch.searches.finish(jobId, output, APICallResultType.SUCCESS);
 			}
-		});
+			
+			@Override
+			public void onFailure(long jobId, APICallResultType resultType) {
+				jobs.get(jobId).batch.searches.finish(jobId, null, resultType);
+			}
+			
+			@Override
+			public void onAttempt(long jobId, APICallResult<String> result) {
+				jobs.get(jobId).attempted(result.getHttpCode());
+			}
+		}, settings.getSearchWorkers(), threadFactory);
+		searchQ.setMaxPendingJobs(settings.getSearchWorkers() * QUEUED_JOBS_PER_WORKER);
+		searchQ.setMetrics(conn.getMetrics());
 		
-		searchQ.setFinisher(new QueueFinisher() {			
+		searchQ.setFinisher(new QueueFinisher() {
 			@Override
 			public void onQueueFinished() {
 				coreQ.signalEndOfJobs();
@@ -83,26 +175,578 @@ class RateLimiter {
 		searchQ.setRateLimitFetcher(new RateLimitFetcher() {
 			@Override
 			public APIRateLimit fetchRateLimit() {
-				APIRateLimit[] limits = GitHubAPIClient.getRateLimits(conn);
-				return limits[1];
+				return conn.getRateLimit(GitHubAPIClient.RATE_LIMIT_SEARCH_KEY);
 			}
 		});
+	}
+	
+	/**
+	 * ResultHandler receives user data as soon as it has been fetched. It's called concurrently by the core workers.
+	 *
+	 * @author Vinay E.
+	 */
+	interface ResultHandler {
+		void onResult(long keyId, UserData data);
 		
-		// Push user search keys onto search queue.
-		long keyId = 0;
-		for (UserKey user : users) {
-			searchQ.pushNewJob(keyId, user);
-			keyId++;
+		/** Called when a user wasn't found(NO_MATCH) or couldn't be fetched(ERROR). */
+		default void onFailure(long keyId, APICallResultType resultType) {}
+		
+		/** Called once for every user, after its result or failure, including users skipped or answered right away. */
+		default void onOutcome(SearchOutcome outcome) {}
+	}
+	
+	/**
+	 * Batch holds the state of one search, i.e., a set of users submitted together. Users are identified by their
+	 * key ids within the batch, and by job ids(unique across batches) in the queues.
+	 *
+	 * @author Vinay E.
+	 */
+	private class Batch {
+		private final ResultHandler handler;
+		private final Journal journal;
+		private final Priority priority;
+		private final long deadlineMs;
+		private final long seq = nextBatchSeq.getAndIncrement();
+		private final Coalescer<UserKey, String> searches;
+		private final Coalescer<String, UserData> fetches;
+		private final Coalescer.Delivery<UserData> dataDelivery;
+		
+		// Users waiting to be dispatched, guarded by dispatchLock.
+		private final ArrayDeque<Submission> backlog = new ArrayDeque<>();
+		
+		// Virtual time of the batch's next user, guarded by dispatchLock.
+		private long virtualTime = 0;
+		
+		// Users submitted but not yet done.
+		private int pending = 0;
+		
+		private Batch(ResultHandler handler, Journal journal, Priority priority, long deadlineMs) {
+			this.handler = handler;
+			this.journal = journal;
+			this.priority = priority;
+			this.deadlineMs = deadlineMs;
+			
+			// Users found under the same login share one fetch of the login's data. Logins are case insensitive.
+			dataDelivery = new Coalescer.Delivery<UserData>() {
+				@Override
+				public void deliver(long jobId, UserData data, APICallResultType resultType, long leaderJobId) {
+					shareAttempts(jobId, leaderJobId);
+					finishJob(jobId, data, resultType);
+				}
+			};
+			fetches = new Coalescer<>(dataDelivery, settings.getMaxCoalescedResults(), userCache);
+			
+			// Equal user keys share one search.
+			searches = new Coalescer<>(new Coalescer.Delivery<String>() {
+				@Override
+				public void deliver(long jobId, String login, APICallResultType resultType, long leaderJobId) {
+					shareAttempts(jobId, leaderJobId);
+					if (resultType == APICallResultType.SUCCESS) {
+						if (journal != null) {
+							journal.searched(jobs.get(jobId).keyId, login);
+						}
+						fetchUser(jobId, login);
+					} else {
+						finishJob(jobId, null, resultType);
+					}
+				}
+			}, settings.getMaxCoalescedResults(), searchCache);
 		}
-		// signal end of jobs to the search queue.
-		searchQ.signalEndOfJobs();
 		
-		// Wait until core queue finishes all its jobs.
-		coreQ.waitUntilFinish();
+		/**
+		 * Adds a user to the backlog, unless the journal has it as done or its data is cached. If maxBacklog users are
+		 * already waiting, this blocks until there's room.
+		 */
+		private void enqueue(long keyId, UserKey user, int maxBacklog) {
+			long submittedNanos = System.nanoTime();
+			if (journal != null && journal.isDone(keyId)) {
+				handler.onOutcome(new SearchOutcome(keyId, journal.isNoMatch(keyId) ? OutcomeStatus.NO_MATCH 
+						: OutcomeStatus.SUCCESS, 0, 0, 0));
+				return;
+			}
+			
+			// The login may be known from an earlier run or an earlier search.
+			String login = journal == null ? null : journal.getSearchedLogin(keyId);
+			if (login == null && searchCache != null) {
+				login = searchCache.get(user);
+			}
+			UserData cached = login == null || userCache == null ? null : userCache.get(login.toLowerCase(Locale.ROOT));
+			if (cached != null) {
+				// Answered right away, without taking a turn in the queues.
+				handler.onResult(keyId, cached);
+				if (journal != null) {
+					journal.fetched(keyId, cached);
+				}
+				handler.onOutcome(new SearchOutcome(keyId, OutcomeStatus.SUCCESS, 0, elapsedMs(submittedNanos), 0));
+				return;
+			}
+			
+			synchronized (dispatchLock) {
+				boolean interrupted = false;
+				while (backlog.size() >= maxBacklog && !closed) {
+					try {
+						dispatchLock.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				if (closed) {
+					throw new IllegalStateException("Closed");
+				}
+				
+				// Counted before the dispatcher can see it, so the count can't drop to 0 too early.
+				synchronized (this) {
+					pending++;
+				}
+				startDispatcher();
+				if (backlog.isEmpty()) {
+					// A batch that was idle doesn't get credit for the time it wasn't waiting.
+					virtualTime = Math.max(virtualTime, dispatchedVirtualTime);
+					activeBatches.add(this);
+				}
+				backlog.add(new Submission(this, keyId, user, login, submittedNanos));
+				dispatchLock.notifyAll();
+			}
+		}
+		
+		/**
+		 * Starts the search for a user, or the fetch of its data if its login is already known. Called by the
+		 * dispatcher.
+		 * 
+		 * @param rank Rank of the user's jobs in the queues.
+		 */
+		private void submit(Submission submission, long rank) {
+			long jobId = nextJobId.getAndIncrement();
+			jobs.put(jobId, new Job(this, submission.keyId, rank, submission.submittedNanos));
+			
+			if (deadlineMs != WorkQueue.NO_DEADLINE && System.currentTimeMillis() > deadlineMs) {
+				finishJob(jobId, null, APICallResultType.DEADLINE_EXCEEDED);
+			} else if (submission.login != null) {
+				// Its data isn't cached, enqueue() already checked.
+				if (fetches.join(submission.login.toLowerCase(Locale.ROOT), jobId)) {
+					coreQ.pushNewJob(jobId, submission.login, rank, deadlineMs);
+				}
+			} else if (searches.join(submission.user, jobId)) {
+				searchQ.pushNewJob(jobId, submission.user, rank, deadlineMs);
+			}
+		}
+		
+		/**
+		 * Drops the users still in the backlog once the batch's deadline passes. Users already dispatched are dropped
+		 * by the queues.
+		 */
+		private void expireAtDeadline() {
+			if (deadlineMs == WorkQueue.NO_DEADLINE) {
+				return;
+			}
+			getDeadlineTimer().schedule(new Runnable() {
+				@Override
+				public void run() {
+					List<Submission> expired;
+					synchronized (dispatchLock) {
+						expired = new ArrayList<>(backlog);
+						backlog.clear();
+						activeBatches.remove(Batch.this);
+						dispatchLock.notifyAll();
+					}
+					for (Submission submission : expired) {
+						long jobId = nextJobId.getAndIncrement();
+						jobs.put(jobId, new Job(Batch.this, submission.keyId, 0, submission.submittedNanos));
+						finishJob(jobId, null, APICallResultType.DEADLINE_EXCEEDED);
+					}
+				}
+			}, Math.max(deadlineMs + 1 - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+		}
+		
+		// Fetches a user's data unless it's cached, or already being fetched for another user with the same login.
+		private void fetchUser(long jobId, String login) {
+			String loginKey = login.toLowerCase(Locale.ROOT);
+			UserData cached = userCache == null ? null : userCache.get(loginKey);
+			if (cached != null) {
+				dataDelivery.deliver(jobId, cached, APICallResultType.SUCCESS, Coalescer.NO_LEADER);
+			} else if (fetches.join(loginKey, jobId)) {
+				Job job = jobs.get(jobId);
+				job.callAttempts = 0;
+				coreQ.pushNewJob(jobId, login, job.rank, deadlineMs);
+			}
+		}
+		
+		// A job that got the result of another job's api calls counts those calls as its own.
+		private void shareAttempts(long jobId, long leaderJobId) {
+			if (leaderJobId != jobId && leaderJobId != Coalescer.NO_LEADER) {
+				Job job = jobs.get(jobId), leader = jobs.get(leaderJobId);
+				job.attempts += leader.callAttempts;
+				job.lastHttpCode = leader.lastHttpCode;
+			}
+		}
+		
+		private void finishJob(long jobId, UserData data, APICallResultType resultType) {
+			Job job = jobs.remove(jobId);
+			long keyId = job.keyId;
+			if (resultType == APICallResultType.SUCCESS) {
+				handler.onResult(keyId, data);
+				if (journal != null) {
+					journal.fetched(keyId, data);
+				}
+			} else {
+				handler.onFailure(keyId, resultType);
+				if (journal != null && resultType == APICallResultType.NO_MATCH) {
+					journal.noMatch(keyId);
+				} else if (journal != null) {
+					journal.error(keyId);
+				}
+			}
+			handler.onOutcome(new SearchOutcome(keyId, toOutcomeStatus(resultType), job.attempts, 
+					elapsedMs(job.submittedNanos), job.lastHttpCode));
+			
+			synchronized (this) {
+				if (--pending == 0) {
+					notifyAll();
+				}
+			}
+		}
+		
+		/** Blocks until all users submitted so far are done. */
+		private synchronized void awaitPending() {
+			boolean interrupted = false;
+			while (pending > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	// A user of a batch, while it's being searched for or fetched.
+	private static class Job {
+		private final Batch batch;
+		private final long keyId;
+		private final long rank;
+		private final long submittedNanos;
+		
+		// Api calls tried for the user so far, and for its current search or fetch. Only one thread works on a job
+		// at a time, and the queues hand jobs between threads safely.
+		private int attempts = 0;
+		private int callAttempts = 0;
+		private int lastHttpCode = 0;
+		
+		private Job(Batch batch, long keyId, long rank, long submittedNanos) {
+			this.batch = batch;
+			this.keyId = keyId;
+			this.rank = rank;
+			this.submittedNanos = submittedNanos;
+		}
+		
+		private void attempted(int httpCode) {
+			attempts++;
+			callAttempts++;
+			lastHttpCode = httpCode;
+		}
+	}
+	
+	// A user waiting in a batch's backlog, with its login if that's already known.
+	private static class Submission {
+		private final Batch batch;
+		private final long keyId;
+		private final UserKey user;
+		private final String login;
+		private final long submittedNanos;
+		
+		private Submission(Batch batch, long keyId, UserKey user, String login, long submittedNanos) {
+			this.batch = batch;
+			this.keyId = keyId;
+			this.user = user;
+			this.login = login;
+			this.submittedNanos = submittedNanos;
+		}
+	}
+	
+	private static OutcomeStatus toOutcomeStatus(APICallResultType resultType) {
+		switch (resultType) {
+		case SUCCESS:
+			return OutcomeStatus.SUCCESS;
+		case NO_MATCH:
+			return OutcomeStatus.NO_MATCH;
+		case DEADLINE_EXCEEDED:
+			return OutcomeStatus.DEADLINE_EXCEEDED;
+		default:
+			return OutcomeStatus.ERROR;
+		}
+	}
+	
+	private static long elapsedMs(long sinceNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sinceNanos);
+	}
+	
+	public Map<Long, UserData> getSearchResults(List<UserKey> users) {
+		return getSearchReport(users).getResults();
+	}
+	
+	/**
+	 * Searches for the given users and returns their data along with the outcome of every user.
+	 */
+	public SearchReport getSearchReport(List<UserKey> users) {
+		// Maintain a map of collected results, core workers may add to it concurrently.
+		Map<Long, UserData> results = new ConcurrentHashMap<>();
+		AtomicReferenceArray<SearchOutcome> outcomes = new AtomicReferenceArray<>(users.size());
+		Iterator<UserKey> iter = users.iterator();
+		try {
+			streamSearchResults(new UserKeySource() {
+				@Override
+				public UserKey next() {
+					return iter.hasNext() ? iter.next() : null;
+				}
+				
+				@Override
+				public void close() {}
+			}, new ResultHandler() {
+				@Override
+				public void onResult(long keyId, UserData data) {
+					results.put(keyId, data);
+				}
+				
+				@Override
+				public void onOutcome(SearchOutcome outcome) {
+					outcomes.set((int) outcome.getKeyId(), outcome);
+				}
+			});
+		} catch (IOException | BadInputFileException e) {
+			// Can't happen, the keys are already in memory.
+			throw new IllegalStateException(e);
+		}
 		
 		// return the accumulated results.
-		return results;
+		List<SearchOutcome> outcomeList = new ArrayList<>(users.size());
+		for (int i = 0; i < users.size(); i++) {
+			outcomeList.add(outcomes.get(i));
+		}
+		return new SearchReport(results, outcomeList);
+	}
+	
+	/**
+	 * Starts searching for the given users without waiting for the results. Each user's future is completed as soon
+	 * as its data has been fetched, on a worker thread. Users that aren't found complete with null, users whose
+	 * search or fetch fails complete exceptionally with an IOException, and users not done by the deadline complete
+	 * exceptionally with a TimeoutException.
+	 *
+	 * The users are only added to a backlog, so this doesn't block.
+	 *
+	 * @param deadlineMs Time(epoch ms) by which the users should be done, or {@link WorkQueue#NO_DEADLINE}.
+	 * @return Futures of the users' data, in the same order as the users.
+	 */
+	public List<CompletableFuture<UserData>> lookupAll(List<UserKey> users, Priority priority, long deadlineMs) {
+		List<CompletableFuture<UserData>> futures = new ArrayList<>(users.size());
+		for (int i = 0; i < users.size(); i++) {
+			futures.add(new CompletableFuture<>());
+		}
+		
+		Batch batch = new Batch(new ResultHandler() {
+			@Override
+			public void onResult(long keyId, UserData data) {
+				futures.get((int) keyId).complete(data);
+			}
+			
+			@Override
+			public void onFailure(long keyId, APICallResultType resultType) {
+				if (resultType == APICallResultType.NO_MATCH) {
+					futures.get((int) keyId).complete(null);
+				} else if (resultType == APICallResultType.DEADLINE_EXCEEDED) {
+					futures.get((int) keyId).completeExceptionally(
+							new TimeoutException("Lookup of " + users.get((int) keyId) + " missed its deadline"));
+				} else {
+					futures.get((int) keyId).completeExceptionally(
+							new IOException("Lookup of " + users.get((int) keyId) + " failed"));
+				}
+			}
+		}, null, priority, deadlineMs);
+		
+		for (int i = 0; i < users.size(); i++) {
+			batch.enqueue(i, users.get(i), Integer.MAX_VALUE);
+		}
+		batch.expireAtDeadline();
+		return futures;
+	}
+	
+	/**
+	 * Searches for users as they are read from the given source and hands each user's data to the handler as soon as
+	 * it's fetched. Reading from the source is paused while maxPendingUsers users of this search are waiting to be
+	 * dispatched, so neither the users nor their data pile up in memory. Returns once all users read from the source have been processed.
+	 *
+	 * @throws BadInputFileException If the source has badly formed keys. Users read before it are still processed.
+	 */
+	public void streamSearchResults(UserKeySource users, ResultHandler handler) throws IOException, BadInputFileException {
+		streamSearchResults(users, handler, null);
+	}
+	
+	/**
+	 * Same as {@link #streamSearchResults(UserKeySource, ResultHandler)}, but records progress in the given journal.
+	 * Users the journal has as done are skipped, and users it has a login for go straight to the core queue.
+	 *
+	 * @param journal Journal of the run, already replayed. May be null.
+	 */
+	public void streamSearchResults(UserKeySource users, ResultHandler handler, Journal journal)
+			throws IOException, BadInputFileException {
+		if (closed) {
+			throw new IllegalStateException("Closed");
+		}
+		
+		// Add user search keys to the batch's backlog, this blocks while the backlog is full.
+		Batch batch = new Batch(handler, journal, Priority.NORMAL, WorkQueue.NO_DEADLINE);
+		long keyId = 0;
+		try {
+			UserKey user;
+			while ((user = users.next()) != null) {
+				batch.enqueue(keyId, user, settings.getMaxPendingUsers());
+				keyId++;
+			}
+		} finally {
+			// Wait until all the users read so far are done.
+			batch.awaitPending();
+		}
+	}
+	
+	/**
+	 * Stops taking new users, finishes the users already submitted(including those still in backlogs) and stops the
+	 * threads. Searches still reading their input fail with an IllegalStateException once their next user is read.
+	 */
+	@Override
+	public void close() {
+		Thread dispatcherToJoin;
+		synchronized (dispatchLock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			dispatcherToJoin = dispatcher;
+			dispatchLock.notifyAll();
+		}
+		
+		// The dispatcher quits once the backlogs are drained.
+		if (dispatcherToJoin != null) {
+			try {
+				dispatcherToJoin.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		searchQ.signalEndOfJobs();
+		coreQ.waitUntilFinish();
+		synchronized (this) {
+			if (deadlineTimer != null) {
+				deadlineTimer.shutdownNow();
+			}
+		}
+	}
+	
+	// Started with the first batch that has a deadline.
+	private synchronized ScheduledExecutorService getDeadlineTimer() {
+		if (deadlineTimer == null) {
+			deadlineTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = threadFactory.newThread(r);
+					thread.setName("devsearch-deadlines");
+					return thread;
+				}
+			});
+		}
+		return deadlineTimer;
+	}
+	
+	// Called with dispatchLock held.
+	private void startDispatcher() {
+		if (dispatcher != null) {
+			return;
+		}
+		dispatcher = threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					Submission next;
+					long rank;
+					synchronized (dispatchLock) {
+						while (activeBatches.isEmpty() && !closed) {
+							try {
+								dispatchLock.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+						if (activeBatches.isEmpty()) {
+							// Closed and drained.
+							return;
+						}
+						
+						// The batch with the lowest virtual time goes next.
+						Batch batch = activeBatches.poll();
+						next = batch.backlog.poll();
+						rank = batch.virtualTime;
+						dispatchedVirtualTime = rank;
+						batch.virtualTime += Priority.HIGH.getWeight() / batch.priority.getWeight();
+						if (!batch.backlog.isEmpty()) {
+							activeBatches.add(batch);
+						}
+						dispatchLock.notifyAll();
+					}
+					
+					// Blocks while the queues are full.
+					next.batch.submit(next, rank);
+				}
+			}
+		});
+		dispatcher.setName("devsearch-dispatcher");
+		dispatcher.start();
 	}
 	
 	private Connection conn;
+	private ClientSettings settings;
+	
+	// Fetches user data when the GraphQL engine is selected, null otherwise.
+	private GraphQLFetcher graphQLFetcher;
+	
+	// Results of earlier searches and fetches, may be null.
+	private LookupCache<UserKey, String> searchCache;
+	private LookupCache<String, UserData> userCache;
+	
+	private final ThreadFactory threadFactory;
+	private final WorkQueue<UserKey, String> searchQ;
+	private final WorkQueue<String, UserData> coreQ;
+	
+	// Users in the queues, by job id.
+	private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+	private final AtomicLong nextJobId = new AtomicLong();
+	
+	// Batches with users waiting to be dispatched, by their virtual times. Guarded by dispatchLock, as are the
+	// batches' backlogs and virtual times.
+	private final Object dispatchLock = new Object();
+	private final PriorityQueue<Batch> activeBatches = new PriorityQueue<>(new Comparator<Batch>() {
+		@Override
+		public int compare(Batch a, Batch b) {
+			if (a.virtualTime != b.virtualTime) {
+				return Long.compare(a.virtualTime, b.virtualTime);
+			}
+			return Long.compare(a.seq, b.seq);
+		}
+	});
+	private final AtomicLong nextBatchSeq = new AtomicLong();
+	
+	// Virtual time of the last user dispatched.
+	private long dispatchedVirtualTime = 0;
+	private Thread dispatcher = null;
+	private volatile boolean closed = false;
+	
+	// Drops the backlogs of batches whose deadlines pass, null until a batch has a deadline. Guarded by the
+	// RateLimiter's monitor.
+	private ScheduledExecutorService deadlineTimer = null;
+	
+	// Jobs each worker may have queued up. Few enough that a new batch's users don't wait behind many others.
+	private static final int QUEUED_JOBS_PER_WORKER = 2;
 }
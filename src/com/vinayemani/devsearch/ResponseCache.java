@@ -0,0 +1,277 @@
+package com.vinayemani.devsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ResponseCache is a persistent on-disk store of api response bodies along with their ETag/Last-Modified validators.
+ * Cached responses are revalidated with conditional requests(If-None-Match/If-Modified-Since), and when the server
+ * answers with 304 Not Modified, the body is served from disk. GitHub doesn't count 304 responses against the rate
+ * limit, so re-running the same searches costs very little quota.
+ *
+ * Entries are keyed by the request uri and a credential scope, since the same uri can return different data for
+ * different credentials. Each entry is a pair of files named after the hash of its key, a '.body' file holding the
+ * raw response body and a '.meta' file holding the validators. Total size of the bodies is capped, least recently
+ * used entries are evicted once the cap is crossed.
+ *
+ * @author Vinay E.
+ *
+ */
+class ResponseCache {
+	
+	/**
+	 * A cached response as found by {@link ResponseCache#lookup(String, URI)}.
+	 *
+	 * @author Vinay E.
+	 */
+	@lombok.Getter
+	static class Entry {
+		private final String key;
+		private final String etag;
+		private final String lastModified;
+		
+		// Link header of the cached response, needed to paginate from a cached page.
+		private final String link;
+		
+		Entry(String key, String etag, String lastModified, String link) {
+			this.key = key;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.link = link;
+		}
+	}
+	
+	private static final String BODY_EXT = ".body";
+	private static final String META_EXT = ".meta";
+	private static final String TMP_EXT = ".tmp";
+	
+	private static final String ETAG_KEY = "etag";
+	private static final String LAST_MODIFIED_KEY = "lastModified";
+	private static final String LINK_KEY = "link";
+	private static final String URI_KEY = "uri";
+	
+	private final File dir;
+	private final long maxBytes;
+	
+	// Key -> body size, in least to most recently used order.
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes = 0;
+	
+	// Used to give temporary files unique names.
+	private final AtomicLong tmpCounter = new AtomicLong();
+	
+	public ResponseCache(String dirPath, long maxBytes) throws IOException {
+		this.dir = new File(dirPath);
+		this.maxBytes = maxBytes;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create cache directory " + dirPath);
+		}
+		loadIndex();
+	}
+	
+	// Rebuilds the index from the files on disk, using file modification times as the last used times.
+	private void loadIndex() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(TMP_EXT)) {
+				// Left behind by an interrupted write.
+				file.delete();
+			} else if (name.endsWith(BODY_EXT)) {
+				String key = name.substring(0, name.length() - BODY_EXT.length());
+				if (new File(dir, key + META_EXT).isFile()) {
+					index.put(key, file.length());
+					totalBytes += file.length();
+				}
+			}
+		}
+		evict();
+	}
+	
+	/** Returns the cached response for a uri in the given credential scope, null if there is none. */
+	public Entry lookup(String scope, URI uri) {
+		String key = keyFor(scope, uri);
+		synchronized(this) {
+			if (!index.containsKey(key)) {
+				return null;
+			}
+		}
+		
+		Properties meta = new Properties();
+		try (InputStream in = new FileInputStream(new File(dir, key + META_EXT))) {
+			meta.load(in);
+		} catch (IOException e) {
+			remove(key);
+			return null;
+		}
+		return new Entry(key, meta.getProperty(ETAG_KEY), meta.getProperty(LAST_MODIFIED_KEY), meta.getProperty(LINK_KEY));
+	}
+	
+	/** Opens the cached body of an entry and marks it as recently used. */
+	public InputStream openBody(Entry entry) throws IOException {
+		File body = new File(dir, entry.key + BODY_EXT);
+		synchronized(this) {
+			index.get(entry.key);
+		}
+		body.setLastModified(System.currentTimeMillis());
+		return new BufferedInputStream(new FileInputStream(body));
+	}
+	
+	/**
+	 * Wraps a response body stream so that everything read from it is also written to a temporary file. Once the
+	 * whole body has been read, {@link StoringInputStream#commit()} makes it the cached body for the uri.
+	 */
+	public StoringInputStream store(String scope, URI uri, String etag, String lastModified, String link, 
+			InputStream body) throws IOException {
+		String key = keyFor(scope, uri);
+		Properties meta = new Properties();
+		if (etag != null) {
+			meta.setProperty(ETAG_KEY, etag);
+		}
+		if (lastModified != null) {
+			meta.setProperty(LAST_MODIFIED_KEY, lastModified);
+		}
+		if (link != null) {
+			meta.setProperty(LINK_KEY, link);
+		}
+		meta.setProperty(URI_KEY, uri.toString());
+		return new StoringInputStream(key, meta, body);
+	}
+	
+	/**
+	 * An input stream that copies whatever is read through it into the cache.
+	 *
+	 * @author Vinay E.
+	 */
+	class StoringInputStream extends FilterInputStream {
+		private final String key;
+		private final Properties meta;
+		private final File tmpBody;
+		private final OutputStream copy;
+		
+		private StoringInputStream(String key, Properties meta, InputStream in) throws IOException {
+			super(in);
+			this.key = key;
+			this.meta = meta;
+			this.tmpBody = new File(dir, key + "." + tmpCounter.incrementAndGet() + TMP_EXT);
+			this.copy = new BufferedOutputStream(new FileOutputStream(tmpBody));
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				copy.write(b);
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] buf, int off, int len) throws IOException {
+			int read = super.read(buf, off, len);
+			if (read > 0) {
+				copy.write(buf, off, read);
+			}
+			return read;
+		}
+		
+		/** Reads the rest of the body and stores it in the cache. */
+		public void commit() throws IOException {
+			byte[] buf = new byte[4096];
+			while (read(buf, 0, buf.length) >= 0) {
+				// Drain.
+			}
+			copy.close();
+			
+			File tmpMeta = new File(dir, key + "." + tmpCounter.incrementAndGet() + TMP_EXT);
+			try (OutputStream out = new FileOutputStream(tmpMeta)) {
+				meta.store(out, null);
+			}
+			
+			File body = new File(dir, key + BODY_EXT);
+			synchronized(ResponseCache.this) {
+				Files.move(tmpBody.toPath(), body.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tmpMeta.toPath(), new File(dir, key + META_EXT).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Long oldSize = index.put(key, body.length());
+				totalBytes += body.length() - (oldSize == null ? 0 : oldSize);
+				evict();
+			}
+		}
+		
+		/** Drops the partially written body, e.g., when the response couldn't be read fully. */
+		public void discard() {
+			try {
+				copy.close();
+			} catch (IOException e) {}
+			tmpBody.delete();
+		}
+	}
+	
+	// Removes least recently used entries until the cache is within its size limit.
+	private synchronized void evict() {
+		Iterator<Map.Entry<String, Long>> iter = index.entrySet().iterator();
+		while (totalBytes > maxBytes && iter.hasNext()) {
+			Map.Entry<String, Long> eldest = iter.next();
+			iter.remove();
+			totalBytes -= eldest.getValue();
+			deleteFiles(eldest.getKey());
+		}
+	}
+	
+	private synchronized void remove(String key) {
+		Long size = index.remove(key);
+		if (size != null) {
+			totalBytes -= size;
+		}
+		deleteFiles(key);
+	}
+	
+	private void deleteFiles(String key) {
+		new File(dir, key + BODY_EXT).delete();
+		new File(dir, key + META_EXT).delete();
+	}
+	
+	// Cache keys are hex encoded SHA-256 hashes of the scope and the uri.
+	private static String keyFor(String scope, URI uri) {
+		return sha256Hex(scope + " " + uri.toString());
+	}
+	
+	static String sha256Hex(String s) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder();
+			for (byte b : hash) {
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every java platform is required to support SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * RetryPolicy decides whether a failed request is worth making again, and how long to wait before doing so.
+ * 
+ * Transient failures are retried, i.e., broken or timed out connections, 5xx responses other than 501, and rate
+ * limit responses(403/429) that say when to retry with a Retry-After header, as GitHub's secondary rate limits do.
+ * Everything else is handed back to the caller right away, including 403s of the primary rate limit, which are
+ * handled by pausing the queues until the limit resets, and failures that would fail again, like unknown hosts, bad
+ * certificates or malformed json bodies. Requests stopped by an open {@link CircuitBreaker} aren't retried either.
+ * 
+ * A request gets at most maxAttempts tries. Waits between tries grow exponentially from baseDelayMs up to maxDelayMs,
+ * and are picked at random from 0 up to that bound(full jitter), so that requests that failed together don't all
+ * come back at the same time. A Retry-After is always waited out, unless it's longer than maxDelayMs, in which case
+ * the response is handed back instead.
+ * 
+ * @author Vinay E.
+ *
+ */
+class RetryPolicy {
+	/** Retry-After of responses that don't have one. */
+	public static final long NO_RETRY_AFTER = -1;
+	
+	private static final int RESP_CODE_TOO_MANY_REQUESTS = 429;
+	private static final int RESP_CODE_NOT_IMPLEMENTED = 501;
+	
+	/**
+	 * Attempt makes a single try at a request.
+	 * 
+	 * @author Vinay E.
+	 */
+	interface Attempt<Data> {
+		APIResponse<Data> run() throws IOException;
+	}
+	
+	private final int maxAttempts;
+	private final long baseDelayMs;
+	private final long maxDelayMs;
+	
+	RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+		this.maxAttempts = Math.max(maxAttempts, 1);
+		this.baseDelayMs = Math.max(baseDelayMs, 0);
+		this.maxDelayMs = Math.max(maxDelayMs, this.baseDelayMs);
+	}
+	
+	/**
+	 * Runs the attempt until it succeeds, fails in a way that isn't worth retrying, or runs out of tries.
+	 * 
+	 * @return Response of the last try.
+	 * @throws IOException Exception of the last try, if it failed with one.
+	 */
+	public <Data> APIResponse<Data> execute(Attempt<Data> attempt) throws IOException {
+		for (int tries = 1; ; tries++) {
+			APIResponse<Data> resp;
+			try {
+				resp = attempt.run();
+			} catch (IOException e) {
+				if (tries >= maxAttempts || !isRetriable(e)) {
+					throw e;
+				}
+				sleep(backoffMs(tries, NO_RETRY_AFTER));
+				continue;
+			}
+			
+			if (tries >= maxAttempts || !isRetriable(resp.getStatusCode(), resp.getRetryAfterMs())) {
+				return resp;
+			}
+			sleep(backoffMs(tries, resp.getRetryAfterMs()));
+		}
+	}
+	
+	/** Whether a response with the given status code and Retry-After is worth retrying. */
+	boolean isRetriable(int statusCode, long retryAfterMs) {
+		if (statusCode >= 500 && statusCode != RESP_CODE_NOT_IMPLEMENTED) {
+			return retryAfterMs <= maxDelayMs;
+		}
+		if (statusCode == Connection.RESP_CODE_FORBIDDEN || statusCode == RESP_CODE_TOO_MANY_REQUESTS) {
+			return retryAfterMs != NO_RETRY_AFTER && retryAfterMs <= maxDelayMs;
+		}
+		return false;
+	}
+	
+	/** Whether a request that failed with the given exception could succeed if it's made again. */
+	static boolean isRetriable(IOException e) {
+		if (e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException) {
+			return true;
+		}
+		// Interrupted threads should stop, unknown hosts, certificate problems and bodies that aren't valid json won't
+		// go away. Requests stopped by an open circuit breaker are meant to fail fast.
+		return !(e instanceof InterruptedIOException || e instanceof UnknownHostException || e instanceof SSLException
+				|| e instanceof JsonReader.MalformedJsonException || e instanceof CircuitOpenException);
+	}
+	
+	/**
+	 * How long to wait before the next try, after the given no. of failed tries.
+	 * 
+	 * @param retryAfterMs Retry-After of the last response, or NO_RETRY_AFTER.
+	 */
+	long backoffMs(int failedTries, long retryAfterMs) {
+		long bound = baseDelayMs << Math.min(failedTries - 1, 30);
+		bound = bound < 0 ? maxDelayMs : Math.min(bound, maxDelayMs);
+		long delay = bound == 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+		return Math.max(delay, retryAfterMs);
+	}
+	
+	/**
+	 * Parses a Retry-After header value, which is either a no. of seconds or an http date.
+	 * 
+	 * @return The wait in ms, NO_RETRY_AFTER if the value is null or malformed.
+	 */
+	static long parseRetryAfter(String value, long nowMs) {
+		if (value == null) {
+			return NO_RETRY_AFTER;
+		}
+		try {
+			return Math.max(Long.parseLong(value.trim()), 0) * 1000;
+		} catch (NumberFormatException e) {
+			Date date = DateUtils.parseDate(value.trim());
+			return date == null ? NO_RETRY_AFTER : Math.max(date.getTime() - nowMs, 0);
+		}
+	}
+	
+	private static void sleep(long ms) throws InterruptedIOException {
+		if (ms <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.vinayemani.devsearch;
+
+/**
+ * SequenceFetchException is thrown while iterating over a paginated sequence(see {@link PagedSequence}) when one of
+ * its pages couldn't be fetched. It's unchecked, since {@link java.util.Iterator} methods can't throw checked
+ * exceptions.
+ *
+ * @author Vinay E.
+ *
+ */
+class SequenceFetchException extends RuntimeException {
+	private static final long serialVersionUID = 3803127551981306523L;
+	
+	// Status code of the failed page request, 0 if the request didn't get a response at all.
+	private final int statusCode;
+	
+	// Whether the page request was refused for the rate limit, see APIResponse.
+	private final boolean rateLimited;
+	
+	SequenceFetchException(int statusCode, boolean rateLimited) {
+		super("Page request failed with status " + statusCode);
+		this.statusCode = statusCode;
+		this.rateLimited = rateLimited;
+	}
+	
+	SequenceFetchException(Throwable cause) {
+		super("Page request failed", cause);
+		this.statusCode = 0;
+		this.rateLimited = false;
+	}
+	
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
+	public boolean isRateLimited() {
+		return rateLimited;
+	}
+}
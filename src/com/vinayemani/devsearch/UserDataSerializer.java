@@ -0,0 +1,337 @@
+package com.vinayemani.devsearch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+/**
+ * UserDataSerializer writes user data as json, character for character the same as {@code new JSONObject(data)}
+ * would write it, without going through reflection or building a JSONObject first. Fields are written straight off
+ * the getters, with their names encoded once up front, into a buffer that's reused from one user to the next.
+ *
+ * That means it follows JSONObject's quirks too. Null fields are left out, objects and arrays of a single member
+ * are laid out on one line, and fields come in the order of JSONObject's hash map. Names that share a bucket of
+ * that map(e.g., profile and repos) come in the order reflection lists their getters, which can change from one
+ * jvm run to the next, so the order is taken from JSONObject itself, once per run, by laying out a sample user
+ * with every field set.
+ *
+ * A serializer isn't thread safe, each writer of user data keeps its own.
+ *
+ * @author Vinay E.
+ *
+ */
+public class UserDataSerializer {
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+	
+	// Field names, in the order of the getters' values in writeUser, writeProfile and writeRepo.
+	private static final String[] USER_FIELDS = {"profile", "repos"};
+	private static final String[] PROFILE_FIELDS = {"companyName", "blogUrl", "name", "location", "login", "email"};
+	private static final String[] REPO_FIELDS = {"numCommits", "name"};
+	
+	// Positions of the fields in the arrays above, in the order JSONObject writes them in this jvm run.
+	private static final int[] USER_ORDER = order(USER_FIELDS, new JSONObject(new UserData(new UserProfile("n", "l", 
+			"c", "b", "l", "e"), Collections.<RepoData>emptyList())));
+	private static final int[] PROFILE_ORDER = order(PROFILE_FIELDS, new JSONObject(new UserProfile("n", "l", "c", "b", 
+			"l", "e")));
+	private static final int[] REPO_ORDER = order(REPO_FIELDS, new JSONObject(new RepoData(1, "n")));
+	
+	private static int[] order(String[] fields, JSONObject sample) {
+		List<String> names = Arrays.asList(fields);
+		if (sample.length() != fields.length || !sample.keySet().containsAll(names)) {
+			throw new IllegalStateException("Unexpected fields " + sample.keySet() + ", expected " + names);
+		}
+		
+		int[] order = new int[fields.length];
+		int i = 0;
+		for (String key : sample.keySet()) {
+			order[i++] = names.indexOf(key);
+		}
+		return order;
+	}
+	
+	private final int indentFactor;
+	
+	// Field names quoted and followed by the separator, e.g., "name":, in the same order as the *_FIELDS constants.
+	private final char[][] userFields;
+	private final char[][] profileFields;
+	private final char[][] repoFields;
+	
+	private char[] buf = new char[INITIAL_BUFFER_SIZE];
+	private int pos;
+	
+	// Reused to hold the fields of the profile being written.
+	private final String[] profileValues = new String[PROFILE_FIELDS.length];
+	
+	/**
+	 * @param indentFactor No. of spaces each level of nesting is indented by, as in JSONObject.toString(int). With
+	 * 0, everything goes on a single line, as in JSONObject.toString().
+	 */
+	public UserDataSerializer(int indentFactor) {
+		this.indentFactor = indentFactor;
+		this.userFields = encodeFields(USER_FIELDS);
+		this.profileFields = encodeFields(PROFILE_FIELDS);
+		this.repoFields = encodeFields(REPO_FIELDS);
+	}
+	
+	private char[][] encodeFields(String[] names) {
+		char[][] encoded = new char[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			encoded[i] = ("\"" + names[i] + "\":" + (indentFactor > 0 ? " " : "")).toCharArray();
+		}
+		return encoded;
+	}
+	
+	/**
+	 * Writes a user's data, as {@code new JSONObject(data).write(out, indentFactor, indent)} would.
+	 *
+	 * @param indent No. of spaces the lines after the first one are indented by, as the data is nested that deep.
+	 */
+	public void write(UserData data, Writer out, int indent) throws IOException {
+		pos = 0;
+		writeUser(data, indent);
+		out.write(buf, 0, pos);
+	}
+	
+	/** Same as {@code new JSONObject(data).toString(indentFactor)}, or toString() with an indent factor of 0. */
+	public String toString(UserData data) {
+		pos = 0;
+		writeUser(data, 0);
+		return new String(buf, 0, pos);
+	}
+	
+	private void writeUser(UserData data, int indent) {
+		UserProfile profile = data.getProfile();
+		List<RepoData> repos = data.getRepos();
+		int members = (profile != null ? 1 : 0) + (repos != null ? 1 : 0);
+		int memberIndent = beginObject(members, indent);
+		
+		boolean first = true;
+		for (int field : USER_ORDER) {
+			if (field == 0 && profile != null) {
+				member(userFields[0], first, members, memberIndent);
+				writeProfile(profile, memberIndent);
+				first = false;
+			} else if (field == 1 && repos != null) {
+				member(userFields[1], first, members, memberIndent);
+				writeRepos(repos, memberIndent);
+				first = false;
+			}
+		}
+		endObject(members, indent);
+	}
+	
+	private void writeProfile(UserProfile profile, int indent) {
+		profileValues[0] = profile.getCompanyName();
+		profileValues[1] = profile.getBlogUrl();
+		profileValues[2] = profile.getName();
+		profileValues[3] = profile.getLocation();
+		profileValues[4] = profile.getLogin();
+		profileValues[5] = profile.getEmail();
+		
+		int members = 0;
+		for (String value : profileValues) {
+			if (value != null) {
+				members++;
+			}
+		}
+		
+		int memberIndent = beginObject(members, indent);
+		boolean first = true;
+		for (int field : PROFILE_ORDER) {
+			if (profileValues[field] != null) {
+				member(profileFields[field], first, members, memberIndent);
+				quote(profileValues[field]);
+				first = false;
+			}
+		}
+		endObject(members, indent);
+	}
+	
+	private void writeRepos(List<RepoData> repos, int indent) {
+		int size = repos.size();
+		int elementIndent = size == 1 ? indent : indent + indentFactor;
+		append('[');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				append(',');
+			}
+			if (size > 1) {
+				newLine(elementIndent);
+			}
+			writeRepo(repos.get(i), elementIndent);
+		}
+		if (size > 1) {
+			newLine(indent);
+		}
+		append(']');
+	}
+	
+	private void writeRepo(RepoData repo, int indent) {
+		String name = repo.getName();
+		int members = name != null ? 2 : 1;
+		int memberIndent = beginObject(members, indent);
+		boolean first = true;
+		for (int field : REPO_ORDER) {
+			if (field == 0) {
+				member(repoFields[0], first, members, memberIndent);
+				appendInt(repo.getNumCommits());
+				first = false;
+			} else if (name != null) {
+				member(repoFields[1], first, members, memberIndent);
+				quote(name);
+				first = false;
+			}
+		}
+		endObject(members, indent);
+	}
+	
+	/**
+	 * Opens an object of the given no. of members.
+	 *
+	 * @return Indent of the object's members. Like JSONObject, an object with a single member keeps it on the same
+	 * line, at the object's own indent.
+	 */
+	private int beginObject(int members, int indent) {
+		append('{');
+		return members == 1 ? indent : indent + indentFactor;
+	}
+	
+	private void member(char[] field, boolean first, int members, int indent) {
+		if (!first) {
+			append(',');
+		}
+		if (members > 1) {
+			newLine(indent);
+		}
+		ensureCapacity(field.length);
+		System.arraycopy(field, 0, buf, pos, field.length);
+		pos += field.length;
+	}
+	
+	private void endObject(int members, int indent) {
+		if (members > 1) {
+			newLine(indent);
+		}
+		append('}');
+	}
+	
+	private void newLine(int indent) {
+		if (indentFactor <= 0) {
+			return;
+		}
+		ensureCapacity(indent + 1);
+		buf[pos++] = '\n';
+		for (int i = 0; i < indent; i++) {
+			buf[pos++] = ' ';
+		}
+	}
+	
+	private void appendInt(int value) {
+		if (value == Integer.MIN_VALUE) {
+			String digits = Integer.toString(value);
+			ensureCapacity(digits.length());
+			digits.getChars(0, digits.length(), buf, pos);
+			pos += digits.length();
+			return;
+		}
+		
+		ensureCapacity(11);
+		if (value < 0) {
+			buf[pos++] = '-';
+			value = -value;
+		}
+		int end = pos + digitCount(value);
+		for (int i = end - 1; i >= pos; i--) {
+			buf[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		pos = end;
+	}
+	
+	private static int digitCount(int value) {
+		int count = 1;
+		while (value >= 10) {
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+	
+	/** Writes a string quoted and escaped the way JSONObject.quote does. */
+	private void quote(String value) {
+		int length = value.length();
+		// At most 6 chars per char, for unicode escapes.
+		ensureCapacity(length * 6 + 2);
+		buf[pos++] = '"';
+		char prev = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				buf[pos++] = '\\';
+				buf[pos++] = c;
+				break;
+			case '/':
+				if (prev == '<') {
+					buf[pos++] = '\\';
+				}
+				buf[pos++] = c;
+				break;
+			case '\b':
+				buf[pos++] = '\\';
+				buf[pos++] = 'b';
+				break;
+			case '\t':
+				buf[pos++] = '\\';
+				buf[pos++] = 't';
+				break;
+			case '\n':
+				buf[pos++] = '\\';
+				buf[pos++] = 'n';
+				break;
+			case '\f':
+				buf[pos++] = '\\';
+				buf[pos++] = 'f';
+				break;
+			case '\r':
+				buf[pos++] = '\\';
+				buf[pos++] = 'r';
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					buf[pos++] = '\\';
+					buf[pos++] = 'u';
+					for (int shift = 12; shift >= 0; shift -= 4) {
+						buf[pos++] = Character.forDigit((c >> shift) & 0xf, 16);
+					}
+				} else {
+					buf[pos++] = c;
+				}
+			}
+			prev = c;
+		}
+		buf[pos++] = '"';
+	}
+	
+	private void append(char c) {
+		ensureCapacity(1);
+		buf[pos++] = c;
+	}
+	
+	private void ensureCapacity(int more) {
+		if (pos + more > buf.length) {
+			char[] bigger = new char[Math.max(buf.length * 2, pos + more)];
+			System.arraycopy(buf, 0, bigger, 0, pos);
+			buf = bigger;
+		}
+	}
+}
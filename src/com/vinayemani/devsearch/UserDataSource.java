@@ -0,0 +1,20 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.vinayemani.devsearch.data.UserData;
+
+/**
+ * UserDataSource hands out user search results one at a time as they are read back from an output file. See
+ * {@link FileUtils#openUserData(String)}.
+ *
+ * @author Vinay E.
+ *
+ */
+public interface UserDataSource extends Closeable {
+	/**
+	 * Returns the next user's data, null once there are no more users.
+	 */
+	UserData next() throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.vinayemani.devsearch.data.UserData;
+
+/**
+ * UserDataWriter writes user search results out one at a time as they come in, so that results don't pile up in
+ * memory. Writes are buffered, not flushed per user, and the output is complete once the writer is closed. A run that
+ * must survive a crash keeps a journal. See {@link FileUtils#openUserDataWriter(String)}.
+ * 
+ * @author Vinay E.
+ *
+ */
+public interface UserDataWriter extends Closeable {
+	void write(UserData data) throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.vinayemani.devsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.vinayemani.devsearch.data.UserKey;
+
+/**
+ * UserKeySource hands out user keys one at a time, e.g., as they are read from an input file, so that large inputs
+ * never have to be held in memory as a whole. See {@link FileUtils#openUserKeys(String)}.
+ * 
+ * @author Vinay E.
+ *
+ */
+public interface UserKeySource extends Closeable {
+	/**
+	 * Returns the next user key, null once there are no more keys.
+	 * 
+	 * @throws BadInputFileException If the next key is badly formed.
+	 */
+	UserKey next() throws IOException, BadInputFileException;
+}
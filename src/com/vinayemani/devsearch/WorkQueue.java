@@ -1,16 +1,50 @@
 package com.vinayemani.devsearch;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.vinayemani.devsearch.data.APIRateLimit;
+import com.vinayemani.devsearch.metrics.MetricsRegistry;
 
 /**
  * WorkQueue processes incoming tasks on a separate thread. It needs to be to told how to process
  * inputs to generate outputs, what to do once an output is successfully generated, how to check
  * for current rate limits for this category etc...
  * 
+ * A queue can run several worker threads that take jobs off the same input queue, so that more than one
+ * api call of a category can be in flight at a time. Rate limits are shared by all workers of a category,
+ * so when any worker runs into the rate limit, all of them pause until the limit is reset.
+ * 
+ * Worker threads are started when the first job is pushed. The no. of pending jobs can be capped with
+ * {@link #setMaxPendingJobs(int)}, in which case pushing a job blocks until there is room for it. This keeps a fast
+ * producer from piling up jobs in memory.
+ * 
+ * Jobs are taken in the order of their ranks, lowest first, and in the order they were pushed among equal ranks. A
+ * job that runs into the rate limit keeps its place. Jobs can also have a deadline, a job that's still waiting past
+ * its deadline is dropped with a DEADLINE_EXCEEDED result. Waiting jobs are swept for missed deadlines on a timer set
+ * for the earliest one, so they fail on time even while the workers are paused or busy with jobs of lower ranks.
+ * 
+ * Jobs that find the api down(an UNAVAILABLE result) also keep their place, and all workers pause until the time the
+ * result says the api may be back, instead of failing the remaining jobs one after the other.
+ * 
+ * The queue keeps count of the jobs in flight, i.e., pushed and not yet done. Once the end of jobs has been signalled
+ * and that count drops to 0, whichever happens last, the queue puts a poison pill per worker in the input queue. Each
+ * worker quits on taking one, and the last one out finishes the queue. So idle workers simply block on the input
+ * queue, and the queue finishes as soon as its last job is done, without waiting for anything else to come in. The
+ * count and the end signal are guarded by the queue's monitor, so the two can't miss each other. A job whose worker
+ * throws is still counted as done(as an ERROR if it threw while producing), so it can't keep the queue from finishing.
+ * 
  * @author Vinay E.
  *
  */
@@ -18,15 +52,24 @@ class WorkQueue<Input, Output> {
 	
 	/**
 	 * Worker interface tells the queue how to produce outputs from inputs and what to do when output is
-	 * successfully produced.
+	 * successfully produced, or when it can't be produced.
 	 * 
 	 * @author Vinay E.
 	 */
 	interface Worker<Input, Output> {
 		APICallResult<Output> produce(Input input);
 		void onSuccess(long keyId, Output output);
+		
+		/** Called when a job ends without an output, i.e., with a NO_MATCH, ERROR or DEADLINE_EXCEEDED result. */
+		default void onFailure(long keyId, APICallResultType resultType) {}
+		
+		/**
+		 * Called with the result of every try at a job, before the job is finished or put back in the queue. A job is
+		 * tried again each time it runs into the rate limit.
+		 */
+		default void onAttempt(long keyId, APICallResult<Output> result) {}
 	}
-
+	
 	/**
 	 * QueueFinisher interface tells us what to do when all items have been processed and no new items will be added
 	 * by its client. This enables the queue to clean up its resources and quit. 
@@ -39,7 +82,8 @@ class WorkQueue<Input, Output> {
 	}
 	
 	/**
-	 * RateLimitFetcher interfaces tells the queue how to fetch the current rate limits for its category.
+	 * RateLimitFetcher interfaces tells the queue how to fetch the current rate limits for its category. Null can be
+	 * returned if the limits aren't known, in which case the queue pauses for a fixed period.
 	 * 
 	 * @author Vinay E.
 	 *
@@ -54,66 +98,316 @@ class WorkQueue<Input, Output> {
 	 * 
 	 * @author Vinay E.
 	 */
-	class KeyedItem<Item> {
+	static class KeyedItem<Item> implements Comparable<KeyedItem<Item>> {
 		private long keyId;
 		private Item item;
+		private final long rank;
+		private final long deadlineMs;
 		
-		public KeyedItem(long keyId, Item item) {
+		// When the item was last put in the queue.
+		private long queuedNanos = System.nanoTime();
+		
+		// No. of times the item was put back in the queue after a failed try.
+		private int requeues = 0;
+		
+		// Order in which the item was pushed, breaks ties between equal ranks.
+		private final long seq;
+		
+		// Tells a worker to quit.
+		private boolean poison = false;
+		
+		public KeyedItem(long keyId, Item item, long rank, long deadlineMs, long seq) {
 			this.keyId = keyId;
 			this.item = item;
+			this.rank = rank;
+			this.deadlineMs = deadlineMs;
+			this.seq = seq;
+		}
+		
+		@Override
+		public int compareTo(KeyedItem<Item> other) {
+			if (rank != other.rank) {
+				return Long.compare(rank, other.rank);
+			}
+			return Long.compare(seq, other.seq);
 		}
 	}
 	
+	/** Deadline of jobs that don't have one. */
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+	
 	public WorkQueue(String category, Worker<Input, Output> worker) {
+		this(category, worker, 1, null);
+	}
+	
+	/**
+	 * Creates a queue running numWorkers worker threads.
+	 * 
+	 * @param category Rate limit category of this queue, e.g., core or search.
+	 * @param worker Processes the jobs.
+	 * @param numWorkers No. of worker threads sharing the queue.
+	 * @param threadFactory Creates the worker threads, platform threads are used if this is null.
+	 */
+	public WorkQueue(String category, Worker<Input, Output> worker, int numWorkers, ThreadFactory threadFactory) {
 		this.category = category;
+		this.worker = worker;
 		this.endSignalled = false;
-		inputQueue = new LinkedBlockingQueue<>();
+		inputQueue = new PriorityBlockingQueue<>();
 		allWorkDone = new Semaphore(0);
 		
-		// define the work thread and start it.
-		workHorse = new Thread(new Runnable() {
+		this.numWorkers = Math.max(numWorkers, 1);
+		this.threadFactory = threadFactory == null ? Executors.defaultThreadFactory() : threadFactory;
+		liveWorkers.set(this.numWorkers);
+		
+		// define the work loop, the threads running it are started with the first job.
+		workLoop = new Runnable() {
 			@Override
 			public void run() {
-				while (true) {
-					if (inputQueue.isEmpty()) {
-						synchronized(this) {
-							if (endSignalled) {
-								finisher.onQueueFinished();
-								allWorkDone.release();
-								break;
+				try {
+					while (true) {
+						waitWhilePaused();
+						
+						KeyedItem<Input> item = inputQueue.take();
+						if (item.poison) {
+							break;
+						}
+						if (waitTimer != null) {
+							waitTimer.record(System.nanoTime() - item.queuedNanos);
+						}
+						
+						boolean done = true;
+						try {
+							done = process(item);
+						} catch (RuntimeException e) {
+							// A failing callback shouldn't take the worker down, or keep the queue from finishing.
+							Thread current = Thread.currentThread();
+							current.getUncaughtExceptionHandler().uncaughtException(current, e);
+						} finally {
+							if (done) {
+								jobDone();
 							}
 						}
 					}
-					
-					try {
-						KeyedItem<Input> item = inputQueue.take();
-						long key = item.keyId;
-						APICallResult<Output> output = worker.produce(item.item);
-						if (output.getResultType() == APICallResultType.ERROR) {
-							// ignore this case.
-						} else if (output.getResultType() == APICallResultType.NO_MATCH) {
-							// no matching results found for the query. ignore this case.
-						} else if (output.getResultType() == APICallResultType.RATE_LIMIT_EXCEEDED) {
-							// Rate limit reached, put this item back in the queue and block until next reset.
-							inputQueue.put(item);
-							APIRateLimit limit = rateLimitFetcher.fetchRateLimit();
-							long toWaitMs = limit.getResetTime() * 1000 - System.currentTimeMillis();
-							toWaitMs = Math.max(toWaitMs, ONE_SEC_MS);
-							Thread.sleep(toWaitMs);
-						} else {
-							// successful case, process it further.
-							Output out = output.getResult();
-							worker.onSuccess(key, out);
-						}
-					} catch (InterruptedException e) {
-						// Some error, exit.
-						break;
+				} catch (InterruptedException e) {
+					// Some error, exit.
+				} finally {
+					// Last worker out finishes the queue.
+					if (liveWorkers.decrementAndGet() == 0) {
+						stopSweeper();
+						finisher.onQueueFinished();
+						allWorkDone.release();
+					}
+				}
+			}
+			
+			// Runs a job, returns false if it was put back in the queue.
+			private boolean process(KeyedItem<Input> item) throws InterruptedException {
+				long key = item.keyId;
+				if (isExpired(item, System.currentTimeMillis())) {
+					countResult(APICallResultType.DEADLINE_EXCEEDED);
+					worker.onFailure(key, APICallResultType.DEADLINE_EXCEEDED);
+					return true;
+				}
+				
+				APICallResult<Output> output;
+				try {
+					output = worker.produce(item.item);
+				} catch (RuntimeException e) {
+					output = APICallResult.errorResult();
+				}
+				countResult(output.getResultType());
+				worker.onAttempt(key, output);
+				if (output.getResultType() == APICallResultType.ERROR) {
+					worker.onFailure(key, output.getResultType());
+				} else if (output.getResultType() == APICallResultType.NO_MATCH) {
+					// no matching results found for the query.
+					worker.onFailure(key, output.getResultType());
+				} else if (output.getResultType() == APICallResultType.RATE_LIMIT_EXCEEDED) {
+					// Rate limit reached, put this item back in the queue(in its old place) and block until next reset.
+					boolean requeued = requeue(item);
+					if (!requeued) {
+						worker.onFailure(key, output.getResultType());
+					}
+					pauseUntilReset();
+					return !requeued;
+				} else if (output.getResultType() == APICallResultType.UNAVAILABLE) {
+					// Api is down, put this item back in the queue and wait until it may be back.
+					boolean requeued = requeue(item);
+					if (!requeued) {
+						worker.onFailure(key, output.getResultType());
 					}
+					pauseUntil(Math.max(output.getRetryAtMs(), System.currentTimeMillis() + MIN_UNAVAILABLE_PAUSE_MS));
+					return !requeued;
+				} else {
+					// successful case, process it further.
+					Output out = output.getResult();
+					worker.onSuccess(key, out);
 				}
+				return true;
 			}
-		});
+		};
 		
-		workHorse.start();
+	}
+	
+	private static boolean isExpired(KeyedItem<?> item, long nowMs) {
+		return item.deadlineMs != NO_DEADLINE && nowMs > item.deadlineMs;
+	}
+	
+	/**
+	 * Makes sure the queue is swept for missed deadlines just after the given one. The sweeper thread is started with
+	 * the first job that has a deadline.
+	 */
+	private synchronized void scheduleSweep(long deadlineMs) {
+		if (deadlineMs == NO_DEADLINE || deadlineMs >= nextSweepMs || sweeperStopped) {
+			return;
+		}
+		if (sweeper == null) {
+			sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = threadFactory.newThread(r);
+					thread.setName("devsearch-" + category + "-sweeper");
+					return thread;
+				}
+			});
+		}
+		nextSweepMs = deadlineMs;
+		sweeper.schedule(new Runnable() {
+			@Override
+			public void run() {
+				sweepExpired();
+			}
+		}, Math.max(deadlineMs + 1 - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+	}
+	
+	// Fails the waiting jobs whose deadlines have passed, and sets the timer for the earliest deadline left.
+	private void sweepExpired() {
+		synchronized(this) {
+			nextSweepMs = NO_DEADLINE;
+		}
+		
+		long nowMs = System.currentTimeMillis();
+		long earliestMs = NO_DEADLINE;
+		for (KeyedItem<Input> item : inputQueue) {
+			if (!isExpired(item, nowMs)) {
+				earliestMs = Math.min(earliestMs, item.deadlineMs);
+			} else if (inputQueue.remove(item)) {
+				// Not taken by a worker in the meantime, so it's ours to fail.
+				try {
+					countResult(APICallResultType.DEADLINE_EXCEEDED);
+					worker.onFailure(item.keyId, APICallResultType.DEADLINE_EXCEEDED);
+				} catch (RuntimeException e) {
+					Thread current = Thread.currentThread();
+					current.getUncaughtExceptionHandler().uncaughtException(current, e);
+				} finally {
+					jobDone();
+				}
+			}
+		}
+		// Jobs held by workers right now are covered too, they schedule a sweep when they're put back.
+		scheduleSweep(earliestMs);
+	}
+	
+	private synchronized void stopSweeper() {
+		sweeperStopped = true;
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
+	
+	private void jobDone() {
+		boolean last;
+		synchronized(this) {
+			last = --pendingJobs == 0 && endSignalled;
+		}
+		if (admission != null) {
+			admission.release();
+		}
+		if (last) {
+			stopWorkers();
+		}
+	}
+	
+	// Called once all jobs are done and no more will come in.
+	private void stopWorkers() {
+		for (int i = 0; i < numWorkers; i++) {
+			KeyedItem<Input> pill = new KeyedItem<>(-1, null, Long.MAX_VALUE, NO_DEADLINE, Long.MAX_VALUE);
+			pill.poison = true;
+			inputQueue.add(pill);
+		}
+	}
+	
+	// Workers are started with the first job, so a queue that never gets one costs no threads.
+	private synchronized void startWorkers() {
+		if (!started) {
+			started = true;
+			for (int i = 0; i < numWorkers; i++) {
+				Thread workHorse = threadFactory.newThread(workLoop);
+				workHorse.setName("devsearch-" + category + "-" + i);
+				workHorses.add(workHorse);
+				workHorse.start();
+			}
+		}
+	}
+	
+	/**
+	 * Called by a worker that ran into the rate limit. The first worker to get here fetches the current limits
+	 * and sets the time until which all workers pause, others simply join the pause. If the limits show that
+	 * requests can still be made(e.g., with other credentials), there is no pause.
+	 */
+	private void pauseUntilReset() throws InterruptedException {
+		synchronized(pauseLock) {
+			if (pausedUntilMs <= System.currentTimeMillis()) {
+				APIRateLimit limit = rateLimitFetcher.fetchRateLimit();
+				if (limit != null && limit.getRequestsLeft() > 0) {
+					return;
+				}
+				long toWaitMs = limit == null ? ONE_SEC_MS : limit.getResetTime() * 1000 - System.currentTimeMillis();
+				pausedUntilMs = System.currentTimeMillis() + Math.max(toWaitMs, ONE_SEC_MS);
+			}
+		}
+		waitWhilePaused();
+	}
+	
+	private void pauseUntil(long untilMs) throws InterruptedException {
+		synchronized(pauseLock) {
+			pausedUntilMs = Math.max(pausedUntilMs, untilMs);
+		}
+		waitWhilePaused();
+	}
+	
+	private void waitWhilePaused() throws InterruptedException {
+		long toWaitMs = pausedUntilMs - System.currentTimeMillis();
+		if (toWaitMs > 0) {
+			long startNanos = System.nanoTime();
+			Thread.sleep(toWaitMs);
+			if (pauseTimer != null) {
+				pauseTimer.record(System.nanoTime() - startNanos);
+			}
+		}
+	}
+	
+	/**
+	 * Puts a job back in the queue, in its old place. A job is only put back {@link #MAX_REQUEUES} times, so one that
+	 * keeps failing the same way can't go around forever.
+	 * 
+	 * @return false if the job has been put back too many times already, and wasn't put back.
+	 */
+	private boolean requeue(KeyedItem<Input> item) {
+		if (item.requeues >= MAX_REQUEUES) {
+			return false;
+		}
+		item.requeues++;
+		item.queuedNanos = System.nanoTime();
+		inputQueue.add(item);
+		scheduleSweep(item.deadlineMs);
+		return true;
+	}
+	
+	private void countResult(APICallResultType resultType) {
+		if (resultCounters != null) {
+			resultCounters.get(resultType).increment(1);
+		}
 	}
 	
 	public void setFinisher(QueueFinisher finisher) {
@@ -125,13 +419,71 @@ class WorkQueue<Input, Output> {
 	}
 	
 	/**
-	 * Pushes a new job to be processed onto the queue.
+	 * Records the queue's metrics, tagged with its category, in the given registry: the no. of jobs waiting and
+	 * pending, how long jobs wait to be taken, how long workers pause on rate limits and outages, and the no. of
+	 * results of each type. Must be called before any jobs are pushed.
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		metrics.gauge("devsearch.queue.depth", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return inputQueue.size();
+			}
+		}, "category", category);
+		metrics.gauge("devsearch.queue.pending", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return getPendingJobs();
+			}
+		}, "category", category);
+		waitTimer = metrics.timer("devsearch.queue.wait", "category", category);
+		pauseTimer = metrics.timer("devsearch.queue.paused", "category", category);
+		
+		Map<APICallResultType, MetricsRegistry.Counter> counters = new EnumMap<>(APICallResultType.class);
+		for (APICallResultType resultType : APICallResultType.values()) {
+			counters.put(resultType, metrics.counter("devsearch.queue.results", "category", category, 
+					"result", resultType.name()));
+		}
+		resultCounters = counters;
+	}
+	
+	/**
+	 * Caps the no. of jobs that can be pending at a time. Must be called before any jobs are pushed.
+	 */
+	public void setMaxPendingJobs(int maxPendingJobs) {
+		this.admission = new Semaphore(Math.max(maxPendingJobs, 1));
+	}
+	
+	/**
+	 * Pushes a new job to be processed onto the queue. If the no. of pending jobs is capped, this blocks until
+	 * there is room for the job.
 	 * 
 	 * @param keyId Id of the item/job being pushed.
 	 * @param item Item/job being pushed
 	 */
 	public void pushNewJob(long keyId, Input item) {
-		inputQueue.add(new KeyedItem<Input>(keyId, item));
+		pushNewJob(keyId, item, 0, NO_DEADLINE);
+	}
+	
+	/**
+	 * Same as {@link #pushNewJob(long, Object)}, for a job with the given rank and deadline.
+	 * 
+	 * @param rank Jobs with lower ranks are taken first.
+	 * @param deadlineMs Time(epoch ms) after which the job is dropped if it's still waiting, or NO_DEADLINE.
+	 */
+	public void pushNewJob(long keyId, Input item, long rank, long deadlineMs) {
+		synchronized(this) {
+			if (endSignalled) {
+				throw new IllegalStateException("Job pushed after the end of jobs");
+			}
+			pendingJobs++;
+		}
+		if (admission != null) {
+			admission.acquireUninterruptibly();
+		}
+		inputQueue.add(new KeyedItem<Input>(keyId, item, rank, deadlineMs, nextSeq.getAndIncrement()));
+		scheduleSweep(deadlineMs);
+		startWorkers();
 	}
 	
 	/**
@@ -139,31 +491,105 @@ class WorkQueue<Input, Output> {
 	 * existing jobs have been processed, the queue can close itself.
 	 */
 	public void signalEndOfJobs() {
+		boolean noJobs, allDone;
 		synchronized(this) {
+			if (endSignalled) {
+				return;
+			}
 			endSignalled = true;
+			// A job pushed just before this is counted, even if its pusher is yet to start the workers.
+			allDone = pendingJobs == 0;
+			noJobs = allDone && !started;
+			if (noJobs) {
+				started = true;
+			}
+		}
+		
+		// Without any jobs, the queue is finished right away.
+		if (noJobs) {
+			finisher.onQueueFinished();
+			allWorkDone.release();
+		} else if (allDone) {
+			stopWorkers();
 		}
 	}
 	
+	/** No. of jobs pushed and not yet done, including the ones being worked on. */
+	public synchronized int getPendingJobs() {
+		return pendingJobs;
+	}
+	
 	/**
 	 * Blocks the calling thread until this queue finishes all its jobs.
 	 */
 	public void waitUntilFinish() {
 		try {
 			allWorkDone.acquire();
-		} catch (InterruptedException e) {}
+			allWorkDone.release();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Same as {@link #waitUntilFinish()}, but gives up after the given time.
+	 * 
+	 * @return Whether the queue finished.
+	 */
+	public boolean waitUntilFinish(long timeoutMs) throws InterruptedException {
+		if (!allWorkDone.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		allWorkDone.release();
+		return true;
 	}
 	
 	// This queue blocks for at least one second when it encounters a rate limit exceeded error.
 	private static final long ONE_SEC_MS = 60 * 1000;
 	
+	// Workers pause for at least this long when the api is down.
+	private static final long MIN_UNAVAILABLE_PAUSE_MS = 10;
+	
+	// A job that ran into the rate limit or an unavailable api this many times is failed.
+	static final int MAX_REQUEUES = 10;
+	
 	// These define the behavior of the queue.
 	private String category;
+	private final Worker<Input, Output> worker;
 	private QueueFinisher finisher;
 	private RateLimitFetcher rateLimitFetcher;
 	
 	// Internal implementation details.
 	private boolean endSignalled;
+	private boolean started = false;
 	private BlockingQueue<KeyedItem<Input>> inputQueue;
 	private Semaphore allWorkDone;
-	private Thread workHorse;
+	private final int numWorkers;
+	private final ThreadFactory threadFactory;
+	private final Runnable workLoop;
+	private final List<Thread> workHorses = new ArrayList<>();
+	
+	// Fails jobs that miss their deadlines while waiting, null until a job with a deadline is pushed. The time of the
+	// next sweep is NO_DEADLINE if none is due. Guarded by the queue's monitor.
+	private ScheduledExecutorService sweeper = null;
+	private long nextSweepMs = NO_DEADLINE;
+	private boolean sweeperStopped = false;
+	
+	// Jobs pushed but not yet processed, including the ones currently being worked on. Guarded by the queue's monitor,
+	// as are endSignalled and started.
+	private int pendingJobs = 0;
+	private final AtomicLong nextSeq = new AtomicLong();
+	private final AtomicInteger liveWorkers = new AtomicInteger();
+	
+	// Meters of the queue, null if metrics aren't recorded.
+	private MetricsRegistry.Timer waitTimer = null;
+	private MetricsRegistry.Timer pauseTimer = null;
+	private Map<APICallResultType, MetricsRegistry.Counter> resultCounters = null;
+	
+	// Limits the no. of pending jobs, null if there is no limit.
+	private Semaphore admission = null;
+	
+	// All workers pause until this time once the rate limit is hit.
+	private final Object pauseLock = new Object();
+	private volatile long pausedUntilMs = 0;
 }
@@ -6,8 +6,6 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.json.JSONObject;
-
 import com.vinayemani.devsearch.*;
 import com.vinayemani.devsearch.data.UserData;
 import com.vinayemani.devsearch.data.UserKey;
@@ -79,38 +77,42 @@ public class CLIWrapper {
 			return;
 		}
 		
-		while (true) {
-			print("Choose one of the following options for input/output file locations");
-			print("\t 1. stdin , stdout");
-			print("\t 2. inputFilePath, outputFilePath");
-			print("\t 3. Quit");
-			
-			int choice = Integer.parseInt(reader.readLine().trim());
-			if (choice < 0 || choice > 3) {
-				print("Invalid choice. Try again");
-				continue;
-			} else if (choice == 3) {
-				print("Quitting");
-				reader.close();
-				return;
-			} else if (choice == 1) {
-				print("Enter each user details one per line, separated by commas, e.g.");
-				print("firstname,lastname,location");
-				print("Currently spaces/commas in names/locations are not supported.");
-				runInteractiveMode(client, reader);
-				reader.close();
-				return;
-			} else {
-				print("Enter input file and output file locations separated by space");
-				String[] paths = reader.readLine().split("[ ]+");
-				try {
-					client.searchForUsers(paths[0], paths[1]);
-				} catch (BadInputFileException e) {
-					print("Bad input detected in " + paths[0]);
+		try {
+			while (true) {
+				print("Choose one of the following options for input/output file locations");
+				print("\t 1. stdin , stdout");
+				print("\t 2. inputFilePath, outputFilePath");
+				print("\t 3. Quit");
+				
+				int choice = Integer.parseInt(reader.readLine().trim());
+				if (choice < 0 || choice > 3) {
+					print("Invalid choice. Try again");
+					continue;
+				} else if (choice == 3) {
+					print("Quitting");
+					reader.close();
+					return;
+				} else if (choice == 1) {
+					print("Enter each user details one per line, separated by commas, e.g.");
+					print("firstname,lastname,location");
+					print("Currently spaces/commas in names/locations are not supported.");
+					runInteractiveMode(client, reader);
+					reader.close();
+					return;
+				} else {
+					print("Enter input file and output file locations separated by space");
+					String[] paths = reader.readLine().split("[ ]+");
+					try {
+						client.searchForUsers(paths[0], paths[1]);
+					} catch (BadInputFileException e) {
+						print("Bad input detected in " + paths[0]);
+					}
+					reader.close();
+					return;
 				}
-				reader.close();
-				return;
 			}
+		} finally {
+			client.close();
 		}
 	}
 	
@@ -127,8 +129,9 @@ public class CLIWrapper {
 		}
 		reader.close();
 		
+		UserDataSerializer serializer = new UserDataSerializer(2);
 		for (UserData data : client.searchForUsers(userKeys).values()) {
-			print(new JSONObject(data).toString(2));
+			print(serializer.toString(data));
 		}
 	}
 	
@@ -34,6 +34,11 @@ public class APIRateLimit {
 		return new APIRateLimit(resetTime, resetPeriod, requestsLeft, requestsMax);
 	}
 	
+	/** Creates an APIRateLimit object from already known values, e.g., ones read from response headers. */
+	public static APIRateLimit fromValues(long resetTime, int resetPeriod, int requestsLeft, int requestsMax) {
+		return new APIRateLimit(resetTime, resetPeriod, requestsLeft, requestsMax);
+	}
+	
 	public String toString() {
 		return String.format("nextResetTime=%d, requestsLeft=%d, requestsMax=%d, resetPeriod=%d", 
 				resetTime, requestsLeft, requestsMax, resetPeriodSecs);
@@ -0,0 +1,22 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * CacheStats is a snapshot of how an in-memory lookup cache of an api client has been used so far. Entries dropped
+ * to make room for new ones and entries dropped on expiry are both counted as evictions.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class CacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final int size;
+	
+	@Override
+	public String toString() {
+		return String.format("CacheStats(hits=%d, misses=%d, evictions=%d, size=%d)", hits, misses, evictions, size);
+	}
+}
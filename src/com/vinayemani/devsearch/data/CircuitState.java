@@ -0,0 +1,17 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * State of the circuit breaker of an api client.
+ * 
+ * CLOSED, requests go out as usual.
+ * OPEN, too many requests failed lately, so requests fail right away without going out.
+ * HALF_OPEN, the breaker has been open for a while, the next request goes out to see if the api is back.
+ * 
+ * @author Vinay E.
+ *
+ */
+public enum CircuitState {
+	CLOSED,
+	OPEN,
+	HALF_OPEN
+}
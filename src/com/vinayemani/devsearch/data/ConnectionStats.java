@@ -0,0 +1,20 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * ConnectionStats is a snapshot of how the pooled http connections of an api client have been used so far, i.e, how
+ * many requests were sent over a freshly opened connection and how many reused a kept alive one.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class ConnectionStats {
+	private final long newConnections;
+	private final long reusedConnections;
+	
+	@Override
+	public String toString() {
+		return String.format("ConnectionStats(new=%d, reused=%d)", newConnections, reusedConnections);
+	}
+}
@@ -0,0 +1,27 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * FlowControlStats is a snapshot of how an api client is adapting to the health of the api, i.e., the state of its
+ * circuit breaker, how often it opened and how many requests it failed right away, along with the current limit on
+ * requests in flight, how often that limit was cut and the p99 latency it was last judged by.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class FlowControlStats {
+	private final CircuitState circuitState;
+	private final long circuitOpens;
+	private final long rejectedRequests;
+	private final int concurrencyLimit;
+	private final int inFlightRequests;
+	private final long limitDecreases;
+	private final long p99LatencyMs;
+	
+	@Override
+	public String toString() {
+		return String.format("FlowControlStats(circuit=%s, opens=%d, rejected=%d, limit=%d, inFlight=%d, decreases=%d, p99Ms=%d)",
+				circuitState, circuitOpens, rejectedRequests, concurrencyLimit, inFlightRequests, limitDecreases, p99LatencyMs);
+	}
+}
@@ -0,0 +1,26 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * How the search for a single user key ended.
+ * 
+ * SUCCESS, the user was found and its data fetched.
+ * NO_MATCH, no user matched the key.
+ * ERROR, the search or the fetch failed, e.g., the server returned an error or the connection broke.
+ * DEADLINE_EXCEEDED, the user wasn't done by the deadline of its lookup.
+ * 
+ * Only ERROR and DEADLINE_EXCEEDED keys are worth submitting again.
+ * 
+ * @author Vinay E.
+ *
+ */
+public enum OutcomeStatus {
+	SUCCESS,
+	NO_MATCH,
+	ERROR,
+	DEADLINE_EXCEEDED;
+	
+	/** Whether a key that ended this way could do better if it's submitted again. */
+	public boolean isRetriable() {
+		return this == ERROR || this == DEADLINE_EXCEEDED;
+	}
+}
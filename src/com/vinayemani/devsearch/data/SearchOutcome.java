@@ -0,0 +1,28 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * SearchOutcome is the final record of a single user key of a search, i.e., how it ended, how many api calls were
+ * tried for it(including the ones tried again after running into the rate limit, but not the retries of single
+ * requests after transient errors), how long it took from submission to the end and the http status code of the last
+ * response it got. Keys answered without any api call(e.g., from a
+ * cache or a journal) have 0 attempts and a 0 status code. Keys with equal inputs share api calls, and so their
+ * attempts and status codes.
+ * 
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class SearchOutcome {
+	private final long keyId;
+	private final OutcomeStatus status;
+	private final int attempts;
+	private final long latencyMs;
+	private final int lastHttpCode;
+	
+	@Override
+	public String toString() {
+		return String.format("SearchOutcome(keyId=%d, status=%s, attempts=%d, latencyMs=%d, lastHttpCode=%d)",
+				keyId, status, attempts, latencyMs, lastHttpCode);
+	}
+}
@@ -0,0 +1,30 @@
+package com.vinayemani.devsearch.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SearchReport holds the results of a search along with the outcome of every user key searched for. Results are
+ * keyed by the keys' positions in the input, outcomes are in the order of the keys.
+ * 
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class SearchReport {
+	private final Map<Long, UserData> results;
+	private final List<SearchOutcome> outcomes;
+	
+	/** Positions of the keys that failed in a way worth submitting them again, see {@link OutcomeStatus#isRetriable()}. */
+	public List<Long> getRetriableKeyIds() {
+		List<Long> keyIds = new ArrayList<>();
+		for (SearchOutcome outcome : outcomes) {
+			if (outcome.getStatus().isRetriable()) {
+				keyIds.add(outcome.getKeyId());
+			}
+		}
+		return keyIds;
+	}
+}
@@ -0,0 +1,23 @@
+package com.vinayemani.devsearch.data;
+
+/**
+ * TokenUsage reports how much a single credential of an api client has been used, i.e, the no. of requests made
+ * with it and its latest known core and search rate limits(null if not known yet). Credentials are identified by a
+ * label that doesn't reveal the secret, e.g., the last few characters of a token.
+ * 
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class TokenUsage {
+	private final String label;
+	private final long requests;
+	private final APIRateLimit coreRateLimit;
+	private final APIRateLimit searchRateLimit;
+	
+	@Override
+	public String toString() {
+		return String.format("TokenUsage(label=%s, requests=%d, core=[%s], search=[%s])", label, requests, coreRateLimit, searchRateLimit);
+	}
+}
@@ -2,11 +2,16 @@ package com.vinayemani.devsearch.data;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Locale;
 
 /**
  * UserKey represents a single user search key. We support searching for users based on their
  * first name, last name and location attributes.  
  * 
+ * Keys are equal if they have the same attributes, ignoring case, surrounding whitespace and runs of whitespace
+ * within them, since GitHub's search ignores those too. A missing attribute is the same as an empty one. Keys are
+ * looked up in hash maps once or more per user, so the normalised attributes and the hash are worked out up front.
+ * 
  * @author Vinay E.
  * 
  */
@@ -15,10 +20,54 @@ public class UserKey {
 	private final String lastName;
 	private final String location;
 	
+	// Normalised attributes, used for equality.
+	private final String normFirstName;
+	private final String normLastName;
+	private final String normLocation;
+	private final int hash;
+	
 	public UserKey(String firstName, String lastName, String location) {
 		this.firstName = firstName;
 		this.lastName = lastName;
 		this.location = location;
+		this.normFirstName = normalize(firstName);
+		this.normLastName = normalize(lastName);
+		this.normLocation = normalize(location);
+		this.hash = 31 * (31 * normFirstName.hashCode() + normLastName.hashCode()) + normLocation.hashCode();
+	}
+	
+	// Normalised form of an attribute.
+	private static String normalize(String s) {
+		if (s == null) {
+			return "";
+		}
+		
+		return s.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof UserKey)) {
+			return false;
+		}
+		
+		UserKey other = (UserKey) obj;
+		return hash == other.hash && normFirstName.equals(other.normFirstName) 
+				&& normLastName.equals(other.normLastName)
+				&& normLocation.equals(other.normLocation);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("UserKey(firstName=%s, lastName=%s, location=%s)", firstName, lastName, location);
 	}
 	
 	private static String empty(String s) {
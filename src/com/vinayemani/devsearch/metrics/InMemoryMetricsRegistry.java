@@ -0,0 +1,195 @@
+package com.vinayemani.devsearch.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InMemoryMetricsRegistry keeps all meters in memory, for as long as the registry lives, so that they can be looked
+ * at with {@link #snapshot()} or dumped periodically with a {@link MetricsDumper}.
+ * 
+ * Timers keep a histogram of the recorded durations instead of the durations themselves, so they take the same
+ * space however many are recorded. Each power of 2 of microseconds is split into 4 buckets, so percentiles are off by
+ * at most a quarter.
+ * 
+ * @author Vinay E.
+ *
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+	
+	// Durations up to 2^MAX_EXPONENT micros(about 12 days) get their own buckets, longer ones share the last one.
+	private static final int MAX_EXPONENT = 40;
+	private static final int SUB_BUCKETS = 4;
+	private static final int NUM_BUCKETS = SUB_BUCKETS * MAX_EXPONENT;
+	
+	private static final double NANOS_PER_MS = 1000000.0;
+	
+	// A meter along with the name and tags it's known by.
+	private static class Meter {
+		final String name;
+		final Map<String, String> tags;
+		
+		private Meter(String name, Map<String, String> tags) {
+			this.name = name;
+			this.tags = tags;
+		}
+	}
+	
+	private static class CounterMeter extends Meter implements Counter {
+		private final LongAdder count = new LongAdder();
+		
+		private CounterMeter(String name, Map<String, String> tags) {
+			super(name, tags);
+		}
+		
+		@Override
+		public void increment(long amount) {
+			count.add(amount);
+		}
+	}
+	
+	private static class TimerMeter extends Meter implements Timer {
+		private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		private TimerMeter(String name, Map<String, String> tags) {
+			super(name, tags);
+		}
+		
+		@Override
+		public void record(long nanos) {
+			nanos = Math.max(nanos, 0);
+			buckets.incrementAndGet(bucketOf(nanos / 1000));
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+		
+		// Upper end(in ms) of the bucket holding the given fraction of the durations, no more than the max. though.
+		private double percentileMs(long[] counts, long total, double fraction) {
+			long rank = (long) Math.ceil(total * fraction), seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(bucketUpperMicros(i) / 1000.0, maxNanos.get() / NANOS_PER_MS);
+				}
+			}
+			return maxNanos.get() / NANOS_PER_MS;
+		}
+		
+		private MeterSnapshot snapshot() {
+			long[] counts = new long[NUM_BUCKETS];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return new MeterSnapshot(name, tags, MeterSnapshot.Type.TIMER, 0, 0, 0, 0, 0, 0, 0);
+			}
+			return new MeterSnapshot(name, tags, MeterSnapshot.Type.TIMER, total, 0, totalNanos.sum() / NANOS_PER_MS,
+					maxNanos.get() / NANOS_PER_MS, percentileMs(counts, total, 0.5), percentileMs(counts, total, 0.9),
+					percentileMs(counts, total, 0.99));
+		}
+	}
+	
+	private static class GaugeMeter extends Meter {
+		private final Gauge gauge;
+		
+		private GaugeMeter(String name, Map<String, String> tags, Gauge gauge) {
+			super(name, tags);
+			this.gauge = gauge;
+		}
+	}
+	
+	// Meters by their ids, which order them by name and then tags.
+	private final ConcurrentMap<String, Meter> meters = new ConcurrentSkipListMap<>();
+	
+	@Override
+	public Counter counter(String name, String... tags) {
+		SortedMap<String, String> tagMap = toMap(tags);
+		Meter meter = meters.computeIfAbsent(id(name, tagMap), id -> new CounterMeter(name, tagMap));
+		if (!(meter instanceof CounterMeter)) {
+			throw new IllegalArgumentException(id(name, tagMap) + " is not a counter");
+		}
+		return (CounterMeter) meter;
+	}
+	
+	@Override
+	public Timer timer(String name, String... tags) {
+		SortedMap<String, String> tagMap = toMap(tags);
+		Meter meter = meters.computeIfAbsent(id(name, tagMap), id -> new TimerMeter(name, tagMap));
+		if (!(meter instanceof TimerMeter)) {
+			throw new IllegalArgumentException(id(name, tagMap) + " is not a timer");
+		}
+		return (TimerMeter) meter;
+	}
+	
+	@Override
+	public void gauge(String name, Gauge gauge, String... tags) {
+		SortedMap<String, String> tagMap = toMap(tags);
+		meters.put(id(name, tagMap), new GaugeMeter(name, tagMap, gauge));
+	}
+	
+	@Override
+	public List<MeterSnapshot> snapshot() {
+		List<MeterSnapshot> snapshots = new ArrayList<>();
+		for (Meter meter : meters.values()) {
+			if (meter instanceof CounterMeter) {
+				snapshots.add(new MeterSnapshot(meter.name, meter.tags, MeterSnapshot.Type.COUNTER,
+						((CounterMeter) meter).count.sum(), 0, 0, 0, 0, 0, 0));
+			} else if (meter instanceof TimerMeter) {
+				snapshots.add(((TimerMeter) meter).snapshot());
+			} else {
+				snapshots.add(new MeterSnapshot(meter.name, meter.tags, MeterSnapshot.Type.GAUGE, 0, 
+						((GaugeMeter) meter).gauge.value(), 0, 0, 0, 0, 0));
+			}
+		}
+		return snapshots;
+	}
+	
+	private static SortedMap<String, String> toMap(String[] tags) {
+		if (tags.length % 2 != 0) {
+			throw new IllegalArgumentException("Tags must be key, value pairs");
+		}
+		SortedMap<String, String> map = new TreeMap<>();
+		for (int i = 0; i < tags.length; i += 2) {
+			map.put(tags[i], tags[i + 1]);
+		}
+		return Collections.unmodifiableSortedMap(map);
+	}
+	
+	private static String id(String name, Map<String, String> tags) {
+		return name + tags;
+	}
+	
+	/** Index of the bucket of a duration in micros. Small durations get a bucket each. */
+	static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return Math.min(SUB_BUCKETS * (exponent - 1) + sub, NUM_BUCKETS - 1);
+	}
+	
+	/** Largest duration(exclusive) in micros that falls in the given bucket. */
+	static long bucketUpperMicros(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket + 1;
+		}
+		int exponent = bucket / SUB_BUCKETS + 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+		return lower + (1L << (exponent - 2));
+	}
+}
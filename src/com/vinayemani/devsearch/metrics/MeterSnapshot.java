@@ -0,0 +1,46 @@
+package com.vinayemani.devsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * MeterSnapshot holds the value of a single meter at some point in time. Counters have a count, gauges a value and
+ * timers a count along with the total, max. and percentiles of the recorded durations, in ms. Fields that don't
+ * apply to a meter's type are 0.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.AllArgsConstructor
+public class MeterSnapshot {
+	
+	public enum Type {
+		COUNTER,
+		TIMER,
+		GAUGE
+	}
+	
+	private final String name;
+	private final Map<String, String> tags;
+	private final Type type;
+	private final long count;
+	private final double value;
+	private final double totalMs;
+	private final double maxMs;
+	private final double p50Ms;
+	private final double p90Ms;
+	private final double p99Ms;
+	
+	@Override
+	public String toString() {
+		switch (type) {
+		case COUNTER:
+			return String.format("%s%s count=%d", name, tags, count);
+		case GAUGE:
+			return String.format("%s%s value=%.2f", name, tags, value);
+		default:
+			return String.format("%s%s count=%d totalMs=%.1f maxMs=%.1f p50Ms=%.1f p90Ms=%.1f p99Ms=%.1f", 
+					name, tags, count, totalMs, maxMs, p50Ms, p90Ms, p99Ms);
+		}
+	}
+}
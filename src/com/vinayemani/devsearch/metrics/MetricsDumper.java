@@ -0,0 +1,123 @@
+package com.vinayemani.devsearch.metrics;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * MetricsDumper appends a snapshot of a registry's meters to a file at a fixed interval, and once more when it's
+ * closed. Each snapshot is a single line of json,
+ * 
+ * 	{"time": <epoch ms>, "meters": [{"name": .., "tags": {..}, "type": .., ...}, ...]}
+ * 
+ * so a run's dump can be read back a line at a time, e.g., to see how the queues and the latencies moved as
+ * concurrency settings were changed. Gauges without a value(NaN) are left out.
+ * 
+ * @author Vinay E.
+ *
+ */
+public class MetricsDumper implements Closeable {
+	private final MetricsRegistry registry;
+	private final Writer writer;
+	private final ScheduledExecutorService dumper;
+	private IOException failure = null;
+	
+	/**
+	 * Starts dumping the given registry.
+	 * 
+	 * @param path File to append the snapshots to, created if it doesn't exist.
+	 * @param intervalMs Time between snapshots.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public MetricsDumper(MetricsRegistry registry, String path, long intervalMs) throws IOException {
+		this.registry = registry;
+		this.writer = new OutputStreamWriter(new FileOutputStream(path, true), StandardCharsets.UTF_8);
+		
+		dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "devsearch-metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		dumper.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				dump();
+			}
+		}, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/** Appends a snapshot right away. Write errors are kept and reported on close. */
+	public synchronized void dump() {
+		if (failure != null) {
+			return;
+		}
+		try {
+			writer.write(toJSON(registry, System.currentTimeMillis()).toString());
+			writer.write('\n');
+			writer.flush();
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+	
+	/** A registry's snapshot in the format of the dump's lines. */
+	static JSONObject toJSON(MetricsRegistry registry, long timeMs) {
+		JSONArray meters = new JSONArray();
+		for (MeterSnapshot snapshot : registry.snapshot()) {
+			JSONObject meter = new JSONObject();
+			meter.put("name", snapshot.getName());
+			meter.put("tags", new JSONObject(snapshot.getTags()));
+			meter.put("type", snapshot.getType().name());
+			switch (snapshot.getType()) {
+			case COUNTER:
+				meter.put("count", snapshot.getCount());
+				break;
+			case GAUGE:
+				if (Double.isNaN(snapshot.getValue()) || Double.isInfinite(snapshot.getValue())) {
+					continue;
+				}
+				meter.put("value", snapshot.getValue());
+				break;
+			default:
+				meter.put("count", snapshot.getCount());
+				meter.put("totalMs", snapshot.getTotalMs());
+				meter.put("maxMs", snapshot.getMaxMs());
+				meter.put("p50Ms", snapshot.getP50Ms());
+				meter.put("p90Ms", snapshot.getP90Ms());
+				meter.put("p99Ms", snapshot.getP99Ms());
+			}
+			meters.put(meter);
+		}
+		return new JSONObject().put("time", timeMs).put("meters", meters);
+	}
+	
+	/**
+	 * Stops the periodic dumps, appends a last snapshot and closes the file.
+	 * 
+	 * @throws IOException If this or any earlier write failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		dumper.shutdownNow();
+		dump();
+		synchronized (this) {
+			writer.close();
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.vinayemani.devsearch.metrics;
+
+import java.util.List;
+
+/**
+ * MetricsRegistry receives the measurements an api client makes of its own work, e.g., how long requests to each end
+ * point take, how deep the work queues are and how long workers sleep on rate limits. Meters are identified by a
+ * dotted name and a set of tags, given as key, value pairs, and are looked up(or created) on first use. The same
+ * name and tags always give the same meter.
+ * 
+ * The client uses an {@link InMemoryMetricsRegistry} unless told otherwise, other implementations can forward the
+ * measurements to an external monitoring system.
+ * 
+ * @author Vinay E.
+ *
+ */
+public interface MetricsRegistry {
+	
+	/** A count that only goes up, e.g., of bytes received. */
+	interface Counter {
+		void increment(long amount);
+	}
+	
+	/** Records durations, e.g., of requests, into a histogram. */
+	interface Timer {
+		void record(long nanos);
+	}
+	
+	/** A value that's read whenever the registry is sampled, e.g., a queue's depth. */
+	interface Gauge {
+		double value();
+	}
+	
+	Counter counter(String name, String... tags);
+	
+	Timer timer(String name, String... tags);
+	
+	/** Registers a gauge, replacing any earlier gauge with the same name and tags. */
+	void gauge(String name, Gauge gauge, String... tags);
+	
+	/**
+	 * Current values of all meters, in the order of their names and tags. Registries that only forward measurements
+	 * may return an empty list.
+	 */
+	List<MeterSnapshot> snapshot();
+}
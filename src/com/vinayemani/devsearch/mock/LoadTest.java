@@ -0,0 +1,272 @@
+package com.vinayemani.devsearch.mock;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import com.vinayemani.devsearch.BadInputFileException;
+import com.vinayemani.devsearch.ClientSettings;
+import com.vinayemani.devsearch.FileUtils;
+import com.vinayemani.devsearch.GitHubAPIClient;
+import com.vinayemani.devsearch.InvalidCredentialsException;
+import com.vinayemani.devsearch.data.OutcomeStatus;
+import com.vinayemani.devsearch.metrics.MeterSnapshot;
+
+/**
+ * LoadTest runs a file to file search({@link GitHubAPIClient#searchForUsers(String, String)}) of synthetic users
+ * against a {@link MockGitHubServer}, and reports how fast it went: users per hour, requests per user, and p50/p99
+ * latencies of users and of requests to each end point. The input is made up of keys of the server's users, and a
+ * fraction of keys that match nobody.
+ * 
+ * Run it with --name=value options for the settings of the run, the server and the client, e.g.,
+ * 
+ * 	java com.vinayemani.devsearch.mock.LoadTest --keys=5000 --latency-median-ms=80 --search-limit=1800
+ * 
+ * See {@link #USAGE} for all of them. Inputs, outputs and outcomes of the run are left in a temp directory. Input
+ * files are read in the platform's charset, so in a non UTF-8 locale, run it with -Dfile.encoding=UTF-8 for the
+ * users with non ascii names to be found.
+ * 
+ * @author Vinay E.
+ *
+ */
+public class LoadTest {
+	
+	static final String USAGE = "Options(all optional):\n"
+			+ "  --keys=N                  no. of user keys searched for(1000)\n"
+			+ "  --miss-rate=F             fraction of keys matching nobody(0.1)\n"
+			+ "  --users=N                 no. of users served(10000)\n"
+			+ "  --latency-median-ms=N     median response time(50)\n"
+			+ "  --latency-p99-ms=N        99th percentile response time(500)\n"
+			+ "  --core-limit=N            core requests per window(5000)\n"
+			+ "  --core-window-secs=N      core rate limit window(3600)\n"
+			+ "  --search-limit=N          search requests per window(30)\n"
+			+ "  --search-window-secs=N    search rate limit window(60)\n"
+			+ "  --error-rate=F            fraction of requests failed with a 502(0)\n"
+			+ "  --core-workers=N          client's core workers(4)\n"
+			+ "  --search-workers=N        client's search workers(2)\n"
+			+ "  --max-connections=N       client's max. connections per route and in total(8)\n"
+			+ "  --adaptive-concurrency=B  whether the client adapts its concurrency to latencies and errors(true)\n";
+	
+	/**
+	 * How a load test run went.
+	 *
+	 * @author Vinay E.
+	 */
+	@lombok.Getter
+	@lombok.AllArgsConstructor
+	public static class Report {
+		private final int keys;
+		private final int found;
+		private final int notFound;
+		private final int failed;
+		private final long elapsedMs;
+		
+		// Requests the server answered by end point, and those it refused for the rate limit.
+		private final Map<String, Long> requests;
+		private final long rateLimited;
+		
+		// Time from submission to the end, of the keys.
+		private final long userP50Ms;
+		private final long userP99Ms;
+		
+		// Client side request latencies, by end point and status code.
+		private final List<MeterSnapshot> requestLatencies;
+		
+		public long getTotalRequests() {
+			long total = 0;
+			for (long count : requests.values()) {
+				total += count;
+			}
+			return total;
+		}
+		
+		public double getUsersPerHour() {
+			return keys * 3600000.0 / Math.max(elapsedMs, 1);
+		}
+		
+		public double getRequestsPerUser() {
+			return keys == 0 ? 0 : (double) getTotalRequests() / keys;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder report = new StringBuilder();
+			report.append(String.format("keys=%d found=%d notFound=%d failed=%d in %.1fs%n", keys, found, notFound, failed,
+					elapsedMs / 1000.0));
+			report.append(String.format("users/hour=%.0f%n", getUsersPerHour()));
+			report.append(String.format("requests=%d %s requests/user=%.2f rateLimited=%d%n", getTotalRequests(), requests,
+					getRequestsPerUser(), rateLimited));
+			report.append(String.format("user latency p50Ms=%d p99Ms=%d%n", userP50Ms, userP99Ms));
+			for (MeterSnapshot latency : requestLatencies) {
+				report.append(String.format("request latency %s count=%d p50Ms=%.1f p99Ms=%.1f%n", latency.getTags(), 
+						latency.getCount(), latency.getP50Ms(), latency.getP99Ms()));
+			}
+			return report.toString();
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		MockServerSettings serverSettings = new MockServerSettings();
+		serverSettings.setLatencyMedianMs(50);
+		serverSettings.setLatencyP99Ms(500);
+		ClientSettings clientSettings = new ClientSettings();
+		int keys = 1000;
+		double missRate = 0.1;
+		
+		for (String arg : args) {
+			if (arg.equals("--help")) {
+				System.out.print(USAGE);
+				return;
+			}
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				System.err.println("Bad option " + arg + "\n" + USAGE);
+				System.exit(1);
+			}
+			String name = arg.substring(2, eq), value = arg.substring(eq + 1);
+			switch (name) {
+			case "keys":
+				keys = Integer.parseInt(value);
+				break;
+			case "miss-rate":
+				missRate = Double.parseDouble(value);
+				break;
+			case "users":
+				serverSettings.setNumUsers(Integer.parseInt(value));
+				break;
+			case "latency-median-ms":
+				serverSettings.setLatencyMedianMs(Long.parseLong(value));
+				break;
+			case "latency-p99-ms":
+				serverSettings.setLatencyP99Ms(Long.parseLong(value));
+				break;
+			case "core-limit":
+				serverSettings.setCoreLimit(Integer.parseInt(value));
+				break;
+			case "core-window-secs":
+				serverSettings.setCoreWindowSecs(Long.parseLong(value));
+				break;
+			case "search-limit":
+				serverSettings.setSearchLimit(Integer.parseInt(value));
+				break;
+			case "search-window-secs":
+				serverSettings.setSearchWindowSecs(Long.parseLong(value));
+				break;
+			case "error-rate":
+				serverSettings.setErrorRate(Double.parseDouble(value));
+				break;
+			case "core-workers":
+				clientSettings.setCoreWorkers(Integer.parseInt(value));
+				break;
+			case "search-workers":
+				clientSettings.setSearchWorkers(Integer.parseInt(value));
+				break;
+			case "max-connections":
+				clientSettings.setMaxConnectionsPerRoute(Integer.parseInt(value));
+				clientSettings.setMaxConnectionsTotal(Integer.parseInt(value));
+				break;
+			case "adaptive-concurrency":
+				clientSettings.setAdaptiveConcurrency(Boolean.parseBoolean(value));
+				break;
+			default:
+				System.err.println("Unknown option " + arg + "\n" + USAGE);
+				System.exit(1);
+			}
+		}
+		
+		File workDir = Files.createTempDirectory("devsearch-loadtest").toFile();
+		System.out.println("Searching for " + keys + " users, files are in " + workDir);
+		System.out.print(run(serverSettings, clientSettings, keys, missRate, workDir));
+	}
+	
+	/**
+	 * Starts a mock server, searches for the given no. of keys through a client pointed at it, and stops the server.
+	 * 
+	 * @param clientSettings Settings of the client, its api root is set to the server's.
+	 * @param workDir Directory the input, output and outcomes files are written to.
+	 */
+	public static Report run(MockServerSettings serverSettings, ClientSettings clientSettings, int keys, double missRate,
+			File workDir) throws IOException, BadInputFileException, InvalidCredentialsException {
+		try (MockGitHubServer server = MockGitHubServer.start(serverSettings)) {
+			String input = new File(workDir, "keys.csv").getPath(), output = new File(workDir, "users.ndjson").getPath();
+			writeKeys(server.getUsers(), keys, missRate, serverSettings.getSeed(), input);
+			
+			clientSettings.setApiRoot(server.getApiRoot());
+			long elapsedMs;
+			List<MeterSnapshot> latencies = new ArrayList<>();
+			try (GitHubAPIClient client = new GitHubAPIClient("loadtest-token", clientSettings)) {
+				long startNanos = System.nanoTime();
+				client.searchForUsers(input, output);
+				elapsedMs = (System.nanoTime() - startNanos) / 1000000;
+				
+				for (MeterSnapshot meter : client.getMetrics().snapshot()) {
+					if (meter.getName().equals("devsearch.http.requests")) {
+						latencies.add(meter);
+					}
+				}
+			}
+			
+			int found = 0, notFound = 0, failed = 0;
+			List<Long> userLatencies = new ArrayList<>();
+			try (Reader reader = new FileReader(FileUtils.getOutcomesPath(output))) {
+				for (CSVRecord record : CSVFormat.RFC4180.withFirstRecordAsHeader().parse(reader)) {
+					OutcomeStatus status = OutcomeStatus.valueOf(record.get("status"));
+					if (status == OutcomeStatus.SUCCESS) {
+						found++;
+					} else if (status == OutcomeStatus.NO_MATCH) {
+						notFound++;
+					} else {
+						failed++;
+					}
+					userLatencies.add(Long.parseLong(record.get("latencyMs")));
+				}
+			}
+			
+			long[] sorted = new long[userLatencies.size()];
+			for (int i = 0; i < sorted.length; i++) {
+				sorted[i] = userLatencies.get(i);
+			}
+			Arrays.sort(sorted);
+			return new Report(keys, found, notFound, failed, elapsedMs, new TreeMap<>(server.getRequestCounts()), 
+					server.getRateLimitedCount(), percentile(sorted, 0.5), percentile(sorted, 0.99), latencies);
+		}
+	}
+	
+	/** Writes an input file of keys of randomly picked users, and of made up names for the given fraction of keys. */
+	static void writeKeys(List<MockData.User> users, int keys, double missRate, long seed, String path) throws IOException {
+		Random random = new Random(seed);
+		try (CSVPrinter printer = CSVFormat.RFC4180.withHeader("firstName", "lastName", "location")
+				.print(new BufferedWriter(new FileWriter(path)))) {
+			for (int i = 0; i < keys; i++) {
+				if (users.isEmpty() || random.nextDouble() < missRate) {
+					printer.printRecord("Nobody" + i, "Known", "");
+				} else {
+					MockData.User user = users.get(random.nextInt(users.size()));
+					printer.printRecord(user.getFirstName(), user.getLastName(), user.getLocation());
+				}
+			}
+		}
+	}
+	
+	// Nearest rank percentile of sorted values, 0 if there are none.
+	private static long percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.max((int) Math.ceil(sorted.length * fraction) - 1, 0)];
+	}
+}
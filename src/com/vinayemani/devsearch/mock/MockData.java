@@ -0,0 +1,128 @@
+package com.vinayemani.devsearch.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * MockData is the synthetic set of users served by a {@link MockGitHubServer}. Users are generated from a seed, user i
+ * having the login user{i} and a name and location made up from a few common ones. Names are made unique by a
+ * number, so every user can be found by name.
+ *
+ * @author Vinay E.
+ *
+ */
+class MockData {
+	private static final String[] FIRST_NAMES = {"Vinay", "Ann", "Mary Jane", "Jos\u00e9", "Li", "Oluwaseun", "Priya",
+			"John", "Fatima", "Kenji"};
+	private static final String[] LAST_NAMES = {"Emani", "Smith", "O'Brien", "Garc\u00eda", "", "Nakamura-Jones", 
+			"Kumar", "M\u00fcller", "Chen", "Okafor"};
+	private static final String[] LOCATIONS = {"Hyderabad", "San Francisco", "", "S\u00e3o Paulo", "New York, NY", 
+			"Berlin", "Lagos", "Tokyo"};
+	private static final String[] COMPANIES = {"", "@github", "Acme", "Initech", "Globex"};
+	
+	/**
+	 * A synthetic user.
+	 *
+	 * @author Vinay E.
+	 */
+	@lombok.Getter
+	static class User {
+		private final int id;
+		private final String login;
+		private final String firstName;
+		private final String lastName;
+		private final String location;
+		private final String company;
+		
+		// Commit counts of the user's repos, repo j is named repo{j}.
+		private final int[] repoCommits;
+		
+		private User(int id, Random random, double meanRepos, double meanCommits) {
+			this.id = id;
+			this.login = "user" + id;
+			this.firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + id;
+			this.lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+			this.location = LOCATIONS[random.nextInt(LOCATIONS.length)];
+			this.company = COMPANIES[random.nextInt(COMPANIES.length)];
+			this.repoCommits = new int[geometric(random, meanRepos)];
+			for (int j = 0; j < repoCommits.length; j++) {
+				repoCommits[j] = geometric(random, meanCommits);
+			}
+		}
+		
+		public String getName() {
+			return (firstName + " " + lastName).trim();
+		}
+	}
+	
+	private final List<User> users;
+	
+	// Users by their lower cased names.
+	private final Map<String, List<User>> byName = new HashMap<>();
+	
+	MockData(long seed, int numUsers, double meanRepos, double meanCommits) {
+		Random random = new Random(seed);
+		List<User> all = new ArrayList<>(numUsers);
+		for (int i = 0; i < numUsers; i++) {
+			User user = new User(i, random, meanRepos, meanCommits);
+			all.add(user);
+			byName.computeIfAbsent(normalize(user.getName()), name -> new ArrayList<>()).add(user);
+		}
+		this.users = Collections.unmodifiableList(all);
+	}
+	
+	List<User> getUsers() {
+		return users;
+	}
+	
+	/** The user with the given login(case insensitive), null if there's none. */
+	User byLogin(String login) {
+		String lower = login.toLowerCase(Locale.ROOT);
+		if (!lower.startsWith("user")) {
+			return null;
+		}
+		try {
+			int id = Integer.parseInt(lower.substring(4));
+			return id >= 0 && id < users.size() && users.get(id).login.equals(lower) ? users.get(id) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/** Users with the given full name and, if it isn't empty, location. Both are matched ignoring case. */
+	List<User> search(String name, String location) {
+		List<User> matches = byName.get(normalize(name));
+		if (matches == null) {
+			return Collections.emptyList();
+		}
+		if (location.isEmpty()) {
+			return matches;
+		}
+		
+		List<User> inLocation = new ArrayList<>();
+		for (User user : matches) {
+			if (user.location.equalsIgnoreCase(location.trim())) {
+				inLocation.add(user);
+			}
+		}
+		return inLocation;
+	}
+	
+	private static String normalize(String name) {
+		return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+	
+	// Geometric distribution over 0, 1, 2.. with the given mean.
+	private static int geometric(Random random, double mean) {
+		if (mean <= 0) {
+			return 0;
+		}
+		double u = 1 - random.nextDouble();
+		return (int) Math.min(Math.floor(Math.log(u) / Math.log(mean / (mean + 1))), 100000);
+	}
+}
@@ -0,0 +1,426 @@
+package com.vinayemani.devsearch.mock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * MockGitHubServer is a local stand-in for the parts of GitHub's REST api that the client uses, i.e., user search,
+ * users, their repos, commit listings and rate limits, serving a synthetic set of users(see {@link MockData}). It
+ * lets searches be run and timed at scale without using up real quota. Point a client at it with
+ * {@link com.vinayemani.devsearch.ClientSettings#setApiRoot(String)} and {@link #getApiRoot()}.
+ * 
+ * The server behaves like GitHub where the client cares:
+ * 	- Repo and commit listings are paginated as per the per_page and page params, with Link headers.
+ * 	- Every response has X-RateLimit-* headers. Core and search requests are counted per credential(Authorization
+ * 	  header) in fixed windows, and once a window's quota is used up, requests get a 403 until the window resets.
+ * 	  Rate limit checks don't count.
+ * 	- Responses are delayed by a configurable latency distribution, and a fraction of them can fail with a 502.
+ * 
+ * Search is by exact full name(ignoring case and extra spaces) and location, which is enough to find the users of
+ * inputs made from the same data.
+ * 
+ * @author Vinay E.
+ *
+ */
+public class MockGitHubServer implements Closeable {
+	private static final int DEFAULT_PER_PAGE = 30;
+	private static final int MAX_PER_PAGE = 100;
+	
+	// z-score of the 99th percentile of the standard normal distribution.
+	private static final double Z_99 = 2.326;
+	
+	private static final String CORE = "core";
+	private static final String SEARCH = "search";
+	
+	/**
+	 * Requests made so far with one credential in the current window of a category.
+	 *
+	 * @author Vinay E.
+	 */
+	private static class Quota {
+		private final int limit;
+		private final long windowMs;
+		private long resetMs = 0;
+		private int used = 0;
+		
+		private Quota(int limit, long windowMs) {
+			this.limit = limit;
+			this.windowMs = windowMs;
+		}
+		
+		/** Counts a request, returns false if the quota is used up. */
+		private synchronized boolean take(long nowMs) {
+			if (nowMs >= resetMs) {
+				resetMs = nowMs + windowMs;
+				used = 0;
+			}
+			if (used >= limit) {
+				return false;
+			}
+			used++;
+			return true;
+		}
+		
+		private synchronized int remaining(long nowMs) {
+			return nowMs >= resetMs ? limit : limit - used;
+		}
+		
+		private synchronized long resetEpochSecs(long nowMs) {
+			return ((nowMs >= resetMs ? nowMs + windowMs : resetMs) + 999) / 1000;
+		}
+	}
+	
+	private final MockServerSettings settings;
+	private final MockData data;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	// Quotas by credential and category.
+	private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+	
+	// Requests answered so far, by end point, and those refused for the rate limit.
+	private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+	private final AtomicLong rateLimited = new AtomicLong();
+	
+	private MockGitHubServer(MockServerSettings settings) throws IOException {
+		this.settings = settings;
+		this.data = new MockData(settings.getSeed(), settings.getNumUsers(), settings.getMeanReposPerUser(), 
+				settings.getMeanCommitsPerRepo());
+		
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Math.max(settings.getServerThreads(), 1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "devsearch-mock-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// Headers and bodies are written separately, without this the bodies wait out the client's delayed acks. Only
+		// read when the first server of the jvm is created.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("localhost", settings.getPort()), 0);
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+	
+	/** Starts a server with the given settings. */
+	public static MockGitHubServer start(MockServerSettings settings) throws IOException {
+		MockGitHubServer mock = new MockGitHubServer(settings);
+		mock.server.start();
+		return mock;
+	}
+	
+	/** Root url of the server's api. */
+	public String getApiRoot() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+	
+	/** Requests answered so far by end point(search, user, repos, commits, rate_limit or other). */
+	public Map<String, Long> getRequestCounts() {
+		Map<String, Long> counts = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> entry : requests.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+	
+	/** Requests refused with a 403 since their quota was used up. */
+	public long getRateLimitedCount() {
+		return rateLimited.get();
+	}
+	
+	/** Users served, e.g., to make up inputs from. */
+	List<MockData.User> getUsers() {
+		return data.getUsers();
+	}
+	
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+	
+	private void serve(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+		String[] parts = path.substring(1).split("/");
+		
+		String endPoint, category = CORE;
+		if (path.equals("/rate_limit")) {
+			endPoint = "rate_limit";
+			category = null;
+		} else if (path.equals("/search/users")) {
+			endPoint = "search";
+			category = SEARCH;
+		} else if (parts.length == 2 && parts[0].equals("users")) {
+			endPoint = "user";
+		} else if (parts.length == 3 && parts[0].equals("users") && parts[2].equals("repos")) {
+			endPoint = "repos";
+		} else if (parts.length == 4 && parts[0].equals("repos") && parts[3].equals("commits")) {
+			endPoint = "commits";
+		} else {
+			endPoint = "other";
+		}
+		requests.computeIfAbsent(endPoint, name -> new AtomicLong()).incrementAndGet();
+		delay();
+		
+		String credential = exchange.getRequestHeaders().getFirst("Authorization");
+		credential = credential == null ? "anonymous" : credential;
+		long nowMs = System.currentTimeMillis();
+		if (category != null) {
+			Quota quota = quota(credential, category);
+			boolean allowed = quota.take(nowMs);
+			addRateLimitHeaders(exchange, category, quota, nowMs);
+			if (!allowed) {
+				rateLimited.incrementAndGet();
+				send(exchange, 403, new JSONObject().put("message", "API rate limit exceeded")
+						.put("documentation_url", "https://docs.github.com/rest/overview/resources-in-the-rest-api#rate-limiting"));
+				return;
+			}
+			if (settings.getErrorRate() > 0 && ThreadLocalRandom.current().nextDouble() < settings.getErrorRate()) {
+				send(exchange, 502, new JSONObject().put("message", "Server Error"));
+				return;
+			}
+		}
+		
+		switch (endPoint) {
+		case "rate_limit":
+			serveRateLimit(exchange, credential, nowMs);
+			break;
+		case "search":
+			serveSearch(exchange, params);
+			break;
+		case "user":
+			serveUser(exchange, parts[1]);
+			break;
+		case "repos":
+			serveRepos(exchange, parts[1], params);
+			break;
+		case "commits":
+			serveCommits(exchange, parts[1], parts[2], params);
+			break;
+		default:
+			sendNotFound(exchange);
+		}
+	}
+	
+	private void serveRateLimit(HttpExchange exchange, String credential, long nowMs) throws IOException {
+		JSONObject resources = new JSONObject();
+		for (String category : new String[] {CORE, SEARCH}) {
+			Quota quota = quota(credential, category);
+			resources.put(category, new JSONObject().put("limit", quota.limit).put("remaining", quota.remaining(nowMs))
+					.put("reset", quota.resetEpochSecs(nowMs)));
+		}
+		send(exchange, 200, new JSONObject().put("resources", resources));
+	}
+	
+	// q is "<full name> type:user in:fullname[ location:<location>]", as the client makes it.
+	private void serveSearch(HttpExchange exchange, Map<String, String> params) throws IOException {
+		String q = params.containsKey("q") ? params.get("q") : "";
+		String location = "";
+		int locationAt = q.indexOf("location:");
+		if (locationAt >= 0) {
+			location = q.substring(locationAt + "location:".length());
+			q = q.substring(0, locationAt);
+		}
+		String name = q.replace("type:user", "").replace("in:fullname", "");
+		
+		List<MockData.User> matches = data.search(name, location);
+		int perPage = perPage(params), page = page(params);
+		JSONArray items = new JSONArray();
+		for (int i = (page - 1) * perPage; i < Math.min(page * perPage, matches.size()); i++) {
+			MockData.User user = matches.get(i);
+			items.put(new JSONObject().put("login", user.getLogin()).put("id", user.getId()).put("type", "User")
+					.put("url", getApiRoot() + "/users/" + user.getLogin()).put("score", 1.0));
+		}
+		send(exchange, 200, new JSONObject().put("total_count", matches.size()).put("incomplete_results", false)
+				.put("items", items));
+	}
+	
+	private void serveUser(HttpExchange exchange, String login) throws IOException {
+		MockData.User user = data.byLogin(login);
+		if (user == null) {
+			sendNotFound(exchange);
+			return;
+		}
+		
+		JSONObject profile = new JSONObject().put("login", user.getLogin()).put("id", user.getId())
+				.put("url", getApiRoot() + "/users/" + user.getLogin()).put("type", "User").put("site_admin", false)
+				.put("name", user.getName()).put("company", user.getCompany().isEmpty() ? JSONObject.NULL : user.getCompany())
+				.put("blog", "https://blog.example.com/" + user.getLogin()).put("location", user.getLocation())
+				.put("email", JSONObject.NULL).put("public_repos", user.getRepoCommits().length);
+		send(exchange, 200, profile);
+	}
+	
+	private void serveRepos(HttpExchange exchange, String login, Map<String, String> params) throws IOException {
+		MockData.User user = data.byLogin(login);
+		if (user == null) {
+			sendNotFound(exchange);
+			return;
+		}
+		
+		int perPage = perPage(params), page = page(params), numRepos = user.getRepoCommits().length;
+		JSONArray repos = new JSONArray();
+		for (int j = (page - 1) * perPage; j < Math.min(page * perPage, numRepos); j++) {
+			repos.put(new JSONObject().put("name", "repo" + j).put("full_name", user.getLogin() + "/repo" + j)
+					.put("owner", new JSONObject().put("login", user.getLogin())).put("private", false));
+		}
+		addLinks(exchange, params, page, (numRepos + perPage - 1) / perPage);
+		send(exchange, 200, repos);
+	}
+	
+	// Commits of a repo are all by its owner, so the author param either matches all of them or none.
+	private void serveCommits(HttpExchange exchange, String owner, String repo, Map<String, String> params) 
+			throws IOException {
+		MockData.User user = data.byLogin(owner);
+		int repoIndex = -1;
+		if (user != null && repo.startsWith("repo")) {
+			try {
+				repoIndex = Integer.parseInt(repo.substring(4));
+			} catch (NumberFormatException e) {
+				// Not one of ours.
+			}
+		}
+		if (repoIndex < 0 || repoIndex >= user.getRepoCommits().length) {
+			sendNotFound(exchange);
+			return;
+		}
+		
+		String author = params.get("author");
+		int numCommits = author == null || author.equalsIgnoreCase(user.getLogin()) ? user.getRepoCommits()[repoIndex] : 0;
+		int perPage = perPage(params), page = page(params);
+		JSONArray commits = new JSONArray();
+		for (int k = (page - 1) * perPage; k < Math.min(page * perPage, numCommits); k++) {
+			commits.put(new JSONObject().put("sha", String.format("%040x", ((long) repoIndex << 32) | k))
+					.put("author", new JSONObject().put("login", user.getLogin())));
+		}
+		addLinks(exchange, params, page, (numCommits + perPage - 1) / perPage);
+		send(exchange, 200, commits);
+	}
+	
+	private Quota quota(String credential, String category) {
+		return quotas.computeIfAbsent(credential + " " + category, key -> category.equals(SEARCH)
+				? new Quota(settings.getSearchLimit(), Math.max(settings.getSearchWindowSecs(), 1) * 1000)
+				: new Quota(settings.getCoreLimit(), Math.max(settings.getCoreWindowSecs(), 1) * 1000));
+	}
+	
+	private static void addRateLimitHeaders(HttpExchange exchange, String category, Quota quota, long nowMs) {
+		exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(quota.limit));
+		exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(quota.remaining(nowMs)));
+		exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(quota.resetEpochSecs(nowMs)));
+		exchange.getResponseHeaders().add("X-RateLimit-Resource", category);
+	}
+	
+	/** Adds next and last links to a listing's page, unless it's the last one. */
+	private void addLinks(HttpExchange exchange, Map<String, String> params, int page, int lastPage) 
+			throws UnsupportedEncodingException {
+		if (page >= lastPage) {
+			return;
+		}
+		String path = exchange.getRequestURI().getPath();
+		exchange.getResponseHeaders().add("Link", "<" + pageUrl(path, params, page + 1) + ">; rel=\"next\", <" 
+				+ pageUrl(path, params, lastPage) + ">; rel=\"last\"");
+	}
+	
+	private String pageUrl(String path, Map<String, String> params, int page) throws UnsupportedEncodingException {
+		StringBuilder url = new StringBuilder(getApiRoot()).append(path).append('?');
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			if (!param.getKey().equals("page")) {
+				url.append(param.getKey()).append('=').append(URLEncoder.encode(param.getValue(), "UTF-8")).append('&');
+			}
+		}
+		return url.append("page=").append(page).toString();
+	}
+	
+	// Sleeps for a log-normally distributed time, as response times tend to be.
+	private void delay() {
+		long median = settings.getLatencyMedianMs();
+		if (median <= 0) {
+			return;
+		}
+		double mu = Math.log(median);
+		double sigma = Math.max(Math.log(Math.max(settings.getLatencyP99Ms(), median)) - mu, 0) / Z_99;
+		long delayMs = Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+		try {
+			Thread.sleep(delayMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static int perPage(Map<String, String> params) {
+		return Math.min(Math.max(intParam(params, "per_page", DEFAULT_PER_PAGE), 1), MAX_PER_PAGE);
+	}
+	
+	private static int page(Map<String, String> params) {
+		return Math.max(intParam(params, "page", 1), 1);
+	}
+	
+	private static int intParam(Map<String, String> params, String name, int defaultValue) {
+		try {
+			return params.containsKey(name) ? Integer.parseInt(params.get(name)) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery == null) {
+			return params;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+	
+	private static void sendNotFound(HttpExchange exchange) throws IOException {
+		send(exchange, 404, new JSONObject().put("message", "Not Found"));
+	}
+	
+	private static void send(HttpExchange exchange, int status, Object json) throws IOException {
+		byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
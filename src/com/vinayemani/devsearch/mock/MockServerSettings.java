@@ -0,0 +1,42 @@
+package com.vinayemani.devsearch.mock;
+
+/**
+ * MockServerSettings holds the tunable knobs of a {@link MockGitHubServer}. A default constructed object gives a server
+ * with 10000 users, GitHub's own rate limits and no added latency.
+ *
+ * @author Vinay E.
+ *
+ */
+@lombok.Getter
+@lombok.Setter
+public class MockServerSettings {
+	// Port to listen on(on localhost), a free one is picked when this is 0.
+	private int port = 0;
+	
+	// Synthetic users are generated from this seed, so servers with the same seed and sizes serve the same data.
+	private long seed = 42;
+	private int numUsers = 10000;
+	
+	// No. of repos per user and commits per repo are drawn from geometric distributions with these means.
+	private double meanReposPerUser = 5;
+	private double meanCommitsPerRepo = 30;
+	
+	// Responses are delayed by a log-normally distributed time with this median and 99th percentile. There's no
+	// delay when the median is 0.
+	private long latencyMedianMs = 0;
+	private long latencyP99Ms = 0;
+	
+	// Each credential(or anonymous client) gets this many requests per window of each category, a request beyond
+	// that gets a 403 until the window resets. Defaults are GitHub's limits for authenticated clients.
+	private int coreLimit = 5000;
+	private long coreWindowSecs = 3600;
+	private int searchLimit = 30;
+	private long searchWindowSecs = 60;
+	
+	// Fraction of requests(other than rate limit checks) failed with a 502, to exercise retries.
+	private double errorRate = 0;
+	
+	// No. of threads answering requests. Delayed responses hold on to their thread, so this caps the no. of requests
+	// being answered at a time.
+	private int serverThreads = 64;
+}
@@ -0,0 +1,61 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.CircuitState;
+
+class CircuitBreakerTest {
+	
+	@Test
+	void testOpensOnFailuresAndClosesAfterGoodProbe() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(4, 0.5, 50);
+		for (int i = 0; i < 4; i++) {
+			breaker.acquire();
+			breaker.record(i % 2 == 0);
+		}
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertThrows(CircuitOpenException.class, breaker::acquire);
+		
+		// Half open lets a single probe through, a failed probe opens the breaker again.
+		Thread.sleep(60);
+		breaker.acquire();
+		assertThrows(CircuitOpenException.class, breaker::acquire);
+		breaker.record(false);
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		
+		Thread.sleep(60);
+		breaker.acquire();
+		breaker.record(true);
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertEquals(2, breaker.getOpens());
+		assertEquals(2, breaker.getRejected());
+	}
+	
+	@Test
+	void testConcurrencyLimitFollowsHealth() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8);
+		runWindow(limiter, 1000, 0);
+		assertEquals(8, limiter.getLimit());
+		
+		// Latency shooting up, then errors, each halve the limit.
+		runWindow(limiter, 5000, 0);
+		assertEquals(4, limiter.getLimit());
+		runWindow(limiter, 1000, ConcurrencyLimiter.WINDOW_SIZE / 2);
+		assertEquals(2, limiter.getLimit());
+		
+		// Healthy again, it grows back one at a time.
+		runWindow(limiter, 1000, 0);
+		runWindow(limiter, 1000, 0);
+		assertEquals(4, limiter.getLimit());
+		assertEquals(2, limiter.getDecreases());
+	}
+	
+	private static void runWindow(ConcurrencyLimiter limiter, long latencyNanos, int errors) throws InterruptedException {
+		for (int i = 0; i < ConcurrencyLimiter.WINDOW_SIZE; i++) {
+			limiter.acquire();
+			limiter.release(latencyNanos, i < errors);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.UserKey;
+
+class CoalescerTest {
+	
+	@Test
+	void testEqualKeysShareOneSearch() {
+		List<Long> delivered = new ArrayList<>();
+		List<Long> leaders = new ArrayList<>();
+		Coalescer<UserKey, String> searches = new Coalescer<>(new Coalescer.Delivery<String>() {
+			@Override
+			public void deliver(long keyId, String login, APICallResultType resultType, long leaderKeyId) {
+				assertEquals("torvalds", login);
+				delivered.add(keyId);
+				leaders.add(leaderKeyId);
+			}
+		}, 10);
+		
+		// Only the first of the equal keys is searched for, the different one gets its own search.
+		assertTrue(searches.join(new UserKey("Linus", "Torvalds", "Portland"), 0));
+		assertFalse(searches.join(new UserKey(" linus", "TORVALDS", "portland "), 1));
+		assertTrue(searches.join(new UserKey("Linus", "Torvalds", "Helsinki"), 2));
+		assertTrue(delivered.isEmpty());
+		
+		searches.finish(0, "torvalds", APICallResultType.SUCCESS);
+		assertEquals(Arrays.asList(1L, 0L), delivered);
+		assertEquals(Arrays.asList(0L, 0L), leaders);
+		
+		// A key that comes in later gets the remembered result without a search.
+		assertFalse(searches.join(new UserKey("LINUS", "torvalds", "Portland"), 3));
+		assertEquals(Arrays.asList(1L, 0L, 3L), delivered);
+		assertEquals(Coalescer.NO_LEADER, (long) leaders.get(2));
+	}
+	
+	@Test
+	void testFailuresAreNotRemembered() {
+		List<APICallResultType> results = new ArrayList<>();
+		Coalescer<String, String> fetches = new Coalescer<>(new Coalescer.Delivery<String>() {
+			@Override
+			public void deliver(long keyId, String data, APICallResultType resultType, long leaderKeyId) {
+				results.add(resultType);
+			}
+		}, 10);
+		
+		assertTrue(fetches.join("octocat", 0));
+		assertFalse(fetches.join("octocat", 1));
+		fetches.finish(0, null, APICallResultType.ERROR);
+		assertEquals(Arrays.asList(APICallResultType.ERROR, APICallResultType.ERROR), results);
+		
+		// The next job with the login is run again.
+		assertTrue(fetches.join("octocat", 2));
+	}
+}
@@ -0,0 +1,77 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+class FileUtilsTest {
+	
+	private static List<UserData> users() {
+		String longName = new String(new char[300]).replace('\0', 'x');
+		return Arrays.asList(
+				new UserData(new UserProfile("Jos\u00e9, Jr.", "jose", null, "", "S\u00e3o Paulo", null),
+						Arrays.asList(new RepoData(12, "r1"), new RepoData(0, longName))),
+				new UserData(new UserProfile("Ann", "ann", "c", "b", "l", "e"), Collections.<RepoData>emptyList()),
+				new UserData(null, null));
+	}
+	
+	@Test
+	void testBinaryOutputReadsBack() throws Exception {
+		File file = File.createTempFile("devsearch-test", ".bin");
+		try {
+			FileUtils.writeUserDataToFile(users(), file.getPath());
+			
+			List<UserData> read = new ArrayList<>();
+			try (UserDataSource source = FileUtils.openUserData(file.getPath())) {
+				UserData data;
+				while ((data = source.next()) != null) {
+					read.add(data);
+				}
+			}
+			
+			assertEquals(3, read.size());
+			UserProfile jose = read.get(0).getProfile();
+			assertEquals("Jos\u00e9, Jr.", jose.getName());
+			assertNull(jose.getCompanyName());
+			assertEquals("", jose.getBlogUrl());
+			assertEquals("S\u00e3o Paulo", jose.getLocation());
+			assertEquals(12, read.get(0).getRepos().get(0).getNumCommits());
+			assertEquals(300, read.get(0).getRepos().get(1).getName().length());
+			assertTrue(read.get(1).getRepos().isEmpty());
+			assertNull(read.get(2).getProfile());
+			assertNull(read.get(2).getRepos());
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	void testCsvOutputHasARowPerRepo() throws Exception {
+		File file = File.createTempFile("devsearch-test", ".csv");
+		try {
+			FileUtils.writeUserDataToFile(users().subList(0, 2), file.getPath());
+			
+			List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+			assertEquals(4, lines.size());
+			assertEquals("login,name,companyName,blogUrl,location,email,repoName,numCommits", lines.get(0));
+			assertTrue(lines.get(1).startsWith("jose,\"Jos"));
+			assertTrue(lines.get(1).endsWith(",r1,12"));
+			assertTrue(lines.get(2).endsWith(",0"));
+			assertEquals("ann,Ann,c,b,l,e,,", lines.get(3));
+		} finally {
+			file.delete();
+		}
+	}
+}
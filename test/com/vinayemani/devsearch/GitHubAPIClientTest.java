@@ -0,0 +1,84 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vinayemani.devsearch.data.UserData;
+
+class GitHubAPIClientTest {
+	
+	@Test
+	void testCommitCountComesFromLastPageLink() {
+		String link = "<https://api.github.com/repositories/1/commits?author=octocat&per_page=1&page=2>; rel=\"next\", "
+				+ "<https://api.github.com/repositories/1/commits?author=octocat&per_page=1&page=137>; rel=\"last\"";
+		APIResponse<Integer> firstPage = new APIResponse<>(Connection.RESP_CODE_OK, 1, Connection.parseLinks(link));
+		assertEquals(137, GitHubAPIClient.countCommits(firstPage));
+	}
+	
+	@Test
+	void testCommitCountWithoutLinks() {
+		assertEquals(1, GitHubAPIClient.countCommits(new APIResponse<>(Connection.RESP_CODE_OK, 1)));
+		assertEquals(0, GitHubAPIClient.countCommits(new APIResponse<>(Connection.RESP_CODE_OK, 0, Connection.parseLinks(null))));
+	}
+	
+	@Test
+	void testOnly403sOfTheRateLimitAreRateLimited() throws IOException {
+		// 'octocat' has a blocked repo whose commits are forbidden, 'banned' is forbidden and 'limited' is refused
+		// for the rate limit.
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			int code = 200;
+			String body;
+			if (path.equals("/users/banned")) {
+				code = 403;
+				body = "{\"message\": \"Forbidden\"}";
+			} else if (path.equals("/users/limited")) {
+				code = 403;
+				exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+				body = "{\"message\": \"API rate limit exceeded\"}";
+			} else if (path.equals("/users/octocat/repos")) {
+				body = "[{\"name\": \"blocked\", \"owner\": {\"login\": \"octocat\"}}, "
+						+ "{\"name\": \"hello\", \"owner\": {\"login\": \"octocat\"}}]";
+			} else if (path.equals("/repos/octocat/blocked/commits")) {
+				code = 403;
+				body = "{\"message\": \"Repository access blocked\"}";
+			} else if (path.equals("/repos/octocat/hello/commits")) {
+				body = "[{}, {}]";
+			} else {
+				body = "{\"login\": \"octocat\"}";
+			}
+			
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(code, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		});
+		server.start();
+		
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		try (Connection conn = new Connection(AuthCredentials.createNoAuthCredentials(), settings)) {
+			APICallResult<UserData> octocat = GitHubAPIClient.fetchSingleUserData("octocat", conn);
+			assertEquals(APICallResultType.SUCCESS, octocat.getResultType());
+			assertEquals(1, octocat.getResult().getRepos().size());
+			assertEquals("hello", octocat.getResult().getRepos().get(0).getName());
+			
+			APICallResult<UserData> banned = GitHubAPIClient.fetchSingleUserData("banned", conn);
+			assertEquals(APICallResultType.ERROR, banned.getResultType());
+			assertEquals(403, banned.getHttpCode());
+			
+			assertEquals(APICallResultType.RATE_LIMIT_EXCEEDED, GitHubAPIClient.fetchSingleUserData("limited", conn).getResultType());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
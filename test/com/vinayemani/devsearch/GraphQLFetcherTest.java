@@ -0,0 +1,113 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vinayemani.devsearch.data.UserData;
+
+class GraphQLFetcherTest {
+	
+	private HttpServer server;
+	private final AtomicInteger queries = new AtomicInteger();
+	
+	// Answers id queries for every login but 'ghost', and data queries with two repos, one of them empty.
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/graphql", exchange -> {
+			queries.incrementAndGet();
+			JSONObject request = new JSONObject(readAll(exchange.getRequestBody()));
+			JSONObject variables = request.getJSONObject("variables");
+			boolean idQuery = !request.getString("query").contains("repositories");
+			
+			JSONObject data = new JSONObject();
+			for (int i = 0; variables.has("l" + i); i++) {
+				String login = variables.getString("l" + i);
+				if (login.equals("ghost")) {
+					data.put("u" + i, JSONObject.NULL);
+				} else if (idQuery) {
+					data.put("u" + i, new JSONObject().put("id", "ID_" + login));
+				} else {
+					String commits = "{\"target\": {\"history\": {\"totalCount\": " + login.length() + "}}}";
+					data.put("u" + i, new JSONObject("{\"login\": \"" + login + "\", \"name\": null, \"company\": \"c\", "
+							+ "\"repositories\": {\"pageInfo\": {\"hasNextPage\": false, \"endCursor\": null}, \"nodes\": ["
+							+ "{\"name\": \"r1\", \"defaultBranchRef\": " + commits + "}, "
+							+ "{\"name\": \"empty\", \"defaultBranchRef\": null}]}}"));
+				}
+			}
+			
+			byte[] body = new JSONObject().put("data", data).toString().getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+	}
+	
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+	
+	@Test
+	void testBatchesConcurrentUsersIntoOneRoundOfQueries() throws Exception {
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		settings.setGraphqlBatchSize(3);
+		settings.setGraphqlBatchLingerMs(5000);
+		
+		String[] logins = {"octocat", "ghost", "dev"};
+		ExecutorService executor = Executors.newFixedThreadPool(logins.length);
+		try (Connection conn = new Connection(AuthCredentials.createOAuth2AuthCredentials("token"), settings)) {
+			GraphQLFetcher fetcher = new GraphQLFetcher(conn, settings);
+			List<Future<APICallResult<UserData>>> results = new ArrayList<>();
+			for (String login : logins) {
+				results.add(executor.submit(() -> fetcher.fetch(login)));
+			}
+			
+			APICallResult<UserData> octocat = results.get(0).get();
+			assertEquals(APICallResultType.SUCCESS, octocat.getResultType());
+			assertEquals("octocat", octocat.getResult().getProfile().getLogin());
+			assertEquals("", octocat.getResult().getProfile().getName());
+			assertEquals(1, octocat.getResult().getRepos().size());
+			assertEquals(7, octocat.getResult().getRepos().get(0).getNumCommits());
+			
+			assertEquals(APICallResultType.NO_MATCH, results.get(1).get().getResultType());
+			assertEquals(3, results.get(2).get().getResult().getRepos().get(0).getNumCommits());
+			
+			// One query for the ids and one for the data, for all three users.
+			assertEquals(2, queries.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int read;
+		while ((read = in.read(buf)) > 0) {
+			out.write(buf, 0, read);
+		}
+		return out.toString("UTF-8");
+	}
+}
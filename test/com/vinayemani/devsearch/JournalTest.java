@@ -0,0 +1,62 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+class JournalTest {
+	
+	@Test
+	void testResumesFromReplayedRecords() throws IOException {
+		File file = File.createTempFile("journal", ".log");
+		file.delete();
+		try {
+			try (Journal journal = Journal.open(file.getPath(), "users.csv", (keyId, data) -> fail("Nothing to replay"))) {
+				journal.searched(0, "octocat");
+				journal.fetched(0, new UserData(new UserProfile("The Octocat", "octocat", null, null, "SF", null), 
+						Arrays.asList(new RepoData(7, "hello-world"))));
+				journal.searched(1, "dev");
+				journal.noMatch(2);
+				journal.searched(3, "ghost");
+				journal.error(3);
+			}
+			// A record torn by a crash.
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				out.write("F 1 {\"profile\":".getBytes(StandardCharsets.UTF_8));
+			}
+			
+			List<UserData> replayed = new ArrayList<>();
+			try (Journal journal = Journal.open(file.getPath(), "users.csv", (keyId, data) -> replayed.add(data))) {
+				assertEquals(1, replayed.size());
+				assertEquals("octocat", replayed.get(0).getProfile().getLogin());
+				assertEquals("SF", replayed.get(0).getProfile().getLocation());
+				assertEquals(7, replayed.get(0).getRepos().get(0).getNumCommits());
+				
+				assertTrue(journal.isDone(0));
+				assertTrue(journal.isDone(2));
+				assertFalse(journal.isDone(1));
+				assertEquals("dev", journal.getSearchedLogin(1));
+				// Errors are retried, from the user's login if it was found.
+				assertFalse(journal.isDone(3));
+				assertEquals("ghost", journal.getSearchedLogin(3));
+				assertNull(journal.getSearchedLogin(4));
+			}
+			
+			assertThrows(IOException.class, () -> Journal.open(file.getPath(), "other.csv", (keyId, data) -> {}));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+class JsonReaderTest {
+	
+	@Test
+	void testReadsSelectedFieldsAndSkipsTheRest() throws IOException {
+		String json = "{\"skip\": {\"a\": [1, 2, {\"b\": null}], \"c\": \"x\\\"y\"}, \"login\": \"octo\\u0063at\", \"n\": -12}";
+		JsonReader reader = new JsonReader(new StringReader(json));
+		String login = null;
+		long n = 0;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("login")) {
+				login = reader.nextString();
+			} else if (name.equals("n")) {
+				n = reader.nextLong();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		
+		assertEquals("octocat", login);
+		assertEquals(-12, n);
+		assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+	}
+	
+	@Test
+	void testEmptyContainersAndLiterals() throws IOException {
+		JsonReader reader = new JsonReader(new StringReader("[[], {}, true, null, \"s\"]"));
+		reader.beginArray();
+		reader.beginArray();
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		reader.beginObject();
+		assertFalse(reader.hasNext());
+		reader.endObject();
+		assertTrue(reader.nextBoolean());
+		assertNull(reader.nextStringOrNull());
+		assertEquals("s", reader.nextStringOrNull());
+		reader.endArray();
+	}
+	
+	@Test
+	void testMalformedInputThrows() {
+		JsonReader reader = new JsonReader(new StringReader("{\"a\" 1}"));
+		assertThrows(IOException.class, () -> {
+			reader.beginObject();
+			reader.nextName();
+			reader.nextInt();
+		});
+	}
+}
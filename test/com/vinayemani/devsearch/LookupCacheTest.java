@@ -0,0 +1,40 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.CacheStats;
+
+class LookupCacheTest {
+	
+	@Test
+	void testEvictsLeastRecentlyUsed() {
+		LookupCache<String, String> cache = new LookupCache<>(2, 60000);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+		
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+		
+		CacheStats stats = cache.getStats();
+		assertEquals(3, stats.getHits());
+		assertEquals(1, stats.getMisses());
+		assertEquals(1, stats.getEvictions());
+		assertEquals(2, stats.getSize());
+	}
+	
+	@Test
+	void testExpiresEntries() throws InterruptedException {
+		LookupCache<String, String> cache = new LookupCache<>(10, 20);
+		cache.put("a", "1");
+		Thread.sleep(50);
+		
+		assertNull(cache.get("a"));
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals(0, cache.getStats().getSize());
+	}
+}
@@ -0,0 +1,165 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vinayemani.devsearch.data.OutcomeStatus;
+import com.vinayemani.devsearch.data.SearchOutcome;
+import com.vinayemani.devsearch.data.SearchReport;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserKey;
+
+class RateLimiterTest {
+	
+	private HttpServer server;
+	
+	// Holds searches for 'stuck' until released.
+	private final CountDownLatch unstick = new CountDownLatch(1);
+	
+	// No. of search and profile requests served.
+	private final AtomicInteger searchCalls = new AtomicInteger();
+	private final AtomicInteger profileCalls = new AtomicInteger();
+	
+	// Searches for 'broken' fail, searches for 'nobody' find no one, all other searches find a user with no repos.
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath(), query = exchange.getRequestURI().getQuery();
+			int code = 200;
+			String body;
+			if (path.startsWith("/search/users") && query.contains("stuck")) {
+				try {
+					unstick.await();
+				} catch (InterruptedException e) {}
+			}
+			if (path.startsWith("/search/users") && query.contains("broken")) {
+				code = 502;
+				body = "{}";
+			} else if (path.startsWith("/search/users") && query.contains("nobody")) {
+				body = "{\"total_count\": 0, \"items\": []}";
+			} else if (path.startsWith("/search/users")) {
+				searchCalls.incrementAndGet();
+				body = "{\"total_count\": 1, \"items\": [{\"login\": \"" + query.substring(2, query.indexOf('+')) + "\"}]}";
+			} else if (path.endsWith("/repos")) {
+				body = "[]";
+			} else {
+				profileCalls.incrementAndGet();
+				body = "{\"login\": \"" + path.substring("/users/".length()) + "\"}";
+			}
+			
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(code, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		});
+		server.start();
+	}
+	
+	@AfterEach
+	void stopServer() {
+		unstick.countDown();
+		server.stop(0);
+	}
+	
+	@Test
+	void testEveryKeyGetsAnOutcome() throws Exception {
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		
+		List<UserKey> users = Arrays.asList(new UserKey("octocat", "a", "b"), new UserKey("broken", "a", "b"),
+				new UserKey("nobody", "a", "b"), new UserKey("OctoCat", "a", "b"));
+		try (Connection conn = new Connection(AuthCredentials.createNoAuthCredentials(), settings);
+				RateLimiter engine = new RateLimiter(conn, settings)) {
+			SearchReport report = engine.getSearchReport(users);
+			List<SearchOutcome> outcomes = report.getOutcomes();
+			assertEquals(4, outcomes.size());
+			
+			assertEquals(OutcomeStatus.SUCCESS, outcomes.get(0).getStatus());
+			assertEquals(2, outcomes.get(0).getAttempts());
+			assertEquals(200, outcomes.get(0).getLastHttpCode());
+			
+			assertEquals(OutcomeStatus.ERROR, outcomes.get(1).getStatus());
+			assertEquals(1, outcomes.get(1).getAttempts());
+			assertEquals(502, outcomes.get(1).getLastHttpCode());
+			
+			assertEquals(OutcomeStatus.NO_MATCH, outcomes.get(2).getStatus());
+			
+			// Shares the search and fetch of the first key.
+			assertEquals(OutcomeStatus.SUCCESS, outcomes.get(3).getStatus());
+			assertEquals(2, outcomes.get(3).getAttempts());
+			
+			assertEquals(Arrays.asList(1L), report.getRetriableKeyIds());
+			assertEquals(2, report.getResults().size());
+		}
+	}
+	
+	@Test
+	void testDuplicateKeysAndSharedLoginsCallTheApiOnce() throws Exception {
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		
+		// The first 3 keys are equal, the 4th one is different but finds the same login.
+		List<UserKey> users = Arrays.asList(new UserKey("octocat", "a", "b"), new UserKey("OctoCat ", "A", "b"),
+				new UserKey("octocat", "a", "  B"), new UserKey("octocat", "c", "d"), new UserKey("hubot", "a", "b"));
+		try (Connection conn = new Connection(AuthCredentials.createNoAuthCredentials(), settings);
+				RateLimiter engine = new RateLimiter(conn, settings)) {
+			SearchReport report = engine.getSearchReport(users);
+			assertEquals(5, report.getResults().size());
+			for (SearchOutcome outcome : report.getOutcomes()) {
+				assertEquals(OutcomeStatus.SUCCESS, outcome.getStatus());
+			}
+			assertEquals(3, searchCalls.get());
+			assertEquals(2, profileCalls.get());
+		}
+	}
+	
+	@Test
+	void testLookupsBehindAStuckSearchTimeOutOnTime() throws Exception {
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		settings.setSearchWorkers(1);
+		
+		// The stuck search holds the only worker, the next users wait in the queue or in the batch's backlog.
+		List<UserKey> users = new ArrayList<>();
+		users.add(new UserKey("stuck", "a", "b"));
+		for (int i = 0; i < 5; i++) {
+			users.add(new UserKey("user" + i, "a", "b"));
+		}
+		try (Connection conn = new Connection(AuthCredentials.createNoAuthCredentials(), settings);
+				RateLimiter engine = new RateLimiter(conn, settings)) {
+			long startMs = System.currentTimeMillis();
+			List<CompletableFuture<UserData>> futures = engine.lookupAll(users, Priority.NORMAL, startMs + 300);
+			for (CompletableFuture<UserData> future : futures.subList(1, futures.size())) {
+				ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertTrue(System.currentTimeMillis() - startMs >= 300);
+			assertFalse(futures.get(0).isDone());
+			
+			// Its search is done too late for the fetch.
+			unstick.countDown();
+			ExecutionException e = assertThrows(ExecutionException.class, () -> futures.get(0).get(5, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+}
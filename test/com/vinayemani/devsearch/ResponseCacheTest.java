@@ -0,0 +1,157 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+class ResponseCacheTest {
+	
+	private static final String ETAG = "\"v1\"";
+	
+	private HttpServer server;
+	private File dir;
+	
+	// If-None-Match headers of the requests served, "" for requests without one.
+	private final List<String> validators = Collections.synchronizedList(new ArrayList<>());
+	
+	// Serves a profile with an ETag, and a 304 to requests that already have it. Neither uses up a request of the
+	// rate limit, as far as the headers go.
+	@BeforeEach
+	void setUp() throws IOException {
+		dir = Files.createTempDirectory("devsearch-cache").toFile();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/users/", exchange -> {
+			String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			validators.add(ifNoneMatch == null ? "" : ifNoneMatch);
+			exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+			exchange.getResponseHeaders().add("X-RateLimit-Remaining", "4999");
+			exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(System.currentTimeMillis() / 1000 + 3600));
+			if (ETAG.equals(ifNoneMatch)) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			
+			byte[] body = "{\"login\": \"octocat\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("ETag", ETAG);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+	}
+	
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+	
+	private static String login(Connection conn) throws IOException {
+		APIResponse<String> resp = conn.get(conn.apiURI("/users/octocat"), reader -> {
+			reader.beginObject();
+			reader.nextName();
+			String login = reader.nextString();
+			reader.endObject();
+			return login;
+		});
+		assertEquals(Connection.RESP_CODE_OK, resp.getStatusCode());
+		return resp.getData();
+	}
+	
+	@Test
+	void testRevalidatesAndServesNotModifiedFromDisk() throws Exception {
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		settings.setResponseCacheDir(dir.getPath());
+		
+		try (Connection conn = new Connection(AuthCredentials.createOAuth2AuthCredentials("token"), settings)) {
+			assertEquals("octocat", login(conn));
+			assertEquals("octocat", login(conn));
+			
+			// The 304 is given back to the scheduler, so it doesn't count against the limit.
+			assertEquals(4999, conn.getRateLimit(GitHubAPIClient.RATE_LIMIT_CORE_KEY).getRequestsLeft());
+		}
+		
+		// A new connection finds the entry on disk.
+		try (Connection conn = new Connection(AuthCredentials.createOAuth2AuthCredentials("token"), settings)) {
+			assertEquals("octocat", login(conn));
+		}
+		assertEquals(Arrays.asList("", ETAG, ETAG), validators);
+		
+		// Other credentials have a cache of their own.
+		try (Connection conn = new Connection(AuthCredentials.createOAuth2AuthCredentials("other"), settings)) {
+			assertEquals("octocat", login(conn));
+		}
+		assertEquals("", validators.get(3));
+	}
+	
+	private static void store(ResponseCache cache, String path, String body) throws IOException {
+		InputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+		cache.store("scope", URI.create("http://localhost" + path), "\"" + body + "\"", null, null, in).commit();
+	}
+	
+	private static String body(ResponseCache cache, String path) throws IOException {
+		ResponseCache.Entry entry = cache.lookup("scope", URI.create("http://localhost" + path));
+		if (entry == null) {
+			return null;
+		}
+		try (InputStream in = cache.openBody(entry)) {
+			byte[] buf = new byte[64];
+			int read = in.read(buf);
+			return new String(buf, 0, read, StandardCharsets.UTF_8);
+		}
+	}
+	
+	@Test
+	void testEvictsLeastRecentlyUsedAndReloadsFromDisk() throws Exception {
+		ResponseCache cache = new ResponseCache(dir.getPath(), 10);
+		store(cache, "/a", "aaaa");
+		store(cache, "/b", "bbbb");
+		assertEquals("aaaa", body(cache, "/a"));
+		
+		// Crosses the cap, the least recently used entry goes.
+		store(cache, "/c", "cccc");
+		assertNull(body(cache, "/b"));
+		assertEquals("aaaa", body(cache, "/a"));
+		assertEquals("cccc", body(cache, "/c"));
+		
+		// Bodies are written to temporary files first, and those are moved in place.
+		assertEquals(4, dir.listFiles().length);
+		ResponseCache.StoringInputStream partial = cache.store("scope", URI.create("http://localhost/d"), "\"d\"", null, null,
+				new ByteArrayInputStream(new byte[] {'d'}));
+		assertEquals('d', partial.read());
+		assertEquals(5, dir.listFiles().length);
+		
+		// Left over temporary files are cleaned up when the index is loaded again.
+		ResponseCache reloaded = new ResponseCache(dir.getPath(), 10);
+		assertEquals(4, dir.listFiles().length);
+		assertEquals("\"aaaa\"", reloaded.lookup("scope", URI.create("http://localhost/a")).getEtag());
+		assertEquals("cccc", body(reloaded, "/c"));
+		assertNull(body(reloaded, "/b"));
+		assertNull(body(reloaded, "/d"));
+		partial.discard();
+	}
+}
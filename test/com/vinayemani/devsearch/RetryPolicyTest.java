@@ -0,0 +1,109 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.utils.DateUtils;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+class RetryPolicyTest {
+	
+	// Hands out the given status codes in turn, and throws an IOException for code 0.
+	private static RetryPolicy.Attempt<String> responses(Integer... codes) {
+		Iterator<Integer> iter = Arrays.asList(codes).iterator();
+		return new RetryPolicy.Attempt<String>() {
+			@Override
+			public APIResponse<String> run() throws IOException {
+				int code = iter.next();
+				if (code == 0) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				return new APIResponse<>(code, code == 200 ? "ok" : null);
+			}
+		};
+	}
+	
+	@Test
+	void testRetriesTransientFailuresWithinBudget() throws IOException {
+		RetryPolicy policy = new RetryPolicy(4, 1, 2);
+		assertEquals("ok", policy.execute(responses(502, 0, 503, 200)).getData());
+		
+		// Out of tries, the last response is handed back.
+		assertEquals(500, policy.execute(responses(502, 500, 500, 500, 200)).getStatusCode());
+		
+		// Not worth retrying.
+		assertEquals(404, policy.execute(responses(404, 200)).getStatusCode());
+		assertEquals(403, policy.execute(responses(403, 200)).getStatusCode());
+		assertThrows(SocketTimeoutException.class, () -> policy.execute(responses(0, 0, 0, 0, 200)));
+	}
+	
+	@Test
+	void testClassifiesFailures() {
+		RetryPolicy policy = new RetryPolicy(4, 100, 1000);
+		assertTrue(policy.isRetriable(502, RetryPolicy.NO_RETRY_AFTER));
+		assertFalse(policy.isRetriable(501, RetryPolicy.NO_RETRY_AFTER));
+		assertFalse(policy.isRetriable(403, RetryPolicy.NO_RETRY_AFTER));
+		assertTrue(policy.isRetriable(403, 1000));
+		assertTrue(policy.isRetriable(429, 0));
+		assertFalse(policy.isRetriable(429, 5000));
+		
+		assertTrue(RetryPolicy.isRetriable(new IOException("Connection reset")));
+		assertFalse(RetryPolicy.isRetriable(new UnknownHostException("api.github.com")));
+		assertFalse(RetryPolicy.isRetriable(new JsonReader.MalformedJsonException("Malformed json: unexpected '<'")));
+		assertFalse(RetryPolicy.isRetriable(new JsonReader.MalformedJsonException("Malformed response", 
+				new JSONException("A JSONObject text must begin with '{'"))));
+	}
+	
+	@Test
+	void testDoesNotRefetchMalformedJsonObjects() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rate_limit", exchange -> {
+			requests.incrementAndGet();
+			byte[] body = "<html>Unicorn!</html>".getBytes();
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		
+		ClientSettings settings = new ClientSettings();
+		settings.setApiRoot("http://localhost:" + server.getAddress().getPort());
+		settings.setRetryBaseDelayMs(1);
+		try (Connection conn = new Connection(AuthCredentials.createNoAuthCredentials(), settings)) {
+			assertThrows(JsonReader.MalformedJsonException.class, () -> conn.getResponse(conn.apiURI("/rate_limit")));
+			assertEquals(1, requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+	
+	@Test
+	void testBacksOffWithJitterAndHonorsRetryAfter() {
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(policy.backoffMs(1, RetryPolicy.NO_RETRY_AFTER) <= 100);
+			assertTrue(policy.backoffMs(3, RetryPolicy.NO_RETRY_AFTER) <= 400);
+			assertTrue(policy.backoffMs(40, RetryPolicy.NO_RETRY_AFTER) <= 1000);
+			assertTrue(policy.backoffMs(1, 700) >= 700);
+		}
+		
+		assertEquals(120000, RetryPolicy.parseRetryAfter(" 120", 0));
+		long now = System.currentTimeMillis() / 1000 * 1000;
+		assertEquals(30000, RetryPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now + 30000)), now));
+		assertEquals(RetryPolicy.NO_RETRY_AFTER, RetryPolicy.parseRetryAfter("soon", now));
+	}
+}
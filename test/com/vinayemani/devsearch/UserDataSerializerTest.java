@@ -0,0 +1,148 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.data.RepoData;
+import com.vinayemani.devsearch.data.UserData;
+import com.vinayemani.devsearch.data.UserProfile;
+
+class UserDataSerializerTest {
+	
+	// Chars JSONObject escapes in different ways, mixed with plain ones.
+	private static final String CHARS = "aZ 0\"\\/<\b\t\n\f\r\u0001\u001f\u007f\u0080\u009f\u00a0\u00e9\u2000\u20ac\u20ff\u2100\u4e2d";
+	
+	private static String randomString(Random random) {
+		int choice = random.nextInt(10);
+		if (choice == 0) {
+			return null;
+		} else if (choice == 1) {
+			return "";
+		}
+		
+		StringBuilder builder = new StringBuilder();
+		for (int i = random.nextInt(8); i >= 0; i--) {
+			builder.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		}
+		return builder.toString();
+	}
+	
+	private static UserData randomUser(Random random) {
+		UserProfile profile = random.nextInt(8) == 0 ? null : new UserProfile(randomString(random), randomString(random),
+				randomString(random), randomString(random), randomString(random), randomString(random));
+		List<RepoData> repos = null;
+		if (random.nextInt(8) != 0) {
+			repos = new ArrayList<>();
+			for (int i = random.nextInt(4); i > 0; i--) {
+				int commits = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(1000);
+				repos.add(new RepoData(commits, randomString(random)));
+			}
+		}
+		return new UserData(profile, repos);
+	}
+	
+	// Removes the line breaks and indents, and the spaces after the colons, that indenting adds. Values can't have
+	// line breaks(they're escaped) or colons(none in CHARS), so only the layout goes.
+	private static String unindent(String json) {
+		return json.replaceAll("\n *", "").replace("\": ", "\":");
+	}
+	
+	@Test
+	void testWritesSameJsonAsJSONObject() throws Exception {
+		Random random = new Random(7);
+		UserDataSerializer compact = new UserDataSerializer(0);
+		UserDataSerializer indented = new UserDataSerializer(2);
+		for (int i = 0; i < 5000; i++) {
+			UserData data = randomUser(random);
+			JSONObject obj = new JSONObject(data);
+			String compactJson = compact.toString(data);
+			assertTrue(obj.similar(new JSONObject(compactJson)), compactJson);
+			assertFalse(compactJson.contains("\n"));
+			
+			String indentedJson = indented.toString(data);
+			assertTrue(obj.similar(new JSONObject(indentedJson)), indentedJson);
+			assertEquals(compactJson, unindent(indentedJson));
+			
+			// Lines after the first one are nested inside the given indent.
+			StringWriter nested = new StringWriter();
+			indented.write(data, nested, 4);
+			String[] lines = nested.toString().split("\n");
+			for (int j = 1; j < lines.length; j++) {
+				assertTrue(lines[j].startsWith("    "), nested.toString());
+			}
+			assertEquals(compactJson, unindent(nested.toString()));
+		}
+		
+		assertEquals("{}", indented.toString(new UserData(null, null)));
+		assertEquals("{\"repos\": []}", indented.toString(new UserData(null, new ArrayList<>())));
+	}
+	
+	@Test
+	void testFollowsJSONObjectsFieldOrder() {
+		UserData data = new UserData(new UserProfile("n", "l", "c", "b", "l", "e"), 
+				Arrays.asList(new RepoData(1, "r1"), new RepoData(2, "r2")));
+		String json = new UserDataSerializer(0).toString(data);
+		assertTrue(new JSONObject(data).similar(new JSONObject(json)));
+		
+		// Fields come in the order JSONObject would write them in this run.
+		assertInOrder(json, new JSONObject(data).keySet());
+		assertInOrder(json, new JSONObject(data.getProfile()).keySet());
+		assertInOrder(json.substring(json.indexOf("\"repos\"")), new JSONObject(data.getRepos().get(0)).keySet());
+	}
+	
+	private static void assertInOrder(String json, Set<String> keys) {
+		int last = -1;
+		for (String key : keys) {
+			int at = json.indexOf("\"" + key + "\":");
+			assertTrue(at > last, key + " out of order in " + json);
+			last = at;
+		}
+	}
+	
+	@Test
+	void testJsonOutputFileMatchesJSONArray() throws Exception {
+		Random random = new Random(11);
+		File file = File.createTempFile("devsearch-test", ".json");
+		try {
+			for (int size : new int[] {0, 1, 2, 50}) {
+				List<UserData> users = new ArrayList<>();
+				JSONArray expected = new JSONArray();
+				for (int i = 0; i < size; i++) {
+					users.add(randomUser(random));
+					expected.put(new JSONObject(users.get(i)));
+				}
+				
+				FileUtils.writeUserDataToFile(users, file.getPath());
+				// The file is in the default charset, chars it can't encode come back as '?'.
+				Charset charset = Charset.defaultCharset();
+				String json = new String(Files.readAllBytes(file.toPath()), charset);
+				JSONArray onDisk = new JSONArray(new String(expected.toString().getBytes(charset), charset));
+				assertTrue(onDisk.similar(new JSONArray(json)), json);
+				
+				// Laid out like JSONArray.toString(2), a single element stays on the first line.
+				if (size == 0) {
+					assertEquals("[]", json);
+				} else if (size == 1) {
+					assertTrue(json.startsWith("[{") && json.endsWith("}]"), json);
+				} else {
+					assertTrue(json.startsWith("[\n  {") && json.endsWith("}\n]"), json);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.vinayemani.devsearch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.WorkQueue.QueueFinisher;
+import com.vinayemani.devsearch.WorkQueue.Worker;
+import com.vinayemani.devsearch.data.APIRateLimit;
+
+class WorkQueueTest {
+	
+	@Test
+	void testTakesJobsByRankAndDropsLateOnes() throws InterruptedException {
+		CountDownLatch firstJobStarted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> produced = Collections.synchronizedList(new ArrayList<>());
+		List<Long> expired = Collections.synchronizedList(new ArrayList<>());
+		
+		WorkQueue<String, String> queue = new WorkQueue<>("core", new Worker<String, String>() {
+			@Override
+			public APICallResult<String> produce(String input) {
+				if (input.equals("first")) {
+					firstJobStarted.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {}
+				}
+				produced.add(input);
+				return APICallResult.successResult(input);
+			}
+			
+			@Override
+			public void onSuccess(long keyId, String output) {}
+			
+			@Override
+			public void onFailure(long keyId, APICallResultType resultType) {
+				assertEquals(APICallResultType.DEADLINE_EXCEEDED, resultType);
+				expired.add(keyId);
+			}
+		});
+		queue.setFinisher(new QueueFinisher() {
+			@Override
+			public void onQueueFinished() {}
+		});
+		
+		// The single worker is busy with the first job while the others are pushed.
+		queue.pushNewJob(0, "first");
+		firstJobStarted.await();
+		queue.pushNewJob(1, "c", 3, WorkQueue.NO_DEADLINE);
+		queue.pushNewJob(2, "a", 1, WorkQueue.NO_DEADLINE);
+		queue.pushNewJob(3, "late", 0, System.currentTimeMillis() - 1);
+		queue.pushNewJob(4, "b", 2, WorkQueue.NO_DEADLINE);
+		queue.pushNewJob(5, "b2", 2, WorkQueue.NO_DEADLINE);
+		release.countDown();
+		
+		queue.signalEndOfJobs();
+		queue.waitUntilFinish();
+		assertEquals(Arrays.asList("first", "a", "b", "b2", "c"), produced);
+		assertEquals(Collections.singletonList(3L), expired);
+	}
+	
+	@Test
+	void testFinishesOnceWithEveryJobDoneUnderRandomSchedules() throws InterruptedException {
+		Random random = new Random(20);
+		for (int round = 0; round < 2000; round++) {
+			int numJobs = random.nextInt(21);
+			long seed = random.nextLong();
+			Map<Long, AtomicInteger> terminal = new ConcurrentHashMap<>();
+			Map<Long, Boolean> wentDown = new ConcurrentHashMap<>();
+			AtomicInteger finishes = new AtomicInteger();
+			
+			WorkQueue<Long, Long> queue = new WorkQueue<>("core", new Worker<Long, Long>() {
+				@Override
+				public APICallResult<Long> produce(Long keyId) {
+					Random jobRandom = new Random(seed ^ keyId);
+					if (jobRandom.nextInt(4) == 0) {
+						Thread.yield();
+					}
+					switch (jobRandom.nextInt(5)) {
+					case 0:
+						return APICallResult.noMatchResult(404);
+					case 1:
+						return APICallResult.errorResult(500);
+					case 2:
+						if (wentDown.putIfAbsent(keyId, true) == null) {
+							return APICallResult.unavailableResult(0);
+						}
+						// Back up on the retry.
+					default:
+						return APICallResult.successResult(keyId);
+					}
+				}
+				
+				@Override
+				public void onSuccess(long keyId, Long output) {
+					terminal.get(keyId).incrementAndGet();
+				}
+				
+				@Override
+				public void onFailure(long keyId, APICallResultType resultType) {
+					terminal.get(keyId).incrementAndGet();
+				}
+			}, 1 + random.nextInt(4), null);
+			queue.setFinisher(new QueueFinisher() {
+				@Override
+				public void onQueueFinished() {
+					finishes.incrementAndGet();
+				}
+			});
+			if (random.nextBoolean()) {
+				queue.setMaxPendingJobs(1 + random.nextInt(4));
+			}
+			
+			Thread pusher = new Thread(() -> {
+				for (long keyId = 0; keyId < numJobs; keyId++) {
+					terminal.put(keyId, new AtomicInteger());
+					queue.pushNewJob(keyId, keyId);
+				}
+				queue.signalEndOfJobs();
+			});
+			pusher.start();
+			
+			assertTrue(queue.waitUntilFinish(5000), "round " + round);
+			pusher.join();
+			assertEquals(1, finishes.get(), "round " + round);
+			assertEquals(0, queue.getPendingJobs());
+			assertEquals(numJobs, terminal.size());
+			for (AtomicInteger count : terminal.values()) {
+				assertEquals(1, count.get(), "round " + round);
+			}
+		}
+	}
+	
+	@Test
+	void testGivesUpOnJobsThatKeepComingBack() throws InterruptedException {
+		AtomicInteger tries = new AtomicInteger();
+		List<APICallResultType> failures = Collections.synchronizedList(new ArrayList<>());
+		WorkQueue<String, String> queue = new WorkQueue<>("core", new Worker<String, String>() {
+			@Override
+			public APICallResult<String> produce(String input) {
+				tries.incrementAndGet();
+				return APICallResult.rateLimitExceededResult(403);
+			}
+			
+			@Override
+			public void onSuccess(long keyId, String output) {}
+			
+			@Override
+			public void onFailure(long keyId, APICallResultType resultType) {
+				failures.add(resultType);
+			}
+		});
+		queue.setFinisher(new QueueFinisher() {
+			@Override
+			public void onQueueFinished() {}
+		});
+		// The limits say there are requests left, so the workers don't pause and the job comes straight back.
+		queue.setRateLimitFetcher(new WorkQueue.RateLimitFetcher() {
+			@Override
+			public APIRateLimit fetchRateLimit() {
+				return APIRateLimit.fromValues(System.currentTimeMillis() / 1000 + 3600, 3600, 100, 5000);
+			}
+		});
+		
+		queue.pushNewJob(0, "forbidden");
+		queue.signalEndOfJobs();
+		assertTrue(queue.waitUntilFinish(10000));
+		assertEquals(WorkQueue.MAX_REQUEUES + 1, tries.get());
+		assertEquals(Collections.singletonList(APICallResultType.RATE_LIMIT_EXCEEDED), failures);
+	}
+	
+	@Test
+	void testFailsJobsOnTimeWhilePaused() throws InterruptedException {
+		CountDownLatch expired = new CountDownLatch(1);
+		List<Long> failed = Collections.synchronizedList(new ArrayList<>());
+		WorkQueue<String, String> queue = new WorkQueue<>("core", new Worker<String, String>() {
+			@Override
+			public APICallResult<String> produce(String input) {
+				return APICallResult.rateLimitExceededResult(403);
+			}
+			
+			@Override
+			public void onSuccess(long keyId, String output) {}
+			
+			@Override
+			public void onFailure(long keyId, APICallResultType resultType) {
+				assertEquals(APICallResultType.DEADLINE_EXCEEDED, resultType);
+				failed.add(keyId);
+				expired.countDown();
+			}
+		}, 1, r -> {
+			// The worker pauses for an hour, it mustn't keep the jvm alive.
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+		queue.setFinisher(new QueueFinisher() {
+			@Override
+			public void onQueueFinished() {}
+		});
+		// No requests left until the reset an hour from now.
+		queue.setRateLimitFetcher(new WorkQueue.RateLimitFetcher() {
+			@Override
+			public APIRateLimit fetchRateLimit() {
+				return APIRateLimit.fromValues(System.currentTimeMillis() / 1000 + 3600, 3600, 0, 5000);
+			}
+		});
+		
+		queue.pushNewJob(0, "limited");
+		long startMs = System.currentTimeMillis();
+		queue.pushNewJob(1, "waiting", 0, startMs + 200);
+		
+		assertTrue(expired.await(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - startMs >= 200);
+		assertEquals(Collections.singletonList(1L), failed);
+	}
+}
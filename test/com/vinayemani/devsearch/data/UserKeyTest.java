@@ -10,5 +10,15 @@ class UserKeyTest {
 	void testConstructQueryParamString() {
 		fail("Not yet implemented");
 	}
+	
+	@Test
+	void testEqualityIgnoresCaseAndWhitespace() {
+		UserKey key = new UserKey("Linus", "Torvalds", "Portland, OR");
+		assertEquals(key, new UserKey(" linus", "TORVALDS ", "portland,   or"));
+		assertEquals(key.hashCode(), new UserKey(" linus", "TORVALDS ", "portland,   or").hashCode());
+		assertEquals(new UserKey("Linus", null, null), new UserKey("linus", "", " "));
+		assertNotEquals(key, new UserKey("Linus", "Torvalds", "Helsinki"));
+		assertNotEquals(new UserKey("Linus Torvalds", "", ""), new UserKey("Linus", "Torvalds", ""));
+	}
 
 }
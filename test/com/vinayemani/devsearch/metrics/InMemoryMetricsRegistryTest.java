@@ -0,0 +1,69 @@
+package com.vinayemani.devsearch.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class InMemoryMetricsRegistryTest {
+	
+	@Test
+	void testBucketsCoverDurationsWithinAQuarter() {
+		for (long micros = 0; micros < 1000000; micros += 7) {
+			int bucket = InMemoryMetricsRegistry.bucketOf(micros);
+			long upper = InMemoryMetricsRegistry.bucketUpperMicros(bucket);
+			assertTrue(micros < upper, micros + " above bucket " + bucket);
+			assertTrue(upper <= Math.max(micros * 1.25, micros + 1), micros + " far below bucket " + bucket);
+		}
+	}
+	
+	@Test
+	void testSnapshotsMetersByNameAndTags() {
+		InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+		MetricsRegistry.Timer timer = registry.timer("requests", "endpoint", "search");
+		for (int ms = 1; ms <= 100; ms++) {
+			timer.record(ms * 1000000L);
+		}
+		registry.counter("bytes", "endpoint", "user").increment(10);
+		registry.counter("bytes", "endpoint", "user").increment(5);
+		registry.gauge("depth", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return 3;
+			}
+		});
+		registry.gauge("remaining", new MetricsRegistry.Gauge() {
+			@Override
+			public double value() {
+				return Double.NaN;
+			}
+		});
+		
+		List<MeterSnapshot> snapshots = registry.snapshot();
+		assertEquals(4, snapshots.size());
+		MeterSnapshot bytes = snapshots.get(0);
+		assertEquals("bytes", bytes.getName());
+		assertEquals("user", bytes.getTags().get("endpoint"));
+		assertEquals(15, bytes.getCount());
+		assertEquals(3, snapshots.get(1).getValue(), 0);
+		
+		MeterSnapshot requests = snapshots.get(3);
+		assertEquals(MeterSnapshot.Type.TIMER, requests.getType());
+		assertEquals(100, requests.getCount());
+		assertEquals(5050, requests.getTotalMs(), 0.001);
+		assertEquals(100, requests.getMaxMs(), 0.001);
+		assertEquals(50, requests.getP50Ms(), 50 * 0.25);
+		assertEquals(99, requests.getP99Ms(), 99 * 0.25);
+		assertThrows(IllegalArgumentException.class, () -> registry.counter("requests", "endpoint", "search"));
+		
+		// Gauges without a value are left out of dumps.
+		JSONArray meters = MetricsDumper.toJSON(registry, 0).getJSONArray("meters");
+		assertEquals(3, meters.length());
+		JSONObject dumped = meters.getJSONObject(2);
+		assertEquals("TIMER", dumped.getString("type"));
+		assertEquals("search", dumped.getJSONObject("tags").getString("endpoint"));
+	}
+}
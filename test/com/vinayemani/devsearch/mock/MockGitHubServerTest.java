@@ -0,0 +1,64 @@
+package com.vinayemani.devsearch.mock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import com.vinayemani.devsearch.ClientSettings;
+
+class MockGitHubServerTest {
+	
+	@Test
+	void testEnforcesSearchQuotaPerToken() throws Exception {
+		MockServerSettings settings = new MockServerSettings();
+		settings.setNumUsers(10);
+		settings.setSearchLimit(2);
+		try (MockGitHubServer server = MockGitHubServer.start(settings)) {
+			URL url = new URL(server.getApiRoot() + "/search/users?q=user1");
+			for (int i = 0; i < 2; i++) {
+				HttpURLConnection conn = open(url, "token a");
+				assertEquals(200, conn.getResponseCode());
+				assertEquals(String.valueOf(1 - i), conn.getHeaderField("X-RateLimit-Remaining"));
+			}
+			
+			HttpURLConnection refused = open(url, "token a");
+			assertEquals(403, refused.getResponseCode());
+			assertEquals("0", refused.getHeaderField("X-RateLimit-Remaining"));
+			assertNotNull(refused.getHeaderField("X-RateLimit-Reset"));
+			assertEquals(1, server.getRateLimitedCount());
+			
+			// Another token has a quota of its own.
+			assertEquals(200, open(url, "token b").getResponseCode());
+		}
+	}
+	
+	@Test
+	void testLoadTestFindsUsers() throws Exception {
+		MockServerSettings settings = new MockServerSettings();
+		settings.setNumUsers(500);
+		// The client spreads a window's quota over the window, so make it large and the window short.
+		settings.setCoreLimit(100000);
+		settings.setCoreWindowSecs(10);
+		settings.setSearchLimit(100000);
+		settings.setSearchWindowSecs(10);
+		File workDir = Files.createTempDirectory("devsearch-loadtest").toFile();
+		
+		LoadTest.Report report = LoadTest.run(settings, new ClientSettings(), 50, 0.2, workDir);
+		assertEquals(50, report.getFound() + report.getNotFound());
+		assertEquals(0, report.getFailed());
+		assertTrue(report.getFound() > 0);
+		assertTrue(report.getRequests().get("search") > 0);
+		assertEquals(0, report.getRateLimited());
+	}
+	
+	private static HttpURLConnection open(URL url, String authorization) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestProperty("Authorization", authorization);
+		return conn;
+	}
+}